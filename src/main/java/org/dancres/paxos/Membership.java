@@ -13,4 +13,10 @@ public interface Membership {
     public Map<InetSocketAddress, MetaData> getMembers();
     public byte[] dataForNode(InetSocketAddress anAddress);
     public boolean updateMembership(Collection<InetSocketAddress> aMembers) throws InactiveException;
+
+    /**
+     * As per <code>updateMembership</code> but returns without waiting for the change to be agreed. The result is
+     * <code>false</code> if the change could not be made including when this process is inactive.
+     */
+    public Promise<Boolean> updateMembershipAsync(Collection<InetSocketAddress> aMembers);
 }
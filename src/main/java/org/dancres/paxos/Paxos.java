@@ -13,9 +13,10 @@ package org.dancres.paxos;
  *
  * <p>Paxos needs only to be used to make changes to state. Read operations need not be passed through Paxos but they
  * do need to be dispatched to a node that is up-to-date. The node that is pretty much guaranteed to be up to date
- * is the existing leader. Other nodes could be used to support read operations so long as a level of staleness is
- * acceptable. If the state is timestamped in some fashion, once can use those timestamps to ensure that updates
- * based on the state are applied to the latest version (by checking its timestamp) or rejected.</p>
+ * is the existing leader which can confirm it via <code>isLeaseHolder</code>. Other nodes could be used to support
+ * read operations so long as a level of staleness is acceptable or they first pass a <code>readBarrier</code>. If the
+ * state is timestamped in some fashion, once can use those timestamps to ensure that updates based on the state are
+ * applied to the latest version (by checking its timestamp) or rejected.</p>
  *
  * <p>A server using this library needs to handle <code>StateEvent.Reason.OUT_OF_DATE</code> and
  * <code>VoteOutcome.Reason.OTHER_LEADER</code>. In both cases it typically passes a message to it's client to request
@@ -84,7 +85,39 @@ public interface Paxos {
      * <code>StateEvent</code> and be in the process of obtaining a new checkpoint.
      */
     public void submit(Proposal aValue, Completion<VoteOutcome> aCompletion) throws InactiveException;
+
+    /**
+     * Submits a value without blocking, such that a small number of threads can drive many concurrent submissions.
+     *
+     * @return the outcome as would be passed to the completion of <code>submit</code>. Rather than throwing
+     * <code>InactiveException</code> the outcome is <code>VoteOutcome.Reason.INACTIVE</code>.
+     */
+    public Promise<VoteOutcome> submitAsync(Proposal aValue);
+
     public void add(Listener aListener);
     public boolean bringUpToDate(CheckpointHandle aHandle) throws Exception;
     public Membership getMembership();
+
+    /**
+     * Allows the leader to answer a read from local state without a round of Paxos. Whilst the leader holds its lease
+     * no other node can have a value chosen, thus local state is the latest state.
+     *
+     * @param aDeadline the time (as per <code>System.currentTimeMillis</code>) by which the read will be answered.
+     * @return <code>true</code> if this node is the leader and will remain so until at least the deadline and all
+     * values chosen whilst it was leader have been delivered to listeners. Otherwise <code>false</code> in which case
+     * the read should be submitted as a proposal or directed to another node.
+     */
+    public boolean isLeaseHolder(long aDeadline);
+
+    /**
+     * Allows any node to answer a read from local state without a round of Paxos. The current leader is asked for the
+     * last instance it has had chosen and the call returns once that instance has been delivered to listeners.
+     * Concurrent callers share requests to the leader.
+     *
+     * @param aTimeout the maximum time in milliseconds to wait.
+     * @return <code>true</code> if local state now reflects all values chosen before the call, <code>false</code> if
+     * that couldn't be established within the timeout (for example because there's no leader) in which case the read
+     * should be submitted as a proposal or directed to another node.
+     */
+    public boolean readBarrier(long aTimeout);
 }
@@ -0,0 +1,92 @@
+package org.dancres.paxos;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The result of an asynchronous request. The result can be waited for as per <code>Future</code> or, so that no
+ * thread need be tied up waiting, delivered to completions registered via <code>then</code>.
+ *
+ * Completions are run by the thread that supplies the result or, if the result is already available, by the thread
+ * registering the completion. They should therefore be brief and must not block.
+ *
+ * @param <T>
+ */
+public class Promise<T> implements Completion<T>, Future<T> {
+    private final AtomicReference<T> _result = new AtomicReference<>();
+    private final CountDownLatch _done = new CountDownLatch(1);
+    private final Queue<Completion<T>> _completions = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param aValue the result, only the first result supplied is retained.
+     */
+    public void complete(T aValue) {
+        if (aValue == null)
+            throw new IllegalArgumentException("Result cannot be null");
+
+        if (_result.compareAndSet(null, aValue)) {
+            _done.countDown();
+            dispatch();
+        }
+    }
+
+    /**
+     * @param aCompletion to be passed the result once it is available.
+     * @return this promise such that calls can be chained.
+     */
+    public Promise<T> then(Completion<T> aCompletion) {
+        _completions.add(aCompletion);
+
+        if (isDone())
+            dispatch();
+
+        return this;
+    }
+
+    /**
+     * Both completion and registration drain the queue such that each completion is run exactly once regardless of
+     * races between them.
+     */
+    private void dispatch() {
+        T myResult = _result.get();
+        Completion<T> myCompletion;
+
+        while ((myCompletion = _completions.poll()) != null)
+            myCompletion.complete(myResult);
+    }
+
+    /**
+     * A request once made cannot be withdrawn.
+     *
+     * @return <code>false</code>
+     */
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return false;
+    }
+
+    public boolean isCancelled() {
+        return false;
+    }
+
+    public boolean isDone() {
+        return (_result.get() != null);
+    }
+
+    public T get() throws InterruptedException {
+        _done.await();
+
+        return _result.get();
+    }
+
+    public T get(long aTimeout, TimeUnit aUnit) throws InterruptedException, TimeoutException {
+        if (! _done.await(aTimeout, aUnit))
+            throw new TimeoutException();
+
+        return _result.get();
+    }
+}
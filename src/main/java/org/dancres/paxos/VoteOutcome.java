@@ -42,8 +42,14 @@ public class VoteOutcome {
          */
         public static final int NOT_MEMBER = 5;
 
+        /**
+         * This process is out of date or shutting down and cannot lead. Only reported for asynchronous submissions,
+         * synchronous submissions throw <code>InactiveException</code> instead.
+         */
+        public static final int INACTIVE = 6;
+
         private static final String[] _names = {"Value", "Other Leader", "Vote Timeout", "Bad Membership",
-        	"Other Value", "Not Member"};
+        	"Other Value", "Not Member", "Inactive"};
         
         public static String nameFor(int aCode) {
         	if (aCode < 0 || aCode > _names.length - 1)
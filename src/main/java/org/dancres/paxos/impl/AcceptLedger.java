@@ -6,20 +6,28 @@ import org.dancres.paxos.messages.Learned;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.Set;
+import java.util.Arrays;
+import java.util.BitSet;
 
+/**
+ * Tracks the members that have accepted an instance, per round, as a bitset of <code>MemberIndex</code> indices.
+ * There's typically only the one round so rounds are kept in a small array and searched linearly.
+ */
 class AcceptLedger {
     private static final Logger _logger = LoggerFactory.getLogger(AcceptLedger.class);
 
-    private Set<Transport.Packet> _ledger = new HashSet<>();
     private final long _seqNum;
     private final String _alId;
+    private final MemberIndex _members;
 
-    AcceptLedger(String anALId, long aSeqNum) {
+    private long[] _rounds = new long[1];
+    private BitSet[] _accepts = new BitSet[1];
+    private int _numRounds = 0;
+
+    AcceptLedger(String anALId, long aSeqNum, MemberIndex aMembers) {
         _seqNum = aSeqNum;
         _alId = anALId;
+        _members = aMembers;
     }
 
     void add(Transport.Packet aPacket) {
@@ -31,7 +39,14 @@ class AcceptLedger {
                 throw new IllegalArgumentException("Packet doesn't have correct sequence number " + _seqNum + " vs" +
                     aPacket.getMessage().getSeqNum());
 
-            _ledger.add(aPacket);
+            int myMember = _members.indexOf(aPacket.getSource());
+
+            if (myMember == MemberIndex.NOT_MEMBER) {
+                _logger.warn(_alId + ": Ignoring accept from non-member " + aPacket.getSource());
+                return;
+            }
+
+            acceptsFor(((Accept) aPacket.getMessage()).getRndNumber()).set(myMember);
         }
     }
 
@@ -43,13 +58,17 @@ class AcceptLedger {
      */
     void purge(Begin aBegin) {
         synchronized (this) {
-            Iterator<Transport.Packet> myAccs = _ledger.iterator();
+            int myRetained = 0;
 
-            while (myAccs.hasNext()) {
-                Transport.Packet myAcc = myAccs.next();
-                if (((Accept) myAcc.getMessage()).getRndNumber() != aBegin.getRndNumber())
-                    myAccs.remove();
+            for (int i = 0; i < _numRounds; i++) {
+                if (_rounds[i] == aBegin.getRndNumber()) {
+                    swap(i, myRetained);
+                    ++myRetained;
+                } else
+                    _accepts[i].clear();
             }
+
+            _numRounds = myRetained;
         }
     }
 
@@ -61,21 +80,48 @@ class AcceptLedger {
      */
     Learned tally(Begin aBegin, int aMajority) {
         synchronized (this) {
-            int myAcceptTally = 0;
+            for (int i = 0; i < _numRounds; i++) {
+                if (_rounds[i] == aBegin.getRndNumber()) {
+                    if (_accepts[i].cardinality() >= aMajority) {
+                        _logger.debug(_alId + ": Accepted on set " + _accepts[i] + " with majority " + aMajority);
 
-            if (_ledger.size() < aMajority)
-                return null;
+                        return new Learned(aBegin.getSeqNum(), aBegin.getRndNumber());
+                    } else
+                        return null;
+                }
+            }
 
-            for (Transport.Packet myAcc : _ledger)
-                if (((Accept) myAcc.getMessage()).getRndNumber() == aBegin.getRndNumber())
-                    ++myAcceptTally;
+            return null;
+        }
+    }
 
-            if (myAcceptTally >= aMajority) {
-                _logger.debug(_alId + ": Accepted on set " + _ledger + " with majority " + aMajority);
+    private BitSet acceptsFor(long aRndNum) {
+        for (int i = 0; i < _numRounds; i++)
+            if (_rounds[i] == aRndNum)
+                return _accepts[i];
 
-                return new Learned(aBegin.getSeqNum(), aBegin.getRndNumber());
-            } else
-                return null;
+        if (_numRounds == _rounds.length) {
+            _rounds = Arrays.copyOf(_rounds, _numRounds * 2);
+            _accepts = Arrays.copyOf(_accepts, _numRounds * 2);
         }
+
+        // Bitsets of purged rounds are cleared and left in place for reuse
+        //
+        if (_accepts[_numRounds] == null)
+            _accepts[_numRounds] = new BitSet();
+
+        _rounds[_numRounds] = aRndNum;
+
+        return _accepts[_numRounds++];
+    }
+
+    private void swap(int anIndex, int anOtherIndex) {
+        long myRound = _rounds[anIndex];
+        BitSet myAccepts = _accepts[anIndex];
+
+        _rounds[anIndex] = _rounds[anOtherIndex];
+        _accepts[anIndex] = _accepts[anOtherIndex];
+        _rounds[anOtherIndex] = myRound;
+        _accepts[anOtherIndex] = myAccepts;
     }
 }
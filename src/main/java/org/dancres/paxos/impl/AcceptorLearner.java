@@ -6,13 +6,16 @@ import org.dancres.paxos.messages.codec.Codecs;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.net.InetSocketAddress;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Condition;
@@ -46,7 +49,7 @@ public class AcceptorLearner implements MessageProcessor {
         private final AtomicLong _ignoredCollects = new AtomicLong();
 
         /**
-         * Statistic that tracks the number of leader heartbeats received.
+         * Statistic that tracks the number of leader heartbeats (lease renewals) received.
          */
         private final AtomicLong _receivedHeartbeats = new AtomicLong();
 
@@ -87,12 +90,19 @@ public class AcceptorLearner implements MessageProcessor {
     private final StatsImpl _stats = new StatsImpl();
     private final AtomicLong _gracePeriod = new AtomicLong(DEFAULT_RECOVERY_GRACE_PERIOD);
 
-    private final AtomicReference<TimerTask> _recoveryAlarm = new AtomicReference<>(null);
+    private final AtomicReference<WheelTimer.Task> _recoveryAlarm = new AtomicReference<>(null);
     private final AtomicReference<Need> _recoveryWindow = new AtomicReference<>(null);
 
 	private final LogStorage _storage;
     private final Common _common;
-    private final PacketSorter _sorter = new PacketSorter();
+    private final PacketSorter _sorter;
+    private final AtomicInteger _drainRequests = new AtomicInteger(0);
+
+    /**
+     * The number of instances beyond the low watermark for which we'll accept Begins. Records for an instance are
+     * only logged once the low watermark is within this window of it.
+     */
+    private final int _maxInflight;
 
     /**
      * Begins contain the values being proposed. These values must be remembered from round to round of an instance
@@ -101,8 +111,34 @@ public class AcceptorLearner implements MessageProcessor {
      * instance we remove the value from the cache and send it to any listeners. This saves us having to disk scans
      * for values and ensures that any value is logged only once (because it doesn't appear in any other messages).
      */
-    private final Map<Long, Begin> _cachedBegins = new ConcurrentHashMap<>();
-    private final Map<Long, AcceptLedger> _acceptLedgers = new ConcurrentHashMap<>();
+    private final InstanceWindow<Begin> _cachedBegins;
+    private final InstanceWindow<AcceptLedger> _acceptLedgers;
+    private final MemberIndex _memberIndex;
+
+    /**
+     * When several instances are in flight they can be decided out of order but values must be delivered (and the
+     * low watermark advanced) in sequence. Learned packets for instances beyond the next one are held here until
+     * those before them are learned.
+     */
+    private final ConcurrentNavigableMap<Long, Transport.Packet> _pendingLearned = new ConcurrentSkipListMap<>();
+
+    /**
+     * Locates the records logged for each instance since our last checkpoint so they can be recovered without
+     * scanning the log. Rebuilt as part of the replay in <code>open</code>.
+     */
+    private final LogIndex _index = new LogIndex();
+
+    /**
+     * Serves Lasts for recent instances without a log scan. Covers the same range as the index until the low
+     * watermark advances beyond the window of instances it retains.
+     */
+    private final RecentBegins _recentBegins = new RecentBegins();
+
+    /**
+     * Allows the packet dispatcher to continue processing whilst Begins are forced to disk. Runs between open and
+     * close.
+     */
+    private final WritePipeline _pipeline;
 
     private final Lock _guardLock = new ReentrantLock();
     private final Condition _notActive = _guardLock.newCondition();
@@ -113,17 +149,30 @@ public class AcceptorLearner implements MessageProcessor {
     private final AtomicReference<Watermark> _lowWatermark =
             new AtomicReference<>(Watermark.INITIAL);
 
+    /**
+     * The last instance whose value has been passed to listeners. Trails the low watermark whilst listeners are
+     * being signalled.
+     */
+    private final AtomicLong _deliveredSeq = new AtomicLong(Constants.UNKNOWN_SEQ);
+
     static class ALCheckpointHandle extends CheckpointHandle {
-        private static final long serialVersionUID = -7904255942396151132L;
+        private static final long serialVersionUID = 3176401383290785127L;
 
         private transient Watermark _lowWatermark;
+
+        /**
+         * Offset from which all records for instances beyond the low watermark can be found. With more than one
+         * instance in flight, Begins for later instances can be logged ahead of the learned record for the watermark.
+         */
+        private transient long _tailOffset;
         private transient Transport.Packet _lastCollect;
         private final transient AtomicReference<AcceptorLearner> _al = new AtomicReference<>(null);
         private transient Transport.PacketPickler _pr;
 
-        ALCheckpointHandle(Watermark aLowWatermark, Transport.Packet aCollect, AcceptorLearner anAl,
-                           Transport.PacketPickler aPickler) {
+        ALCheckpointHandle(Watermark aLowWatermark, long aTailOffset, Transport.Packet aCollect,
+                           AcceptorLearner anAl, Transport.PacketPickler aPickler) {
             _lowWatermark = aLowWatermark;
+            _tailOffset = aTailOffset;
             _lastCollect = aCollect;
             _al.set(anAl);
             _pr = aPickler;
@@ -137,6 +186,14 @@ public class AcceptorLearner implements MessageProcessor {
             byte[] myBytes = new byte[aStream.readInt()];
             aStream.readFully(myBytes);
             _lastCollect = _pr.unpickle(myBytes);
+
+            // Checkpoints written before the tail offset was recorded don't have one, replay all of the log
+            //
+            try {
+                _tailOffset = aStream.readLong();
+            } catch (EOFException anEOFE) {
+                _tailOffset = -1;
+            }
         }
 
         private void writeObject(ObjectOutputStream aStream) throws IOException {
@@ -148,6 +205,7 @@ public class AcceptorLearner implements MessageProcessor {
             byte[] myCollect = _pr.pickle(_lastCollect);
             aStream.writeInt(myCollect.length);
             aStream.write(myCollect);
+            aStream.writeLong(_tailOffset);
         }
 
         public void saved() throws Exception {
@@ -180,6 +238,10 @@ public class AcceptorLearner implements MessageProcessor {
             return _lowWatermark;
         }
 
+        long getTailOffset() {
+            return _tailOffset;
+        }
+
         Transport.Packet getLastCollect() {
             return _lastCollect;
         }
@@ -207,8 +269,23 @@ public class AcceptorLearner implements MessageProcessor {
      ******************************************************************************************** */
 
     AcceptorLearner(LogStorage aStore, Common aCommon, Listener anInitialListener) {
+        this(aStore, aCommon, anInitialListener, Constants.DEFAULT_MAX_INFLIGHT);
+    }
+
+    /**
+     * @param aMaxInflight the number of instances beyond the low watermark to accept Begins for. Must match the
+     *                     window used by leaders and remain the same across restarts as the log is written
+     *                     (and replayed) according to it.
+     */
+    AcceptorLearner(LogStorage aStore, Common aCommon, Listener anInitialListener, int aMaxInflight) {
         _storage = aStore;
         _common = aCommon;
+        _maxInflight = aMaxInflight;
+        _memberIndex = new MemberIndex(aCommon);
+        _sorter = new PacketSorter(aMaxInflight);
+        _cachedBegins = new InstanceWindow<>(aMaxInflight);
+        _acceptLedgers = new InstanceWindow<>(aMaxInflight);
+        _pipeline = new WritePipeline(aStore);
         add(anInitialListener);
     }
 
@@ -274,7 +351,7 @@ public class AcceptorLearner implements MessageProcessor {
      */
     public LedgerPosition open(CheckpointHandle aHandle) throws Exception {
         _lastCheckpoint.set(
-                new ALCheckpointHandle(Watermark.INITIAL, _leadershipState.getLastCollect(),
+                new ALCheckpointHandle(Watermark.INITIAL, -1, _leadershipState.getLastCollect(),
                         null, _common.getTransport().getPickler()));
 
         _storage.open();
@@ -283,24 +360,53 @@ public class AcceptorLearner implements MessageProcessor {
             _common.getNodeState().set(NodeState.State.RECOVERING);
 
             long myStartSeqNum = -1;
+            long myStartOffset = 0;
             
             if (! aHandle.equals(CheckpointHandle.NO_CHECKPOINT)) {
                 if (aHandle instanceof ALCheckpointHandle) {
                     testAndSetCheckpoint((ALCheckpointHandle) aHandle);
                     myStartSeqNum = installCheckpoint((ALCheckpointHandle) aHandle);
+
+                    /*
+                     * All records for instances beyond the checkpoint follow its tail offset (see newCheckpoint) so
+                     * if that offset is valid for our log (installCheckpoint will have discarded the watermark's
+                     * offset if it's not) we need only replay from there.
+                     */
+                    if (_lowWatermark.get().getLogOffset() >= 0)
+                        myStartOffset = Math.max(((ALCheckpointHandle) aHandle).getTailOffset(), 0);
                 } else
                     throw new IllegalArgumentException("Not a valid CheckpointHandle: " + aHandle);
             }
 
+            _index.reset(myStartSeqNum);
+            _recentBegins.reset(myStartSeqNum);
+
+            _logger.debug(toString() + " Replaying from: " + Long.toHexString(myStartOffset));
+
             try {
                 new LogRangeProducer(myStartSeqNum, Long.MAX_VALUE, new Consumer() {
                     public void process(Transport.Packet aPacket, long aLogOffset) {
+                        _index.add(aPacket.getMessage().getSeqNum(), aLogOffset);
                         AcceptorLearner.this.process(aPacket, new ReplayWriter(aLogOffset), new RecoverySender());
                     }
-                }, _storage, _common.getTransport().getPickler()).produce(0);
+                }, _storage, _common.getTransport().getPickler(), null, _maxInflight).produce(myStartOffset);
             } catch (Exception anE) {
                 _logger.error(toString() + " Failed to replay log", anE);
+
+                // Index is incomplete and cannot be trusted, leave it covering nothing so we always scan the log
+                //
+                _index.reset(Long.MAX_VALUE);
+                _recentBegins.reset(Long.MAX_VALUE);
             }
+
+            /*
+             * We may have granted the current leader a lease before we went down, continue to honour it as if we'd
+             * just heard from that leader.
+             */
+            if (! ((Collect) _leadershipState.getLastCollect().getMessage()).isInitial())
+                _leadershipState.leaderAction();
+
+            _pipeline.start(toString());
         } finally {
             _common.getNodeState().testAndSet(NodeState.State.RECOVERING, NodeState.State.ACTIVE);
         }
@@ -328,7 +434,7 @@ public class AcceptorLearner implements MessageProcessor {
                 _guardLock.unlock();
             }
 
-            TimerTask myAlarm = _recoveryAlarm.getAndSet(null);
+            WheelTimer.Task myAlarm = _recoveryAlarm.getAndSet(null);
             if (myAlarm != null)
                 myAlarm.cancel();
 
@@ -336,10 +442,18 @@ public class AcceptorLearner implements MessageProcessor {
 
             _leadershipState.clearLeadership();
             _lowWatermark.set(Watermark.INITIAL);
+            delivered(Constants.UNKNOWN_SEQ);
 
             _sorter.clear();
-            _cachedBegins.clear();
+            _cachedBegins.reset(Constants.UNKNOWN_SEQ);
+            _acceptLedgers.reset(Constants.UNKNOWN_SEQ);
+            _pendingLearned.clear();
+            _index.reset(Constants.UNKNOWN_SEQ);
+            _recentBegins.reset(Constants.UNKNOWN_SEQ);
 
+            // Flush any outstanding writes, their accepts will be dropped as we're shutdown
+            //
+            _pipeline.stop();
             _storage.close();
 
         } catch (Exception anE) {
@@ -361,7 +475,9 @@ public class AcceptorLearner implements MessageProcessor {
         // Low watermark will always lag collect so no need for atomicity here
         //
         try {
-            return new ALCheckpointHandle(_lowWatermark.get(),
+            Watermark myLow = _lowWatermark.get();
+
+            return new ALCheckpointHandle(myLow, tailOffset(myLow),
                     _leadershipState.getLastCollect(), this, _common.getTransport().getPickler());
         } finally {
             unguard();
@@ -373,13 +489,41 @@ public class AcceptorLearner implements MessageProcessor {
             throw new IllegalStateException("Instance is shutdown");
 
         try {
-            if (testAndSetCheckpoint(aHandle))
-                _storage.mark(aHandle.getLowWatermark().getLogOffset(), true);
+            // A watermark without a local log offset (see installCheckpoint) gives us nothing to truncate at
+            //
+            if (testAndSetCheckpoint(aHandle)) {
+                if (aHandle.getTailOffset() >= 0)
+                    _storage.mark(aHandle.getTailOffset(), true);
+
+                _index.truncate(aHandle.getLowWatermark().getSeqNum());
+                _recentBegins.truncate(aHandle.getLowWatermark().getSeqNum());
+            }
         } finally {
             unguard();
         }
     }
 
+    /**
+     * Records for an instance are logged only once the low watermark is within the inflight window of it. Thus with
+     * a window of one, no record for an instance beyond the watermark can precede the learned record for the
+     * watermark. With a larger window, Begins for later instances may have been logged before that learned record
+     * and the earliest of them must be located via the index.
+     *
+     * @return the offset from which all records for instances beyond the watermark can be found or -1 if there is
+     * no such offset (in which case the log must be scanned from the start).
+     */
+    private long tailOffset(Watermark aLow) {
+        if (aLow.getLogOffset() < 0)
+            return -1;
+
+        long[] myOffsets = _index.getOffsets(aLow.getSeqNum(), Long.MAX_VALUE);
+
+        if (myOffsets == null)
+            return -1;
+
+        return ((myOffsets.length == 0) ? aLow.getLogOffset() : Math.min(myOffsets[0], aLow.getLogOffset()));
+    }
+
     private boolean testAndSetCheckpoint(ALCheckpointHandle aHandle) {
         // If the checkpoint we're installing is newer...
         //
@@ -404,12 +548,44 @@ public class AcceptorLearner implements MessageProcessor {
         _logger.info(toString() + " Checkpoint installed: " + aHandle.getLastCollect() + " @ " +
                 aHandle.getLowWatermark());
 
-        _lowWatermark.set(aHandle.getLowWatermark());
+        _lowWatermark.set(localise(aHandle.getLowWatermark()));
+        delivered(aHandle.getLowWatermark().getSeqNum());
         _sorter.recoveredToCheckpoint(aHandle.getLowWatermark().getSeqNum());
+        _cachedBegins.advance(aHandle.getLowWatermark().getSeqNum());
+        _acceptLedgers.advance(aHandle.getLowWatermark().getSeqNum());
         
         return aHandle.getLowWatermark().getSeqNum();        
     }
 
+    /**
+     * A checkpoint handle may have been obtained from another node in which case the log offset it carries is
+     * meaningless for our log. We only trust the offset if it locates the learned record for the watermark, otherwise
+     * we discard it such that log scans are made from the start of the log.
+     *
+     * @param aWatermark
+     * @return a watermark with a log offset that is valid for our log or no offset at all.
+     */
+    private Watermark localise(Watermark aWatermark) {
+        if (aWatermark.getLogOffset() < 0)
+            return aWatermark;
+
+        try {
+            byte[] myRecord = _storage.get(aWatermark.getLogOffset());
+
+            if (myRecord != null) {
+                PaxosMessage myMessage = _common.getTransport().getPickler().unpickle(myRecord).getMessage();
+
+                if ((myMessage.getType() == PaxosMessage.Types.LEARNED) &&
+                        (myMessage.getSeqNum() == aWatermark.getSeqNum()))
+                    return aWatermark;
+            }
+        } catch (Exception anE) {
+            _logger.debug(toString() + " Checkpoint offset not valid for our log: " + aWatermark, anE);
+        }
+
+        return new Watermark(aWatermark.getSeqNum(), -1);
+    }
+
     /**
      * When an AL is out of date, call this method to bring it back into sync from a remotely sourced
      * checkpoint.
@@ -443,10 +619,15 @@ public class AcceptorLearner implements MessageProcessor {
                 _logger.debug(this + " restored to active");
 
                 installCheckpoint(myHandle);
+                _index.reset(myHandle.getLowWatermark().getSeqNum());
+                _recentBegins.reset(myHandle.getLowWatermark().getSeqNum());
 
                 // Write collect from our new checkpoint to log and use that as the starting point for replay.
                 //
-                _storage.mark(new LiveWriter().write(myHandle.getLastCollect(), false), true);
+                long myCollectOffset = new LiveWriter().write(myHandle.getLastCollect(), false);
+
+                _storage.mark(myCollectOffset, true);
+                _lowWatermark.set(new Watermark(myHandle.getLowWatermark().getSeqNum(), myCollectOffset));
             }
 
             /*
@@ -464,6 +645,7 @@ public class AcceptorLearner implements MessageProcessor {
 
             _recoveryWindow.set(null);
             _cachedBegins.clear();
+            _pendingLearned.clear();
 
             return true;
 
@@ -482,6 +664,54 @@ public class AcceptorLearner implements MessageProcessor {
 
     public long getLastSeq() { return _lowWatermark.get().getSeqNum(); }
 
+    /**
+     * @return the sequence number of the last instance whose value has been delivered to all listeners.
+     */
+    long getDeliveredSeq() {
+        return _deliveredSeq.get();
+    }
+
+    private void delivered(long aSeqNum) {
+        synchronized(_deliveredSeq) {
+            _deliveredSeq.set(aSeqNum);
+            _deliveredSeq.notifyAll();
+        }
+    }
+
+    /**
+     * @param aSeqNum the instance whose value must have been delivered to listeners
+     * @param aTimeout the maximum time in milliseconds to wait
+     * @return <code>true</code> if the value was delivered within the timeout, <code>false</code> otherwise.
+     */
+    boolean awaitDelivered(long aSeqNum, long aTimeout) {
+        long myExpiry = System.currentTimeMillis() + aTimeout;
+
+        synchronized(_deliveredSeq) {
+            while (_deliveredSeq.get() < aSeqNum) {
+                long myPause = myExpiry - System.currentTimeMillis();
+
+                if (myPause < 1)
+                    return false;
+
+                try {
+                    _deliveredSeq.wait(myPause);
+                } catch (InterruptedException anIE) {
+                }
+            }
+
+            return true;
+        }
+    }
+
+    /**
+     * @return the address of the leader we're currently accepting or <code>null</code> if there is none.
+     */
+    InetSocketAddress getLeaderAddress() {
+        Transport.Packet myCollect = _leadershipState.getLastCollect();
+
+        return (((Collect) myCollect.getMessage()).isInitial()) ? null : myCollect.getSource();
+    }
+
     public long getLeaderRndNum() {
         return _leadershipState.getLeaderRndNum();
     }
@@ -563,109 +793,163 @@ public class AcceptorLearner implements MessageProcessor {
                 }
             }
 
-            final Writer myWriter = new LiveWriter();
-            int myProcessed;
-
             _logger.debug(toString() + " queuing " + aPacket.getSource() + ", " + myMessage +
                     ", loWmk " + Long.toHexString(_lowWatermark.get().getSeqNum()));
 
+            /*
+             * A Begin tells us the most recent instance its leader knows to be decided. If we missed the accepts for
+             * that instance we can learn it now rather than fall behind and recover. The Learned is only acted upon
+             * if we hold the Begin for the same round.
+             */
+            if (myMessage.getType() == PaxosMessage.Types.BEGIN) {
+                Begin myBegin = (Begin) myMessage;
+
+                if (myBegin.getCommittedSeqNum() > _lowWatermark.get().getSeqNum())
+                    _sorter.add(_common.getTransport().getPickler().newPacket(
+                            new Learned(myBegin.getCommittedSeqNum(), myBegin.getCommittedRndNumber())));
+            }
+
             _sorter.add(aPacket);
 
-            do {
-                myProcessed =
-                        _sorter.process(_lowWatermark.get().getSeqNum(), new PacketSorter.PacketProcessor() {
-                            public void consume(Transport.Packet aPacket) {
-                                boolean myRecoveryInProgress = _common.getNodeState().test(NodeState.State.RECOVERING);
-                                Sender mySender = ((myRecoveryInProgress) || (! _common.amMember())) ?
-                                        new RecoverySender() : new LiveSender();
-
-                                process(aPacket, myWriter, mySender);
-
-                                if (myRecoveryInProgress) {
-                                    if ((_lowWatermark.get().getSeqNum() == _recoveryWindow.get().getMaxSeq()) &&
-                                            (_common.getNodeState().testAndSet(NodeState.State.RECOVERING,
-                                                    NodeState.State.ACTIVE))) {
-                                        _leadershipState.resetLeaderAction();
-                                        completedRecovery();
-                                    }
+            drain();
+        } finally {
+            unguard();
+        }
+	}
+
+    /**
+     * Packets may be delivered by several threads at once. Learning must proceed in order at the low watermark so
+     * only one of those threads processes packets from the sorter at any time, the others leave theirs for it to
+     * pick up. The count of outstanding requests ensures a packet added just as the draining thread finishes is not
+     * stranded.
+     *
+     * Should a pass fail, requests that arrived during it must still be served before the failure is passed on, their
+     * threads have already returned and won't be back to drain.
+     */
+    private void drain() {
+        if (_drainRequests.getAndIncrement() != 0)
+            return;
+
+        int myRequests = 1;
+        Throwable myFailure = null;
+
+        do {
+            try {
+                drainSorter();
+            } catch (RuntimeException | Error anE) {
+                if (myFailure == null)
+                    myFailure = anE;
+                else
+                    myFailure.addSuppressed(anE);
+            }
+
+            myRequests = _drainRequests.addAndGet(-myRequests);
+        } while (myRequests != 0);
+
+        if (myFailure instanceof Error)
+            throw (Error) myFailure;
+        else if (myFailure != null)
+            throw (RuntimeException) myFailure;
+    }
+
+    private void drainSorter() {
+        final Writer myWriter = new LiveWriter();
+        int myProcessed;
+
+        do {
+            myProcessed =
+                    _sorter.process(_lowWatermark.get().getSeqNum(), new PacketSorter.PacketProcessor() {
+                        public void consume(Transport.Packet aPacket) {
+                            boolean myRecoveryInProgress = _common.getNodeState().test(NodeState.State.RECOVERING);
+                            Sender mySender = ((myRecoveryInProgress) || (! _common.amMember())) ?
+                                    new RecoverySender() : new LiveSender();
+
+                            process(aPacket, myWriter, mySender);
+
+                            if (myRecoveryInProgress) {
+                                if ((_lowWatermark.get().getSeqNum() >= _recoveryWindow.get().getMaxSeq()) &&
+                                        (_common.getNodeState().testAndSet(NodeState.State.RECOVERING,
+                                                NodeState.State.ACTIVE))) {
+                                    completedRecovery();
                                 }
                             }
+                        }
 
-                            public boolean recover(Need aNeed, InetSocketAddress aSourceAddr) {
-                                boolean myResult = _common.getNodeState().testAndSet(NodeState.State.ACTIVE,
-                                        NodeState.State.RECOVERING);
-
-                                if (myResult) {
-                                    _recoveryWindow.set(aNeed);
-                                    _stats._recoveryCycles.incrementAndGet();
-
-                                    /*
-                                     * Both cachedBegins and acceptLedger run ahead of the low watermark thus if we're
-                                     * entering recovery which starts at low watermark + 1, none of these are worth
-                                     * keeping because we'll get them back as packets are streamed to us.
-                                     */
-                                    _cachedBegins.clear();
-                                    _acceptLedgers.clear();
-
-                                    /*
-                                     * If we've just started up, neither the AL or Leader will have correct state.
-                                     * Should our local leader be selected to lead it will almost certainly receive
-                                     * OLD_ROUND from other nodes to bring it back into sync with sequence numbers.
-                                     * However the local AL will accept the COLLECT which can then interfere with
-                                     * recovery (which would be triggered by the local leader now it's in sync or
-                                     * some other leader).
-                                     *
-                                     * To avoid such a situation, we dump a COLLECT that lies within the recovery window
-                                     * which for this particular case would be COLLECT at seqnum = 0 with a window of
-                                     * -1 to triggering packet seqnum - 1.
-                                     */
-                                    _logger.debug(AcceptorLearner.this.toString() + " Transition to recovery: " +
-                                            Long.toHexString(_lowWatermark.get().getSeqNum()));
-
-                                    if (_leadershipState.getLastCollect().getMessage().getSeqNum() > aNeed.getMinSeq()) {
-                                        _logger.warn(AcceptorLearner.this.toString() +
-                                                " Current collect could interfere with recovery window - binning " +
-                                            _leadershipState.getLastCollect().getMessage() + ", " + aNeed);
-
-                                        _leadershipState.clearLeadership();
-                                    }
-
-                                    /*
-                                     * Ask a node to bring us up to speed. Note that this node mightn't have all the
-                                     * records we need.
-                                     *
-                                     * If that's the case, it won't stream at all or will only stream some part of our
-                                     * recovery window. As the recovery watchdog measures progress through the recovery
-                                     * window, a partial recovery or no recovery will be noticed and we'll ask a new
-                                     * random node to bring us up to speed.
-                                     */
-                                    InetSocketAddress myNeedTarget = _common.getTransport().getFD().getRandomMember(
-                                            _common.getTransport().getLocalAddress());
-
-                                    /*
-                                     * Prefer random selection as it helps spread load but fallback to source node
-                                     * (likely the current leader) if all else fails (e.g. because we have no valid
-                                     * membership).
-                                     */
-                                    if (myNeedTarget != null)
-                                        new LiveSender().send(aNeed, myNeedTarget);
-                                    else
-                                        new LiveSender().send(aNeed, aSourceAddr);
-
-                                    // Startup recovery watchdog
-                                    //
-                                    reschedule();
+                        public boolean recover(Need aNeed, InetSocketAddress aSourceAddr) {
+                            boolean myResult = _common.getNodeState().testAndSet(NodeState.State.ACTIVE,
+                                    NodeState.State.RECOVERING);
+
+                            if (myResult) {
+                                _recoveryWindow.set(aNeed);
+                                _stats._recoveryCycles.incrementAndGet();
+
+                                /*
+                                 * Both cachedBegins and acceptLedger run ahead of the low watermark thus if we're
+                                 * entering recovery which starts at low watermark + 1, none of these are worth
+                                 * keeping because we'll get them back as packets are streamed to us.
+                                 */
+                                _cachedBegins.clear();
+                                _acceptLedgers.clear();
+                                _pendingLearned.clear();
+
+                                /*
+                                 * If we've just started up, neither the AL or Leader will have correct state.
+                                 * Should our local leader be selected to lead it will almost certainly receive
+                                 * OLD_ROUND from other nodes to bring it back into sync with sequence numbers.
+                                 * However the local AL will accept the COLLECT which can then interfere with
+                                 * recovery (which would be triggered by the local leader now it's in sync or
+                                 * some other leader).
+                                 *
+                                 * To avoid such a situation, we dump a COLLECT that lies within the recovery window
+                                 * which for this particular case would be COLLECT at seqnum = 0 with a window of
+                                 * -1 to triggering packet seqnum - 1.
+                                 *
+                                 * Note the lease granted to that COLLECT's leader is retained, no other leader can
+                                 * take over until it has expired.
+                                 */
+                                _logger.debug(AcceptorLearner.this.toString() + " Transition to recovery: " +
+                                        Long.toHexString(_lowWatermark.get().getSeqNum()));
+
+                                if (_leadershipState.getLastCollect().getMessage().getSeqNum() > aNeed.getMinSeq()) {
+                                    _logger.warn(AcceptorLearner.this.toString() +
+                                            " Current collect could interfere with recovery window - binning " +
+                                        _leadershipState.getLastCollect().getMessage() + ", " + aNeed);
+
+                                    _leadershipState.clearLeadership();
                                 }
 
-                                return myResult;
+                                /*
+                                 * Ask a node to bring us up to speed. Note that this node mightn't have all the
+                                 * records we need.
+                                 *
+                                 * If that's the case, it won't stream at all or will only stream some part of our
+                                 * recovery window. As the recovery watchdog measures progress through the recovery
+                                 * window, a partial recovery or no recovery will be noticed and we'll ask a new
+                                 * random node to bring us up to speed.
+                                 */
+                                InetSocketAddress myNeedTarget = _common.getTransport().getFD().getRandomMember(
+                                        _common.getTransport().getLocalAddress());
+
+                                /*
+                                 * Prefer random selection as it helps spread load but fallback to source node
+                                 * (likely the current leader) if all else fails (e.g. because we have no valid
+                                 * membership).
+                                 */
+                                if (myNeedTarget != null)
+                                    new LiveSender().send(aNeed, myNeedTarget);
+                                else
+                                    new LiveSender().send(aNeed, aSourceAddr);
+
+                                // Startup recovery watchdog
+                                //
+                                reschedule();
                             }
-                        });
-            } while (myProcessed != 0);
 
-        } finally {
-            unguard();
-        }
-	}
+                            return myResult;
+                        }
+                    });
+        } while (myProcessed != 0);
+    }
 
     private void serveNeedFromRecovery(Transport.Packet aPacket) {
         _logger.debug(toString() + "Serving NEED from recovery " + aPacket);
@@ -679,7 +963,7 @@ public class AcceptorLearner implements MessageProcessor {
      *
      ******************************************************************************************** */
 
-    private class Watchdog extends TimerTask {
+    private class Watchdog extends WheelTimer.Task {
         private final Watermark _past = _lowWatermark.get();
 
         public void run() {
@@ -713,7 +997,7 @@ public class AcceptorLearner implements MessageProcessor {
     private void reschedule() {
         _logger.trace(toString() + " Rescheduling");
 
-        TimerTask myAlarm = new Watchdog();
+        WheelTimer.Task myAlarm = new Watchdog();
 
         if (_recoveryAlarm.compareAndSet(null, myAlarm)) {
             _common.getWatchdog().schedule(myAlarm, calculateRecoveryGracePeriod());
@@ -731,6 +1015,20 @@ public class AcceptorLearner implements MessageProcessor {
         }
     }
 
+    /**
+     * @param aWindow the number of instances at or below the low watermark for which Lasts are served from memory.
+     */
+    void setRecentBeginWindow(int aWindow) {
+        if (guard())
+            throw new IllegalStateException("Instance is shutdown");
+
+        try {
+            _recentBegins.setWindow(aWindow);
+        } finally {
+            unguard();
+        }
+    }
+
     private long calculateRecoveryGracePeriod() {
         return _gracePeriod.get();
     }
@@ -752,11 +1050,9 @@ public class AcceptorLearner implements MessageProcessor {
     private void completedRecovery() {
         _logger.debug(toString() + " Recovery complete: " + _common.getNodeState());
 
-        TimerTask myAlarm = _recoveryAlarm.getAndSet(null);
-        if (myAlarm != null) {
+        WheelTimer.Task myAlarm = _recoveryAlarm.getAndSet(null);
+        if (myAlarm != null)
             myAlarm.cancel();
-            _common.getWatchdog().purge();
-        }
 
         _recoveryWindow.set(null);
     }
@@ -852,7 +1148,7 @@ public class AcceptorLearner implements MessageProcessor {
 				// If the begin matches the last round of a collect we're fine
 				//
 				if (_leadershipState.originates(aPacket)) {
-					_leadershipState.leaderAction();
+					leaderAction();
 
                     /*
                      * Special case, the leader could be playing catchup on the ledger because it never saw
@@ -864,15 +1160,26 @@ public class AcceptorLearner implements MessageProcessor {
                         _logger.warn(toString() + " Leader is resync'ing with Ledger " + myBegin);
 
                         aSender.send(new Accept(mySeqNum, _leadershipState.getLeaderRndNum()),
-                                _common.getTransport().getBroadcastAddress());
+                                acceptDestination(myNodeId));
 
                     } else {
                         _cachedBegins.put(myBegin.getSeqNum(), myBegin);
-
-                        aWriter.write(aPacket, true);
-
-                        aSender.send(new Accept(mySeqNum, _leadershipState.getLeaderRndNum()),
-                                _common.getTransport().getBroadcastAddress());
+                        _recentBegins.add(myBegin);
+
+                        /*
+                         * We can't accept until the begin is on disk but there's no need to hold up processing of
+                         * other packets in the meantime. Tallying can proceed too as any resulting learned record
+                         * will be logged after the begin.
+                         */
+                        final Accept myAccept = new Accept(mySeqNum, _leadershipState.getLeaderRndNum());
+                        final InetSocketAddress myDestination = acceptDestination(myNodeId);
+                        final Sender mySender = aSender;
+
+                        aWriter.write(aPacket, new Runnable() {
+                            public void run() {
+                                mySender.send(myAccept, myDestination);
+                            }
+                        });
 
                         purgeAcceptLedger(myBegin);
 
@@ -924,47 +1231,149 @@ public class AcceptorLearner implements MessageProcessor {
             }
 
             /*
-             * LEARNED will only be processed on a recovery run. It is generated and logged as the result of tallying
-             * ACCEPTs from all AL's in the cluster and BEGINs from Leaders. It is NEVER, sent across the network
-             * by a leader but MAY be sent from another AL in response to a NEED. This latter exposes a risk of
-             * packet loss causing the prior BEGIN to go missing which we must allow for.
+             * LEARNED is generated and logged as the result of tallying ACCEPTs from all AL's in the cluster and
+             * BEGINs from Leaders. It is only sent across the network by a leader when accepts are aggregated (see
+             * Common.isAggregateAccepts) but MAY be sent from another AL in response to a NEED. Either way there's
+             * a risk of packet loss causing the prior BEGIN to go missing which we must allow for. We must also
+             * ensure the LEARNED is for the round of the BEGIN we hold.
+             *
+             * A thrifty leader sends the value with the LEARNED to those members it didn't send the BEGIN. The value
+             * is decided so stands in for whatever BEGIN we hold and, as it's logged with the LEARNED, replay
+             * recovers it the same way.
              *
              * ACCEPTs themselves are never logged individually or even as a group.
              */
 			case PaxosMessage.Types.LEARNED: {
-                if (_cachedBegins.get(myMessage.getSeqNum()) != null)
+                Learned myLearned = (Learned) myMessage;
+                Begin myCachedBegin = _cachedBegins.get(mySeqNum);
+
+                if ((myLearned.getValue() != null) && (mySeqNum > _lowWatermark.get().getSeqNum()) &&
+                        ((myCachedBegin == null) || (myCachedBegin.getRndNumber() != myLearned.getRndNum()))) {
+                    myCachedBegin = new Begin(mySeqNum, myLearned.getRndNum(), myLearned.getValue());
+
+                    _cachedBegins.put(mySeqNum, myCachedBegin);
+                    _recentBegins.add(myCachedBegin);
+                }
+
+                if ((myCachedBegin != null) && (myCachedBegin.getRndNumber() == myLearned.getRndNum()))
                     learned(aPacket, aWriter);
 
 				break;
 			}
 
+            /*
+             * RENEW extends the current leader's lease without an instance of Paxos and thus without touching the log.
+             * It is sequenced as the instance after the leader's last so we only see it once we're up to date.
+             */
+            case PaxosMessage.Types.RENEW: {
+                Renew myRenew = (Renew) myMessage;
+
+                if (_leadershipState.renews(aPacket)) {
+                    leaderAction();
+                    _stats._receivedHeartbeats.incrementAndGet();
+
+                    _logger.trace(toString() + " renewed lease: " + myRenew + ", " + _stats.getHeartbeatCount());
+
+                    aSender.send(new Renewed(mySeqNum, myRenew.getRndNumber(), myRenew.getTimestamp()), myNodeId);
+                } else if (myRenew.getRndNumber() < _leadershipState.getLeaderRndNum()) {
+                    _logger.warn(toString() + " OLDROUND - RENEW " + myRenew + " vs " +
+                            _leadershipState.getLastCollect().getMessage());
+
+                    aSender.send(new OldRound(_lowWatermark.get().getSeqNum(),
+                            _leadershipState.getLeaderAddress(), _leadershipState.getLeaderRndNum()), myNodeId);
+                }
+
+                break;
+            }
+
 			default:
 				throw new RuntimeException("Unexpected message" + ", " + _common.getTransport().getLocalAddress());
 		}
 	}
 
     /**
-     * Perform all actions associated with the act of learning a value for a sequence number.
+     * Packets processed whilst recovering are history streamed from another node or replayed from our log, they say
+     * nothing of whether the leader is still active and our responses to them are squelched. Thus only live packets
+     * extend the lease we grant a leader.
+     */
+    private void leaderAction() {
+        if (! _common.getNodeState().test(NodeState.State.RECOVERING))
+            _leadershipState.leaderAction();
+    }
+
+    /**
+     * Perform all actions associated with the act of learning a value for a sequence number, deferring them if
+     * earlier instances are yet to be learned.
      *
      * @param aPacket
      * @param aWriter
      */
     private void learned(Transport.Packet aPacket, Writer aWriter) {
+        if (aPacket.getMessage().getSeqNum() > _lowWatermark.get().getSeqNum() + 1) {
+            _logger.trace(toString() + " Deferring learned: " + aPacket.getMessage());
+
+            _pendingLearned.put(aPacket.getMessage().getSeqNum(), aPacket);
+            return;
+        }
+
+        learn(aPacket, aWriter);
+
+        // Now catch up with any later instances that were decided ahead of this one
+        //
+        Map.Entry<Long, Transport.Packet> myNext;
+
+        while ((myNext = _pendingLearned.pollFirstEntry()) != null) {
+            long myNextSeq = myNext.getKey();
+            long myLowSeq = _lowWatermark.get().getSeqNum();
+
+            if (myNextSeq <= myLowSeq)
+                continue;
+
+            if ((myNextSeq > myLowSeq + 1) || (_cachedBegins.get(myNextSeq) == null)) {
+                _pendingLearned.put(myNextSeq, myNext.getValue());
+                break;
+            }
+
+            // Dropped if a Begin from another round has since replaced the one it was for
+            //
+            learn(myNext.getValue(), aWriter);
+        }
+    }
+
+    /**
+     * A Learned deferred whilst earlier instances were outstanding may have been overtaken by a Begin from a later
+     * round. Should that happen, it is discarded and we wait for a Learned for the Begin we hold rather than deliver
+     * its value.
+     */
+    private void learn(Transport.Packet aPacket, Writer aWriter) {
         Learned myLearned = (Learned) aPacket.getMessage();
         long mySeqNum = myLearned.getSeqNum();
+        Begin myBegin = _cachedBegins.get(mySeqNum);
 
-        _leadershipState.leaderAction();
+        if ((myBegin == null) || (myBegin.getRndNumber() != myLearned.getRndNum())) {
+            _logger.warn(toString() + " Discarding learned for another round: " + myLearned + ", " + myBegin);
 
-        _acceptLedgers.remove(myLearned.getSeqNum());
+            return;
+        }
 
-        Begin myBegin = _cachedBegins.remove(mySeqNum);
+        leaderAction();
+
+        _cachedBegins.remove(mySeqNum);
 
         // Record the learned value even if it's the heartbeat so there are no gaps in the Paxos sequence
         //
         long myLogOffset = aWriter.write(aPacket, true);
 
         _lowWatermark.set(new Watermark(mySeqNum, myLogOffset));
+        _recentBegins.advance(mySeqNum);
+
+        // Also sweeps away state for any earlier instances we learnt without tallying (e.g. via recovery)
+        //
+        _cachedBegins.advance(mySeqNum);
+        _acceptLedgers.advance(mySeqNum);
 
+        // Leaders now renew their lease with RENEW but logs may yet contain heartbeat instances
+        //
         if (myBegin.getConsolidatedValue().get(HEARTBEAT_KEY) != null) {
             _stats._receivedHeartbeats.incrementAndGet();
 
@@ -980,6 +1389,16 @@ public class AcceptorLearner implements MessageProcessor {
             _logger.debug(toString() + " membership changed to " + myAddrs);
 
             _common.getTransport().getFD().pin(myAddrs);
+            _memberIndex.retain(myAddrs);
+        } else if (myBegin.getConsolidatedValue().get(ProposalBatcher.BATCH_KEY) != null) {
+            _logger.debug(toString() + " Learnt batch: " + mySeqNum);
+
+            for (Proposal myValue : ProposalBatcher.unpack(myBegin.getConsolidatedValue().get(ProposalBatcher.BATCH_KEY)))
+                signal(new StateEvent(StateEvent.Reason.VALUE, mySeqNum,
+                        _leadershipState.getLeaderRndNum(),
+                        myValue,
+                        _common.getTransport().getFD().dataForNode(aPacket.getSource()),
+                        aPacket.getSource()));
         } else {
             _logger.debug(toString() + " Learnt value: " + mySeqNum);
 
@@ -989,6 +1408,16 @@ public class AcceptorLearner implements MessageProcessor {
                     _common.getTransport().getFD().dataForNode(aPacket.getSource()),
                     aPacket.getSource()));
         }
+
+        delivered(mySeqNum);
+    }
+
+    /**
+     * @param aLeader the leader that sent the Begin being accepted.
+     * @return the leader if accepts are aggregated, otherwise all members such that each can tally for itself.
+     */
+    private InetSocketAddress acceptDestination(InetSocketAddress aLeader) {
+        return (_common.isAggregateAccepts()) ? aLeader : _common.getTransport().getBroadcastAddress();
     }
 
     /**
@@ -998,12 +1427,12 @@ public class AcceptorLearner implements MessageProcessor {
      * @return the newly or previously created ledger for the specified sequence number.
      */
     private AcceptLedger getAndCreateAcceptLedger(Transport.Packet anAccept) {
-        Long mySeqNum = anAccept.getMessage().getSeqNum();
+        long mySeqNum = anAccept.getMessage().getSeqNum();
         AcceptLedger myAccepts = _acceptLedgers.get(mySeqNum);
 
         if (myAccepts == null) {
-            AcceptLedger myInitial = new AcceptLedger(toString(), mySeqNum);
-            AcceptLedger myResult = _acceptLedgers.put(mySeqNum, myInitial);
+            AcceptLedger myInitial = new AcceptLedger(toString(), mySeqNum, _memberIndex);
+            AcceptLedger myResult = _acceptLedgers.putIfAbsent(mySeqNum, myInitial);
 
             myAccepts = ((myResult == null) ? myInitial : myResult);
         }
@@ -1053,19 +1482,33 @@ public class AcceptorLearner implements MessageProcessor {
 		Begin myState;
 		
 		try {
-            // If we know nothing, we must start from beginning of log otherwise we start from the low watermark.
-            //
-			if (myLow.equals(Watermark.INITIAL)) {
+            /*
+             * Recent instances can be answered from memory, including the absence of any state. For others, if we
+             * know nothing, we must start from beginning of log otherwise we start from the tail of the low
+             * watermark. Records for earlier instances precede the tail, in which case we must also scan from the
+             * start.
+             */
+			if (_recentBegins.covers(mySeqNum)) {
+                myState = _recentBegins.get(mySeqNum);
+            } else if (mySeqNum <= myLow.getSeqNum()) {
 				myState = new StateFinder(mySeqNum, 0).getState();
 			} else 
-				myState = new StateFinder(mySeqNum, myLow.getLogOffset()).getState();
+				myState = new StateFinder(mySeqNum, Math.max(tailOffset(myLow), 0)).getState();
 		} catch (Exception anE) {
 			_logger.error(toString() + " Failed to replay log", anE);
 			throw new RuntimeException(toString() + "Failed to replay log", anE);
 		}
 		
+        /*
+         * A previous leader may have had Begins accepted for instances after this one, the new leader must collect
+         * those too. If we can't be sure of the Begins we hold, assume the whole inflight window.
+         */
+        long myHighest = (_recentBegins.covers(mySeqNum)) ? _recentBegins.highestSeq() :
+                Math.max(mySeqNum, myLow.getSeqNum() + 1) + _maxInflight - 1;
+
 		if (myState != null) {
-            return new Last(mySeqNum, myLow.getSeqNum(), myState.getRndNumber(), myState.getConsolidatedValue());
+            return new Last(mySeqNum, myLow.getSeqNum(), myState.getRndNumber(), myState.getConsolidatedValue(),
+                    myHighest);
 		} else {
             /*
              * No state found. If we've gc'd and checkpointed, we can't provide an answer. In such a case,
@@ -1078,7 +1521,7 @@ public class AcceptorLearner implements MessageProcessor {
                         _leadershipState.getLeaderRndNum());
             } else
                 return new Last(mySeqNum, myLow.getSeqNum(),
-                        Long.MIN_VALUE, Proposal.NO_VALUE);
+                        Long.MIN_VALUE, Proposal.NO_VALUE, myHighest);
         }
 	}
 
@@ -1115,6 +1558,13 @@ public class AcceptorLearner implements MessageProcessor {
 
     interface Writer {
         public long write(Transport.Packet aPacket, boolean aForceRequired);
+
+        /**
+         * Write a packet that must be durable before it is acted upon without waiting for it to be so.
+         *
+         * @param aDurable to be run once the packet is durable.
+         */
+        public void write(Transport.Packet aPacket, Runnable aDurable);
     }
 
     static class ReplayWriter implements Writer {
@@ -1127,17 +1577,39 @@ public class AcceptorLearner implements MessageProcessor {
         public long write(Transport.Packet aPacket, boolean aForceRequired) {
             return _offset;
         }
+
+        public void write(Transport.Packet aPacket, Runnable aDurable) {
+            aDurable.run();
+        }
     }
 
     class LiveWriter implements Writer {
         public long write(Transport.Packet aPacket, boolean aForceRequired) {
             try {
-                return _storage.put(_common.getTransport().getPickler().pickle(aPacket), aForceRequired);
+                long myOffset = _pipeline.put(_common.getTransport().getPickler().pickle(aPacket), aForceRequired);
+
+                _index.add(aPacket.getMessage().getSeqNum(), myOffset);
+
+                return myOffset;
             } catch (Exception anE) {
                 _logger.error(AcceptorLearner.this.toString() + " cannot log: " + System.currentTimeMillis(), anE);
                 throw new RuntimeException(anE);
             }            
         }
+
+        public void write(final Transport.Packet aPacket, final Runnable aDurable) {
+            try {
+                _pipeline.put(_common.getTransport().getPickler().pickle(aPacket), new WritePipeline.Completion() {
+                    public void written(long anOffset) {
+                        _index.add(aPacket.getMessage().getSeqNum(), anOffset);
+                        aDurable.run();
+                    }
+                });
+            } catch (Exception anE) {
+                _logger.error(AcceptorLearner.this.toString() + " cannot log: " + System.currentTimeMillis(), anE);
+                throw new RuntimeException(anE);
+            }
+        }
     }
     
     /**
@@ -1148,7 +1620,7 @@ public class AcceptorLearner implements MessageProcessor {
 
         StateFinder(long aSeqNum, long aLogOffset) throws Exception {
             new LogRangeProducer(aSeqNum - 1, aSeqNum, this, _storage,
-                    _common.getTransport().getPickler()).produce(aLogOffset);
+                    _common.getTransport().getPickler(), _index, _maxInflight).produce(aLogOffset);
         }
 
         Begin getState() {
@@ -1194,7 +1666,7 @@ public class AcceptorLearner implements MessageProcessor {
 
             try {
                 new LogRangeProducer(_need.getMinSeq(), _need.getMaxSeq(), this, _storage,
-                        _common.getTransport().getPickler()).produce(0);
+                        _common.getTransport().getPickler(), _index, _maxInflight).produce(0);
             } catch (Exception anE) {
                 _logger.error(AcceptorLearner.this.toString() + " Failed to replay log", anE);
             } finally {
@@ -1,11 +1,11 @@
 package org.dancres.paxos.impl;
 
-import java.util.Timer;
-
 class Common {
     private Transport _transport;
-    private final Timer _watchdog = new Timer("Paxos timers");
+    private final WheelTimer _watchdog = new WheelTimer("Paxos timers");
     private final NodeState _nodeState = new NodeState();
+    private final RoundTrips _roundTrips = new RoundTrips();
+    private volatile boolean _aggregateAccepts = false;
 
     Common(Transport aTransport) {
         _transport = aTransport;
@@ -19,16 +19,32 @@ class Common {
     	_transport = aTransport;
     }
     
-    Timer getWatchdog() {
+    WheelTimer getWatchdog() {
         return _watchdog;
     }
 
+    RoundTrips getRoundTrips() {
+        return _roundTrips;
+    }
+
+    /**
+     * When set, AcceptorLearners send their Accepts only to the leader which, once it has a majority, broadcasts a
+     * Learned for them to learn from. This must be set the same across all members.
+     */
+    void setAggregateAccepts(boolean isAggregate) {
+        _aggregateAccepts = isAggregate;
+    }
+
+    boolean isAggregateAccepts() {
+        return _aggregateAccepts;
+    }
+
     Transport getTransport() {
         return _transport;
     }
 
     void stop() {
-        _watchdog.cancel();
+        _watchdog.stop();
     }
     
     boolean amMember() {
@@ -19,6 +19,8 @@ public class Core implements Transport.Dispatcher, Paxos {
 
     private final AcceptorLearner _al;
     private final LeaderFactory _ld;
+    private final ProposalBatcher _batcher;
+    private final ReadBarrier _readBarrier;
     private final Common _common;
     private final CheckpointHandle _handle;
     private final AtomicBoolean _initd = new AtomicBoolean(false);
@@ -36,11 +38,25 @@ public class Core implements Transport.Dispatcher, Paxos {
 
     public Core(LogStorage aLogger, CheckpointHandle aHandle,
                 Listener aListener, boolean isDisableLeaderHeartbeats) {
+        this(aLogger, aHandle, aListener, isDisableLeaderHeartbeats, Constants.DEFAULT_MAX_INFLIGHT);
+    }
+
+    /**
+     * @param aMaxInflight is the number of instances a leader may have outstanding at once. Every member of the
+     * cluster must use the same value and it must not change across restarts.
+     */
+    public Core(LogStorage aLogger, CheckpointHandle aHandle,
+                Listener aListener, boolean isDisableLeaderHeartbeats, int aMaxInflight) {
+        if (aMaxInflight < 1)
+            throw new IllegalArgumentException("Inflight window must be at least 1: " + aMaxInflight);
+
         _common = new Common();
-        _al = new AcceptorLearner(aLogger, _common, aListener);
-        _ld = new LeaderFactory(_common, isDisableLeaderHeartbeats);
+        _al = new AcceptorLearner(aLogger, _common, aListener, aMaxInflight);
+        _ld = new LeaderFactory(_common, isDisableLeaderHeartbeats, aMaxInflight);
+        _batcher = new ProposalBatcher(_common, _ld);
+        _readBarrier = new ReadBarrier(_common, _al, _ld);
         _handle = aHandle;
-        _msgProcs = Arrays.asList(_al, _ld);
+        _msgProcs = Arrays.asList(_al, _ld, _readBarrier);
     }
 
     public void close() {
@@ -52,6 +68,7 @@ public class Core implements Transport.Dispatcher, Paxos {
 
         _common.stop();
 
+        _batcher.stop();
         _ld.shutdown();
 
         _al.close();
@@ -115,6 +132,10 @@ public class Core implements Transport.Dispatcher, Paxos {
         public boolean updateMembership(Collection<InetSocketAddress> aMembers) throws InactiveException {
             return Core.this.updateMembership(aMembers);
         }
+
+        public Promise<Boolean> updateMembershipAsync(Collection<InetSocketAddress> aMembers) {
+            return Core.this.updateMembershipAsync(aMembers);
+        }
     }
 
     public Membership getMembership() { return new MembershipImpl(_common.getTransport().getFD().getMembers()); }
@@ -152,13 +173,8 @@ public class Core implements Transport.Dispatcher, Paxos {
     }
 
     /**
-     * TODO: Batching could be done here:
-     *
-     * <ol>
-     *     <li>If first in (effected by atomic CAS on a boolean), atomic-queue proposal and then create a leader.</li>
-     *     <li>Once leader is created, atomic-take all proposals in queue and reset first-in (CAS)</li>
-     *     <li>If not first in, atomic queue proposal</li>
-     * </ol>
+     * Concurrently submitted proposals are batched into a single instance of Paxos (see <code>ProposalBatcher</code>).
+     * The outcome of the instance is reported to each submitter with its own proposal.
      *
      * @param aVal
      * @param aCompletion
@@ -171,13 +187,74 @@ public class Core implements Transport.Dispatcher, Paxos {
          * to completion. The originally submitted value will need re-submitting. Hence submitter is told
          * OTHER_VALUE whilst AL listeners will see VALUE containing the previously proposed value.
          */
-        _ld.submit(aVal, aCompletion);
+        _batcher.submit(aVal, aCompletion);
+    }
+
+    /**
+     * Queues the proposal for batching as per <code>submit</code> but doesn't wait for it to be submitted.
+     */
+    public Promise<VoteOutcome> submitAsync(Proposal aVal) {
+        Promise<VoteOutcome> myPromise = new Promise<>();
+
+        _batcher.submitAsync(aVal, myPromise);
+
+        return myPromise;
+    }
+
+    /**
+     * @param aMaxCount the maximum number of proposals to batch into a single instance.
+     * @param aMaxBytes the maximum size of the (marshalled) proposals batched into a single instance.
+     * @param aMaxLinger the maximum time in milliseconds to wait for further proposals to join a batch.
+     */
+    public void setBatchLimits(int aMaxCount, int aMaxBytes, long aMaxLinger) {
+        _batcher.setLimits(aMaxCount, aMaxBytes, aMaxLinger);
+    }
+
+    /**
+     * @param isThrifty <code>true</code> to send each Begin to a majority of the fastest members rather than all of
+     *                  them, falling back to all if that majority doesn't respond in time. The remaining members do
+     *                  less disk and CPU work but lag, catching up via recovery.
+     */
+    public void setThrifty(boolean isThrifty) {
+        _ld.setThrifty(isThrifty);
+    }
+
+    /**
+     * @param isAggregate <code>true</code> to have each member send its accepts only to the leader which then
+     *                    broadcasts the outcome. This reduces the messages per instance from O(N^2) to O(N) at the
+     *                    cost of an extra hop before members other than the leader learn a value. All members must
+     *                    be configured the same.
+     */
+    public void setAggregateAccepts(boolean isAggregate) {
+        _common.setAggregateAccepts(isAggregate);
+    }
+
+    public boolean isLeaseHolder(long aDeadline) {
+        LeaderFactory.Lease myLease = _ld.getLease();
+
+        return ((myLease.isValidUntil(aDeadline)) && (_al.getDeliveredSeq() >= myLease.getSeqNum()));
+    }
+
+    public boolean readBarrier(long aTimeout) {
+        return _readBarrier.await(aTimeout);
     }
 
     boolean updateMembership(Collection<InetSocketAddress> aMembers) throws InactiveException {
         return _ld.updateMembership(aMembers);
     }
 
+    Promise<Boolean> updateMembershipAsync(Collection<InetSocketAddress> aMembers) {
+        final Promise<Boolean> myResult = new Promise<>();
+
+        _batcher.submitAsync(LeaderFactory.membershipChange(aMembers), new Completion<VoteOutcome>() {
+            public void complete(VoteOutcome anOutcome) {
+                myResult.complete(LeaderFactory.membershipChanged(anOutcome));
+            }
+        });
+
+        return myResult;
+    }
+
     public String toString() {
         return "CR [ " + _common.getTransport().getLocalAddress() + " ]";
     }
@@ -0,0 +1,246 @@
+package org.dancres.paxos.impl;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Holds per-instance state for sequence numbers above the low watermark. The instances immediately above it are held
+ * in a circular buffer indexed by sequence number such that lookups needn't box the sequence number. Instances too far
+ * ahead to fit the buffer overflow into a sorted map and move into the buffer as the low watermark advances.
+ *
+ * Advancing the low watermark evicts everything at or below it, including state for instances that were never
+ * learned (e.g. their packets were lost and they were recovered some other way), thus memory is bounded by the size
+ * of the buffer plus whatever has overflowed. Evicted values can be collected in sequence order such that the window
+ * can also serve to hold items until the low watermark reaches them (see <code>PacketSorter</code>).
+ *
+ * @param <V> the type of state held for each instance.
+ */
+class InstanceWindow<V> {
+    private static final int MIN_SLOTS = 256;
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    /**
+     * Slot <code>i</code> holds the value for the sequence number in <code>_slotSeqs[i]</code>, each sequence number in
+     * <code>(_floor, _floor + _slotSeqs.length]</code> maps to exactly one slot.
+     */
+    private final long[] _slotSeqs;
+    private final Object[] _slots;
+    private final int _mask;
+    private long _floor = Constants.UNKNOWN_SEQ;
+
+    private final SortedMap<Long, V> _overflow = new TreeMap<>();
+    private int _size = 0;
+
+    /**
+     * @param aMaxInflight the number of instances beyond the low watermark that state will typically be held for.
+     */
+    InstanceWindow(int aMaxInflight) {
+        int mySize = Integer.highestOneBit(Math.max(MIN_SLOTS, aMaxInflight) * 2 - 1);
+
+        _slotSeqs = new long[mySize];
+        _slots = new Object[mySize];
+        _mask = mySize - 1;
+
+        Arrays.fill(_slotSeqs, EMPTY);
+    }
+
+    /**
+     * @return the value for the instance or <code>null</code> if there is none or the instance is at or below the low
+     * watermark.
+     */
+    V get(long aSeqNum) {
+        synchronized(this) {
+            if (aSeqNum <= _floor)
+                return null;
+            else if (aSeqNum > _floor + _slotSeqs.length)
+                return _overflow.get(aSeqNum);
+
+            int myIndex = (int) (aSeqNum & _mask);
+
+            return (_slotSeqs[myIndex] == aSeqNum) ? value(myIndex) : null;
+        }
+    }
+
+    /**
+     * @return the previous value for the instance or <code>null</code> if there was none. Values for instances at or
+     * below the low watermark are discarded.
+     */
+    V put(long aSeqNum, V aValue) {
+        synchronized(this) {
+            if (aSeqNum <= _floor)
+                return null;
+
+            V myPrevious;
+
+            if (aSeqNum > _floor + _slotSeqs.length)
+                myPrevious = _overflow.put(aSeqNum, aValue);
+            else {
+                int myIndex = (int) (aSeqNum & _mask);
+
+                myPrevious = (_slotSeqs[myIndex] == aSeqNum) ? value(myIndex) : null;
+                _slotSeqs[myIndex] = aSeqNum;
+                _slots[myIndex] = aValue;
+            }
+
+            if (myPrevious == null)
+                ++_size;
+
+            return myPrevious;
+        }
+    }
+
+    /**
+     * @return the existing value for the instance, in which case the window is left unchanged, or <code>null</code> if
+     * there was none and the passed value has been stored. Values for instances at or below the low watermark are
+     * discarded.
+     */
+    V putIfAbsent(long aSeqNum, V aValue) {
+        synchronized(this) {
+            V myExisting = get(aSeqNum);
+
+            if (myExisting != null)
+                return myExisting;
+
+            put(aSeqNum, aValue);
+            return null;
+        }
+    }
+
+    V remove(long aSeqNum) {
+        synchronized(this) {
+            if (aSeqNum <= _floor)
+                return null;
+
+            V myPrevious;
+
+            if (aSeqNum > _floor + _slotSeqs.length)
+                myPrevious = _overflow.remove(aSeqNum);
+            else {
+                int myIndex = (int) (aSeqNum & _mask);
+
+                if (_slotSeqs[myIndex] != aSeqNum)
+                    return null;
+
+                myPrevious = value(myIndex);
+                empty(myIndex);
+            }
+
+            if (myPrevious != null)
+                --_size;
+
+            return myPrevious;
+        }
+    }
+
+    /**
+     * Discard all entries for sequence numbers at or below the low watermark.
+     *
+     * @param aLowWatermark
+     */
+    void advance(long aLowWatermark) {
+        advance(aLowWatermark, null);
+    }
+
+    /**
+     * Remove all entries for sequence numbers at or below the low watermark.
+     *
+     * @param aLowWatermark
+     * @param anEvicted to which the values removed are added in sequence order or <code>null</code> to discard them.
+     */
+    void advance(long aLowWatermark, List<V> anEvicted) {
+        synchronized(this) {
+            if (aLowWatermark <= _floor)
+                return;
+
+            long myEnd = Math.min(aLowWatermark, _floor + _slotSeqs.length);
+
+            for (long mySeq = _floor + 1; mySeq <= myEnd; mySeq++) {
+                int myIndex = (int) (mySeq & _mask);
+
+                if (_slotSeqs[myIndex] == mySeq) {
+                    if (anEvicted != null)
+                        anEvicted.add(value(myIndex));
+
+                    empty(myIndex);
+                    --_size;
+                }
+            }
+
+            SortedMap<Long, V> myEvicted = _overflow.headMap(aLowWatermark + 1);
+
+            if (anEvicted != null)
+                anEvicted.addAll(myEvicted.values());
+
+            _size -= myEvicted.size();
+            myEvicted.clear();
+
+            _floor = aLowWatermark;
+
+            // Pull in those entries that now fall within the buffer
+            //
+            Iterator<Map.Entry<Long, V>> myArrived =
+                    _overflow.headMap(_floor + _slotSeqs.length + 1).entrySet().iterator();
+
+            while (myArrived.hasNext()) {
+                Map.Entry<Long, V> mySeqAndValue = myArrived.next();
+                int myIndex = (int) (mySeqAndValue.getKey() & _mask);
+
+                _slotSeqs[myIndex] = mySeqAndValue.getKey();
+                _slots[myIndex] = mySeqAndValue.getValue();
+                myArrived.remove();
+            }
+        }
+    }
+
+    /**
+     * Discard the contents of the window and start afresh covering only sequence numbers greater than that specified.
+     *
+     * @param aLowWatermark
+     */
+    void reset(long aLowWatermark) {
+        synchronized(this) {
+            clear();
+            _floor = aLowWatermark;
+        }
+    }
+
+    void clear() {
+        synchronized(this) {
+            for (int i = 0; i < _slotSeqs.length; i++)
+                if (_slotSeqs[i] != EMPTY)
+                    empty(i);
+
+            _overflow.clear();
+            _size = 0;
+        }
+    }
+
+    /**
+     * @return the sequence number at or below which entries are discarded.
+     */
+    long getFloor() {
+        synchronized(this) {
+            return _floor;
+        }
+    }
+
+    int size() {
+        synchronized(this) {
+            return _size;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private V value(int anIndex) {
+        return (V) _slots[anIndex];
+    }
+
+    private void empty(int anIndex) {
+        _slotSeqs[anIndex] = EMPTY;
+        _slots[anIndex] = null;
+    }
+}
@@ -37,23 +37,64 @@ class Leader implements Instance {
     private static final Logger _logger = LoggerFactory.getLogger(Leader.class);
 
     private static final List<Transport.Packet> NO_MESSAGES = Collections.emptyList();
-    private static final long GRACE_PERIOD = 1000;
 
-    private static final long MAX_TRIES = 3;
+    /**
+     * A phase is retried (with exponential backoff) until it has been tried at least <code>MIN_TRIES</code> times
+     * and <code>PHASE_BUDGET</code> milliseconds have passed. The budget is a minimum, peers whose round trips
+     * exceed <code>RoundTrips.INITIAL_TIMEOUT</code> are still given <code>MIN_TRIES</code> attempts, each of up to
+     * <code>RoundTrips.MAX_TIMEOUT</code>.
+     */
+    private static final long MIN_TRIES = 3;
+    private static final long PHASE_BUDGET = MIN_TRIES * RoundTrips.INITIAL_TIMEOUT;
 
     private final Common _common;
+    private final ThriftyQuorum _thrifty;
+
+    /**
+     * The most recent instance known to have been decided, piggybacked on our Begins.
+     */
+    private final Learned _committed;
     private final long _seqNum;
     private final long _rndNumber;
     private long _tries = 0;
 
+    /**
+     * The type of the message sent for the current phase, when the phase started and when the message was last sent
+     * (in nanoseconds).
+     */
+    private int _phaseType;
+    private long _phaseStart;
+    private long _sentAt;
+
+    /**
+     * The members the current Begin was sent to when running thrifty, <code>null</code> when it was broadcast.
+     */
+    private List<InetSocketAddress> _quorum;
+
+    /**
+     * When running thrifty, the members the Begin has yet to be sent to. They're sent the value with the outcome.
+     */
+    private Set<InetSocketAddress> _unbegun;
+
     private Proposal _prop;
     private Completion<Leader> _submitter;
 
+    /**
+     * When we first sent a Begin. Any AL that accepts it will have heard from us no earlier than this.
+     */
+    private long _beginTime = 0;
+
+    /**
+     * The highest instance for which the Lasts we received report a Begin may have been accepted. A previous leader
+     * may have had values chosen for any of them.
+     */
+    private long _highestAccepted = Constants.UNKNOWN_SEQ;
+
     /**
      * This alarm is used to limit the amount of time the leader will wait for responses from all apparently live
      * members in a round of communication.
      */
-    private TimerTask _interactionAlarm;
+    private WheelTimer.Task _interactionAlarm;
 
     /**
      * Tracks membership for an entire paxos instance.
@@ -111,7 +152,19 @@ class Leader implements Instance {
     }
 
     Leader(Common aCommon, Instance anInstance) {
+        this(aCommon, anInstance, null, null);
+    }
+
+    /**
+     * @param aThrifty if not <code>null</code>, Begins are first sent only to the majority it chooses and broadcast
+     *                 should that majority fail to respond in time.
+     * @param aCommitted the most recent instance known to have been decided or <code>null</code>. AcceptorLearners
+     *                   that missed the accepts for it can learn it from our Begins.
+     */
+    Leader(Common aCommon, Instance anInstance, ThriftyQuorum aThrifty, Learned aCommitted) {
         _common = aCommon;
+        _thrifty = aThrifty;
+        _committed = aCommitted;
         _seqNum = anInstance.getSeqNum();
         _rndNumber = anInstance.getRound();
         _startState = anInstance.getState();
@@ -156,6 +209,25 @@ class Leader implements Instance {
         return _outcomes;
     }
 
+    /**
+     * @return the time at which the first Begin for this instance was sent or 0 if none was sent.
+     */
+    long getBeginTime() {
+        synchronized(this) {
+            return _beginTime;
+        }
+    }
+
+    /**
+     * @return the highest instance for which a Begin from a previous leader may have been accepted or
+     * <code>Constants.UNKNOWN_SEQ</code> if we didn't collect.
+     */
+    long getHighestAccepted() {
+        synchronized(this) {
+            return _highestAccepted;
+        }
+    }
+
     private void reportOutcome() {
         _submitter.complete(this);
     }
@@ -234,6 +306,8 @@ class Leader implements Instance {
                 for(Transport.Packet p : aMessages) {
                     Last myNewLast = (Last) p.getMessage();
 
+                    _highestAccepted = Math.max(_highestAccepted, myNewLast.getHighestAccepted());
+
                     if (! myNewLast.getConsolidatedValue().equals(Proposal.NO_VALUE)) {
                         if (myLast == null)
                             myLast = p;
@@ -257,7 +331,8 @@ class Leader implements Instance {
                     _prop = ((Last) myLast.getMessage()).getConsolidatedValue();
                 }
 
-                emit(new Begin(_seqNum, _rndNumber, _prop));
+                _beginTime = System.currentTimeMillis();
+                emit(newBegin());
                 _stateMachine.transition(State.SUCCESS);
 
                 break;
@@ -274,7 +349,7 @@ class Leader implements Instance {
                 } else {
                     // Need another try, didn't get enough accepts but didn't get leader conflict
                     //
-                    emit(new Begin(_seqNum, _rndNumber, _prop));
+                    retransmit(newBegin());
                 }
 
                 break;
@@ -284,6 +359,11 @@ class Leader implements Instance {
         }
     }
 
+    private Begin newBegin() {
+        return (_committed == null) ? new Begin(_seqNum, _rndNumber, _prop) :
+                new Begin(_seqNum, _rndNumber, _prop, _committed.getSeqNum(), _committed.getRndNum());
+    }
+
     private boolean goneBad(Collection<Transport.Packet> aMessages) {
         OldRound myOld = null;
 
@@ -324,6 +404,23 @@ class Leader implements Instance {
     }
 
     private void successful(int aReason) {
+        Transport myTransport = _common.getTransport();
+
+        // AL's aren't tallying each other's accepts so tell them the outcome
+        //
+        if (_common.isAggregateAccepts())
+            myTransport.send(myTransport.getPickler().newPacket(new Learned(_seqNum, _rndNumber)),
+                    myTransport.getBroadcastAddress());
+
+        // Members the Begin never reached can't learn from accepts, send them the value with the outcome
+        //
+        if (_unbegun != null) {
+            Transport.Packet myLearned = myTransport.getPickler().newPacket(new Learned(_seqNum, _rndNumber, _prop));
+
+            for (InetSocketAddress myMember : _unbegun)
+                myTransport.send(myLearned, myMember);
+        }
+
         _stateMachine.transition(State.EXIT);
         _outcomes.add(new VoteOutcome(aReason, _seqNum, _rndNumber, _prop,
                 _common.getTransport().getLocalAddress()));
@@ -344,32 +441,113 @@ class Leader implements Instance {
         process(NO_MESSAGES);
     }
 
+    /**
+     * Start a new phase by sending the specified message.
+     */
     private void emit(PaxosMessage aMessage) {
+        _tries = 0;
+        _phaseType = aMessage.getType();
+        _phaseStart = System.currentTimeMillis();
+
+        send(aMessage);
+    }
+
+    /**
+     * Send the specified message again as part of the current phase.
+     */
+    private void retransmit(PaxosMessage aMessage) {
+        _logger.debug(toString() + " Retransmit (" + _tries + ")");
+
+        send(aMessage);
+    }
+
+    /**
+     * Collects are always broadcast as an AL that hasn't seen one ignores our Begins and couldn't stand in for a
+     * member of a thrifty majority. Begins are sent to a thrifty majority (or broadcast) on the first try, retries
+     * go only to those members yet to accept.
+     */
+    private void send(PaxosMessage aMessage) {
+        if ((_quorum != null) && (_thrifty != null))
+            _thrifty.failed(_quorum);
+
+        _quorum = null;
+
+        Collection<InetSocketAddress> myTargets = null;
+
+        if (aMessage.getType() == PaxosMessage.Types.BEGIN) {
+            if (_tries != 0)
+                myTargets = unaccepted();
+            else if (_thrifty != null) {
+                myTargets = _quorum = _thrifty.choose(_assembly);
+                _unbegun = new HashSet<>(_assembly.getMembers().keySet());
+            }
+
+            if (_unbegun != null) {
+                if (myTargets == null)
+                    _unbegun = null;
+                else
+                    _unbegun.removeAll(myTargets);
+            }
+        }
+
         startInteraction();
 
-        _logger.debug(toString() + " : " + aMessage);
+        _logger.debug(toString() + " : " + aMessage + ((myTargets != null) ? " -> " + myTargets : ""));
 
-        _common.getTransport().send(_common.getTransport().getPickler().newPacket(aMessage),
-                _common.getTransport().getBroadcastAddress());
+        Transport myTransport = _common.getTransport();
+        Transport.Packet myPacket = myTransport.getPickler().newPacket(aMessage);
+
+        _sentAt = System.nanoTime();
+
+        if (myTargets == null)
+            myTransport.send(myPacket, myTransport.getBroadcastAddress());
+        else
+            for (InetSocketAddress myMember : myTargets)
+                myTransport.send(myPacket, myMember);
+    }
+
+    /**
+     * @return the members we've not had an accept from or <code>null</code> if there are none such that we
+     * broadcast.
+     */
+    private Collection<InetSocketAddress> unaccepted() {
+        Set<InetSocketAddress> myMissing = new HashSet<>(_assembly.getMembers().keySet());
+        myMissing.removeAll(_messages.keySet());
+
+        return (myMissing.isEmpty()) ? null : myMissing;
     }
 
     private void startInteraction() {
         assert _interactionAlarm == null;
 
-        _interactionAlarm = new TimerTask() {
+        _interactionAlarm = new WheelTimer.Task() {
             public void run() {
                 expired();
             }
         };
 
-        _common.getWatchdog().schedule(_interactionAlarm, GRACE_PERIOD);
+        _common.getWatchdog().schedule(_interactionAlarm, interactionTimeout());
+    }
+
+    /**
+     * Backs off exponentially on each retry as per TCP.
+     */
+    private long interactionTimeout() {
+        Collection<InetSocketAddress> myPeers = (_quorum != null) ? _quorum : _assembly.getMembers().keySet();
+        long myTimeout = _common.getRoundTrips().timeout(_phaseType, myPeers,
+                _common.getTransport().getFD().getMajority());
+
+        return Math.min(myTimeout << Math.min(_tries, 16), RoundTrips.MAX_TIMEOUT);
+    }
+
+    private boolean exhausted() {
+        return ((_tries >= MIN_TRIES) && (System.currentTimeMillis() - _phaseStart >= PHASE_BUDGET));
     }
 
     private void cancelInteraction() {
         assert _interactionAlarm != null;
 
         _interactionAlarm.cancel();
-        _common.getWatchdog().purge();
         _interactionAlarm = null;
     }
 
@@ -378,13 +556,29 @@ class Leader implements Instance {
             _logger.debug(toString() + " Watchdog requested abort: ");
 
             switch (_stateMachine.getCurrentState()) {
+                // Awaiting LASTs, those we have remain valid so just ask again
+                //
+                case BEGIN : {
+                    ++_tries;
+
+                    if (! exhausted()) {
+                        cancelInteraction();
+                        retransmit(new Collect(_seqNum, _rndNumber));
+                    } else {
+                        error(VoteOutcome.Reason.VOTE_TIMEOUT);
+                    }
+
+                    break;
+                }
+
+                // Awaiting ACCEPTs, those we have remain valid and tell us who needs the Begin again
+                //
                 case SUCCESS : {
                     ++_tries;
 
-                    if (_tries < MAX_TRIES) {
+                    if (! exhausted()) {
                         cancelInteraction();
                         process(_messages.values());
-                        _messages.clear();
                     } else {
                         error(VoteOutcome.Reason.VOTE_TIMEOUT);
                     }
@@ -469,12 +663,16 @@ class Leader implements Instance {
 
             if (myMessage instanceof LeaderSelection) {
                 if (((LeaderSelection) myMessage).routeable(this)) {
+                    // A response to a retransmit could be for any of the sends so only sample first attempts (Karn)
+                    //
+                    if ((_tries == 0) && (! _messages.containsKey(aPacket.getSource())))
+                        _common.getRoundTrips().sample(_phaseType, aPacket.getSource(), System.nanoTime() - _sentAt);
+
                     _messages.put(aPacket.getSource(), aPacket);
 
                     if (_assembly.isMajority(_messages.keySet())) {
                         cancelInteraction();
 
-                        _tries = 0;
                         process(_messages.values());
                         _messages.clear();
                     }
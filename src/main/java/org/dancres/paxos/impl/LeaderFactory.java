@@ -1,22 +1,27 @@
 package org.dancres.paxos.impl;
 
 import org.dancres.paxos.*;
+import org.dancres.paxos.messages.Learned;
+import org.dancres.paxos.messages.OldRound;
 import org.dancres.paxos.messages.PaxosMessage;
+import org.dancres.paxos.messages.Renew;
+import org.dancres.paxos.messages.Renewed;
 import org.dancres.paxos.messages.codec.Codecs;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.InetSocketAddress;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.Map;
-import java.util.TimerTask;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * <p>Each paxos instance is driven and represented by an individual instance of <code>Leader</code>.
  * These are created, tracked and driven by this factory class. The factory also looks after handling error outcomes
- * that require an adjustment in round or sequence number and heartbeating.</p>
+ * that require an adjustment in round or sequence number and renewing the leader's lease when idle.</p>
  *
  * @see Leader
  */
@@ -24,19 +29,130 @@ class LeaderFactory implements ProposalAllocator.Listener, MessageProcessor {
     private static final Logger _logger = LoggerFactory.getLogger(LeaderFactory.class);
 
     private final Common _common;
-    private final ProposalAllocator _stateFactory = new ProposalAllocator();
+    private final ProposalAllocator _stateFactory;
     private final boolean _disableHeartbeats;
     private final Map<Long, Leader> _activeLeaders = new ConcurrentHashMap<>();
 
+    /**
+     * When not <code>null</code>, leaders send Begins to a chosen majority rather than all members.
+     */
+    private volatile ThriftyQuorum _thrifty = null;
+
+    /**
+     * Allowance (as a percentage of <code>Leader.LeaseDuration</code>) for clocks running at different rates.
+     */
+    private static final long LEASE_DRIFT_PERCENT = 5;
+
+    /**
+     * AcceptorLearners will not accept another leader until <code>Leader.LeaseDuration</code> has passed since they
+     * last heard from the current one. Thus once a majority have accepted a Begin, we are leader until that duration
+     * has passed since we sent it. A lease also records the last instance we've had decided such that a read can be
+     * made consistent with all values chosen before it.
+     */
+    static class Lease {
+        static final Lease NONE = new Lease(0, Constants.UNKNOWN_SEQ);
+
+        private final long _expiry;
+        private final long _seqNum;
+
+        Lease(long anExpiry, long aSeqNum) {
+            _expiry = anExpiry;
+            _seqNum = aSeqNum;
+        }
+
+        /**
+         * @return <code>true</code> if the lease will not have expired by the specified time.
+         */
+        boolean isValidUntil(long aDeadline) {
+            return (Math.max(aDeadline, System.currentTimeMillis()) < _expiry);
+        }
+
+        long getSeqNum() {
+            return _seqNum;
+        }
+
+        Lease extend(Lease aLease) {
+            return new Lease(Math.max(_expiry, aLease._expiry), Math.max(_seqNum, aLease._seqNum));
+        }
+
+        public String toString() {
+            return "Lease: " + Long.toHexString(_seqNum) + " until " + _expiry;
+        }
+    }
+
+    private final AtomicReference<Lease> _lease = new AtomicReference<>(Lease.NONE);
+
+    /**
+     * The most recent instance one of our leaders has had decided, passed on to AcceptorLearners via our Begins.
+     */
+    private final AtomicReference<Learned> _committed = new AtomicReference<>();
+
     /**
      * This alarm is used to ensure the leader sends regular heartbeats in the face of inactivity so as to extend
      * its lease with AcceptorLearners.
      */
-    private AtomicReference<TimerTask> _heartbeatAlarm = new AtomicReference<>();
+    private AtomicReference<WheelTimer.Task> _heartbeatAlarm = new AtomicReference<>();
+
+    /**
+     * The most recent heartbeat, awaiting responses from a majority.
+     */
+    private final AtomicReference<Renewal> _renewal = new AtomicReference<>();
+
+    /**
+     * A heartbeat is a <code>Renew</code> rather than an instance of Paxos so as to avoid consuming a sequence number
+     * and logging. Once a majority of AcceptorLearners have responded we are leader until the lease duration has
+     * passed since we sent it.
+     */
+    private static class Renewal {
+        private final Renew _renew;
+        private final Assembly _assembly;
+        private final Set<InetSocketAddress> _responders = new HashSet<>();
+        private boolean _done = false;
+
+        Renewal(Renew aRenew, Assembly anAssembly) {
+            _renew = aRenew;
+            _assembly = anAssembly;
+        }
+
+        /**
+         * @return <code>true</code> if this response completes the majority.
+         */
+        boolean renewed(Transport.Packet aPacket) {
+            Renewed myRenewed = (Renewed) aPacket.getMessage();
+
+            synchronized(this) {
+                if ((_done) || (myRenewed.getTimestamp() != _renew.getTimestamp()) ||
+                        (myRenewed.getRndNumber() != _renew.getRndNumber()))
+                    return false;
+
+                _responders.add(aPacket.getSource());
+                _done = _assembly.isMajority(_responders);
+
+                return _done;
+            }
+        }
+    }
 
     LeaderFactory(Common aCommon, boolean isDisableHeartbeats) {
+        this(aCommon, isDisableHeartbeats, Constants.DEFAULT_MAX_INFLIGHT);
+    }
+
+    /**
+     * @param aMaxInflight the number of leaders (and thus instances) that may be active at the same time once
+     *                     we've established leadership.
+     */
+    LeaderFactory(Common aCommon, boolean isDisableHeartbeats, int aMaxInflight) {
         _common = aCommon;
         _disableHeartbeats = isDisableHeartbeats;
+        _stateFactory = new ProposalAllocator(aMaxInflight);
+    }
+
+    /**
+     * @param isThrifty <code>true</code> to have leaders send Begins to a majority of fast responders rather than all
+     *                  members.
+     */
+    void setThrifty(boolean isThrifty) {
+        _thrifty = (isThrifty) ? new ThriftyQuorum(_common) : null;
     }
 
     void resumeAt(long aSeqNum, long aRndNum) {
@@ -52,8 +168,9 @@ class LeaderFactory implements ProposalAllocator.Listener, MessageProcessor {
      * We stop allowing leaders in this process so as to avoid breaching the constraint where we can be sure we've
      * recorded an outcome at least locally.
      *
-     * TODO: Allow concurrent leaders - this would also require modifications to the out-of-date detection used in
-     * AcceptorLearner.
+     * Once we hold leadership, up to the inflight window of leaders may be active at once (see
+     * <code>ProposalAllocator</code>), the AcceptorLearners accepting Begins within that window of their low
+     * watermark.
      */
     private Leader newLeader() throws InactiveException {
         if ((_common.getNodeState().test(NodeState.State.SHUTDOWN)) ||
@@ -68,24 +185,73 @@ class LeaderFactory implements ProposalAllocator.Listener, MessageProcessor {
     void submit(Proposal aValue, final Completion<VoteOutcome> aCompletion) throws InactiveException {
         newLeader().submit(aValue, new Completion<Leader>() {
             public void complete(Leader aLeader) {
-                _stateFactory.conclusion(aLeader, aLeader.getOutcomes().getLast());
+                _stateFactory.conclusion(aLeader, aLeader.getOutcomes().getLast(), aLeader.getHighestAccepted());
+                updateLease(aLeader, aLeader.getOutcomes().getLast());
                 aCompletion.complete(aLeader.getOutcomes().getFirst());
                 _activeLeaders.remove(aLeader.getSeqNum());
             }
         });
     }
 
+    /**
+     * Update the lease prior to reporting an outcome such that a submitter whose value is chosen can be sure
+     * a subsequent read will reflect it.
+     */
+    private void updateLease(Leader aLeader, VoteOutcome anOutcome) {
+        switch (anOutcome.getResult()) {
+            case VoteOutcome.Reason.VALUE : {
+                extendLease(aLeader.getBeginTime(), aLeader.getSeqNum());
+                committed(new Learned(aLeader.getSeqNum(), aLeader.getRound()));
+
+                break;
+            }
+
+            case VoteOutcome.Reason.OTHER_LEADER : {
+                _lease.set(Lease.NONE);
+
+                break;
+            }
+        }
+    }
+
+    /**
+     * @param aStartTime the time at which the message a majority of AcceptorLearners responded to was sent.
+     * @param aSeqNum the instance that was decided as a result or <code>Constants.UNKNOWN_SEQ</code>.
+     */
+    private void extendLease(long aStartTime, long aSeqNum) {
+        long myDuration = Leader.LeaseDuration.get();
+        Lease myExtension = new Lease(aStartTime + myDuration - (myDuration * LEASE_DRIFT_PERCENT / 100), aSeqNum);
+        Lease myCurrent;
+
+        do {
+            myCurrent = _lease.get();
+        } while (! _lease.compareAndSet(myCurrent, myCurrent.extend(myExtension)));
+    }
+
+    private void committed(Learned aCommitted) {
+        Learned myCurrent;
+
+        do {
+            myCurrent = _committed.get();
+
+            if ((myCurrent != null) && (myCurrent.getSeqNum() >= aCommitted.getSeqNum()))
+                return;
+        } while (! _committed.compareAndSet(myCurrent, aCommitted));
+    }
+
+    Lease getLease() {
+        return _lease.get();
+    }
+
     private void killHeartbeats() {
-        TimerTask myTask = _heartbeatAlarm.getAndSet(null);
+        WheelTimer.Task myTask = _heartbeatAlarm.getAndSet(null);
 
-        if (myTask != null) {
+        if (myTask != null)
             myTask.cancel();
-            _common.getWatchdog().purge();
-        }
     }
 
     private Leader newLeaderImpl() {
-        Leader myLeader = new Leader(_common, _stateFactory.nextInstance(0));
+        Leader myLeader = new Leader(_common, _stateFactory.nextInstance(0), _thrifty, _committed.get());
         _activeLeaders.put(myLeader.getSeqNum(), myLeader);
 
         return myLeader;
@@ -100,35 +266,48 @@ class LeaderFactory implements ProposalAllocator.Listener, MessageProcessor {
      * TODO: Increment round number via heartbeats every so often to avoid jittering collects
      */
     public void allConcluded() {
-        if (_stateFactory.amLeader()) {
-            // Still leader so heartbeat
-            //
-            TimerTask myTask =  new TimerTask() {
-                public void run() {
-                    _logger.trace(this + ": sending heartbeat: " + System.currentTimeMillis());
-
-                    try {
-                        submit(new Proposal(AcceptorLearner.HEARTBEAT_KEY, "hearbeat".getBytes()),
-                                new Completion<VoteOutcome>() {
-                                    public void complete(VoteOutcome anOutcome) {}});
-                    } catch (InactiveException anIE) {
-                        // Nothing to worry about, just give up
-                    }
-                }
-            };
+        // Still leader so heartbeat
+        //
+        if (_stateFactory.amLeader())
+            scheduleHeartbeat();
+    }
 
-            if (_heartbeatAlarm.compareAndSet(null, myTask)) {
-                _common.getWatchdog().schedule(myTask, calculateLeaderRefresh());
-            } else {
-                myTask.cancel();
+    private void scheduleHeartbeat() {
+        WheelTimer.Task myTask =  new WheelTimer.Task() {
+            public void run() {
+                // If a leader has since become active it will extend the lease
+                //
+                if ((! _heartbeatAlarm.compareAndSet(this, null)) || (! _stateFactory.amLeader()) ||
+                        (_common.getNodeState().test(NodeState.State.SHUTDOWN)))
+                    return;
+
+                heartbeat();
+                scheduleHeartbeat();
             }
+        };
+
+        if (_heartbeatAlarm.compareAndSet(null, myTask)) {
+            _common.getWatchdog().schedule(myTask, calculateLeaderRefresh());
+        } else {
+            myTask.cancel();
         }
     }
 
+    private void heartbeat() {
+        Instance myNext = _stateFactory.nextRenewal();
+        Renew myRenew = new Renew(myNext.getSeqNum(), myNext.getRound(), System.currentTimeMillis());
+
+        _logger.trace(this + ": sending heartbeat: " + myRenew);
+
+        _renewal.set(new Renewal(myRenew, _common.getTransport().getFD().getMembers()));
+        _common.getTransport().send(_common.getTransport().getPickler().newPacket(myRenew),
+                _common.getTransport().getBroadcastAddress());
+    }
+
     boolean updateMembership(Collection<InetSocketAddress> aClusterMembers) throws InactiveException {
         final CompletionImpl<VoteOutcome> myResult = new CompletionImpl<>();
 
-        submit(new Proposal(AcceptorLearner.MEMBER_CHANGE_KEY, Codecs.flatten(aClusterMembers)),
+        submit(membershipChange(aClusterMembers),
                 new Completion<VoteOutcome>() {
                     public void complete(VoteOutcome anOutcome) {
                         myResult.complete(anOutcome);
@@ -136,10 +315,19 @@ class LeaderFactory implements ProposalAllocator.Listener, MessageProcessor {
                 }
         );
 
-        VoteOutcome myOutcome = myResult.await();
+        return membershipChanged(myResult.await());
+    }
+
+    static Proposal membershipChange(Collection<InetSocketAddress> aClusterMembers) {
+        return new Proposal(AcceptorLearner.MEMBER_CHANGE_KEY, Codecs.flatten(aClusterMembers));
+    }
 
-        return ((myOutcome.getResult() == VoteOutcome.Reason.VALUE) &&
-                (myOutcome.getValues().get(AcceptorLearner.MEMBER_CHANGE_KEY) != null));
+    /**
+     * @return <code>true</code> if the outcome reports the membership change was chosen.
+     */
+    static boolean membershipChanged(VoteOutcome anOutcome) {
+        return ((anOutcome.getResult() == VoteOutcome.Reason.VALUE) &&
+                (anOutcome.getValues().get(AcceptorLearner.MEMBER_CHANGE_KEY) != null));
     }
 
     private long calculateLeaderRefresh() {
@@ -149,6 +337,8 @@ class LeaderFactory implements ProposalAllocator.Listener, MessageProcessor {
 
     public void shutdown() {
         killHeartbeats();
+        _renewal.set(null);
+        _lease.set(Lease.NONE);
 
         for (Leader myLeader : _activeLeaders.values())
             myLeader.shutdown();
@@ -160,7 +350,33 @@ class LeaderFactory implements ProposalAllocator.Listener, MessageProcessor {
 
     public void processMessage(Transport.Packet aPacket) {
         _logger.trace("Got packet for leaders: " + aPacket.getSource() + "->" + aPacket.getMessage());
-        
+
+        switch (aPacket.getMessage().getType()) {
+            case PaxosMessage.Types.RENEWED : {
+                Renewal myRenewal = _renewal.get();
+
+                if ((myRenewal != null) && (myRenewal.renewed(aPacket)))
+                    extendLease(myRenewal._renew.getTimestamp(), Constants.UNKNOWN_SEQ);
+
+                return;
+            }
+
+            // Another leader has taken over, no point renewing until we're leader again
+            //
+            case PaxosMessage.Types.OLDROUND : {
+                Renewal myRenewal = _renewal.get();
+
+                if ((myRenewal != null) &&
+                        (((OldRound) aPacket.getMessage()).getLastRound() > myRenewal._renew.getRndNumber()) &&
+                        (_renewal.compareAndSet(myRenewal, null))) {
+                    killHeartbeats();
+                    _lease.set(Lease.NONE);
+                }
+
+                break;
+            }
+        }
+
         for (Leader myLeader : _activeLeaders.values())
             myLeader.processMessage(aPacket);
     }
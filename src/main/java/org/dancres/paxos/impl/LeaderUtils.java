@@ -2,6 +2,7 @@ package org.dancres.paxos.impl;
 
 import org.dancres.paxos.messages.Begin;
 import org.dancres.paxos.messages.Collect;
+import org.dancres.paxos.messages.Renew;
 
 /**
  * A somewhat out-of-date local AL (up-to-date rnd but old sequence) could seed it's leader (at init) with
@@ -34,6 +35,14 @@ class LeaderUtils {
 			(aBegin.getSource().equals(aCollect.getSource())));
 	}
 
+	public boolean renews(Transport.Packet aRenew, Transport.Packet aCollect) {
+		Renew myRenew = (Renew) aRenew.getMessage();
+		Collect myCollect = (Collect) aCollect.getMessage();
+
+		return ((myRenew.getRndNumber() == myCollect.getRndNumber()) &&
+			(aRenew.getSource().equals(aCollect.getSource())));
+	}
+
 	public boolean precedes(Transport.Packet aBegin, Transport.Packet aCollect) {
 		Begin myBegin = (Begin) aBegin.getMessage();
 		Collect myCollect = (Collect) aCollect.getMessage();
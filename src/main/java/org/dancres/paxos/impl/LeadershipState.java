@@ -56,20 +56,43 @@ class LeadershipState {
 
     private final AtomicReference<Transport.Packet> _lastCollect =
             new AtomicReference<Transport.Packet>(new FakePacket(Collect.INITIAL));
+
+    /**
+     * The COLLECT of the leader we last heard from and thus hold a lease for. Unlike <code>_lastCollect</code> this
+     * survives <code>clearLeadership</code> so that recovery cannot cut short a lease we've granted.
+     */
+    private final AtomicReference<Transport.Packet> _leaseHolder =
+            new AtomicReference<Transport.Packet>(new FakePacket(Collect.INITIAL));
     private AtomicLong _lastLeaderActionTime = new AtomicLong(0);
     private final LeaderUtils _leaderUtils = new LeaderUtils();
 
+    /**
+     * Record activity from the current leader, extending its lease. The time of last activity never moves backwards.
+     */
     void leaderAction() {
-        _lastLeaderActionTime.set(System.currentTimeMillis());
-    }
+        Transport.Packet myCurrent = _lastCollect.get();
+
+        if (! ((Collect) myCurrent.getMessage()).isInitial())
+            _leaseHolder.set(myCurrent);
+
+        long myNow = System.currentTimeMillis();
+        long myLast;
+
+        do {
+            myLast = _lastLeaderActionTime.get();
 
-    void resetLeaderAction() {
-        _lastLeaderActionTime.set(0);
+            if (myLast >= myNow)
+                return;
+
+        } while (! _lastLeaderActionTime.compareAndSet(myLast, myNow));
     }
 
+    /**
+     * Forget the current leader such that any COLLECT may supercede it. The lease granted to that leader remains in
+     * force, see <code>amAccepting</code>.
+     */
     void clearLeadership() {
         _lastCollect.set(new FakePacket(Collect.INITIAL));
-        resetLeaderAction();
     }
 
     void setLastCollect(Transport.Packet aCollect) {
@@ -112,30 +135,34 @@ class LeadershipState {
 
     /**
      * @return <code>true</code> if the collect is either from the existing
-     *         leader, or there is no leader or there's been nothing heard from
-     *         the current leader within DEFAULT_LEASE milliseconds else
+     *         leader, or from the leader holding our lease, or there's been nothing heard from
+     *         the leader holding our lease within <code>Leader.LeaseDuration</code> milliseconds else
      *         <code>false</code>
      */
     boolean amAccepting(Transport.Packet aCollect) {
         long myCurrentTime = System.currentTimeMillis();
 
-        if (((Collect) _lastCollect.get().getMessage()).isInitial()) {
-            _logger.trace("Current collect is initial - allow leader");
+        if ((! ((Collect) _lastCollect.get().getMessage()).isInitial()) &&
+                (_leaderUtils.sameLeader(aCollect, _lastCollect.get()))) {
+            _logger.trace("Current collect is from same leader - allow");
 
             return true;
-        } else {
-            if (_leaderUtils.sameLeader(aCollect, _lastCollect.get())) {
-                _logger.trace("Current collect is from same leader - allow");
-
-                return true;
-            } else
-                _logger.trace("Check leader expiry: " + myCurrentTime + ", " + _lastLeaderActionTime.get() + ", " +
-                        Leader.LeaseDuration.get() + ", " + (myCurrentTime > _lastLeaderActionTime.get()
-                        + Leader.LeaseDuration.get()));
-
-            return (myCurrentTime > _lastLeaderActionTime.get()
-                    + Leader.LeaseDuration.get());
         }
+
+        _logger.trace("Check leader expiry: " + myCurrentTime + ", " + _lastLeaderActionTime.get() + ", " +
+                Leader.LeaseDuration.get() + ", " + (myCurrentTime > _lastLeaderActionTime.get()
+                + Leader.LeaseDuration.get()));
+
+        if (myCurrentTime > _lastLeaderActionTime.get() + Leader.LeaseDuration.get())
+            return true;
+
+        /*
+         * Lease is still in force. The current collect may have been dropped (e.g. by recovery), in which case the
+         * leader holding the lease is allowed to re-establish itself but no-one else.
+         */
+        Transport.Packet myHolder = _leaseHolder.get();
+
+        return ((((Collect) myHolder.getMessage()).isInitial()) || (_leaderUtils.sameLeader(aCollect, myHolder)));
     }
 
     boolean sameLeader(Transport.Packet aCollect) {
@@ -146,6 +173,10 @@ class LeadershipState {
         return _leaderUtils.originates(aBegin, _lastCollect.get());
     }
 
+    boolean renews(Transport.Packet aRenew) {
+        return _leaderUtils.renews(aRenew, _lastCollect.get());
+    }
+
     boolean precedes(Transport.Packet aBegin) {
         return _leaderUtils.precedes(aBegin, _lastCollect.get());
     }
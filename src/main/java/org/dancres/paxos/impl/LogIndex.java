@@ -0,0 +1,115 @@
+package org.dancres.paxos.impl;
+
+import java.util.Arrays;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Maps sequence numbers to the offsets of the records (Collect, Begin and Learned) logged for them. This allows the
+ * recorded state of an instance to be recovered from <code>LogStorage</code> directly rather than via a scan.
+ *
+ * The index is not persisted, it is rebuilt from the records replayed at startup and maintained as records are
+ * written thereafter. It only covers sequence numbers above a floor (typically the sequence number of the last
+ * checkpoint), queries for sequence numbers at or below the floor must fall back to a log scan.
+ *
+ * Offsets are assumed to increase in the order records are put to the log.
+ */
+class LogIndex {
+    private static final long[] NO_OFFSETS = new long[0];
+
+    private final SortedMap<Long, long[]> _offsets = new TreeMap<>();
+    private long _floor = Constants.UNKNOWN_SEQ;
+
+    /**
+     * Discard the contents of the index and start afresh covering only sequence numbers greater than that specified.
+     *
+     * @param aFloorSeq
+     */
+    void reset(long aFloorSeq) {
+        synchronized(this) {
+            _offsets.clear();
+            _floor = aFloorSeq;
+        }
+    }
+
+    /**
+     * Discard all entries for sequence numbers at or below that specified, typically because they have been
+     * checkpointed and the log truncated.
+     *
+     * @param aFloorSeq
+     */
+    void truncate(long aFloorSeq) {
+        synchronized(this) {
+            if (aFloorSeq <= _floor)
+                return;
+
+            _offsets.headMap(aFloorSeq + 1).clear();
+            _floor = aFloorSeq;
+        }
+    }
+
+    void add(long aSeqNum, long anOffset) {
+        synchronized(this) {
+            if (aSeqNum <= _floor)
+                return;
+
+            long[] myCurrent = _offsets.get(aSeqNum);
+
+            if (myCurrent == null) {
+                _offsets.put(aSeqNum, new long[] {anOffset});
+            } else {
+                long[] myUpdated = Arrays.copyOf(myCurrent, myCurrent.length + 1);
+                myUpdated[myCurrent.length] = anOffset;
+                _offsets.put(aSeqNum, myUpdated);
+            }
+        }
+    }
+
+    boolean covers(long aSeqNum) {
+        synchronized(this) {
+            return (aSeqNum > _floor);
+        }
+    }
+
+    /**
+     * @param aLowerBoundSeq the sequence number above (&gt;) which to return offsets
+     * @param aMaximumSeq the last sequence number (&lt;=) for which to return offsets
+     * @return the offsets of all records in the range in log order or <code>null</code> if the index does not
+     * cover the range.
+     */
+    long[] getOffsets(long aLowerBoundSeq, long aMaximumSeq) {
+        synchronized(this) {
+            if (! covers(aLowerBoundSeq + 1))
+                return null;
+
+            if (aMaximumSeq <= aLowerBoundSeq)
+                return NO_OFFSETS;
+
+            SortedMap<Long, long[]> myRange = (aMaximumSeq == Long.MAX_VALUE) ?
+                    _offsets.tailMap(aLowerBoundSeq + 1) : _offsets.subMap(aLowerBoundSeq + 1, aMaximumSeq + 1);
+
+            int myTotal = 0;
+
+            for (long[] myOffsets : myRange.values())
+                myTotal += myOffsets.length;
+
+            long[] myResult = new long[myTotal];
+            int myPosn = 0;
+
+            for (long[] myOffsets : myRange.values()) {
+                System.arraycopy(myOffsets, 0, myResult, myPosn, myOffsets.length);
+                myPosn += myOffsets.length;
+            }
+
+            Arrays.sort(myResult);
+
+            return myResult;
+        }
+    }
+
+    int size() {
+        synchronized(this) {
+            return _offsets.size();
+        }
+    }
+}
@@ -5,18 +5,52 @@ import org.dancres.paxos.messages.PaxosMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
 /**
  * Produces a set of <code>PaxosMessage</code> instances from <code>LogStorage</code> within a certain sequence
  * number range.
+ *
+ * An AL only logs a record for a sequence number once its low watermark is within the inflight window of that
+ * sequence number (see <code>PacketSorter</code>). Thus once we encounter a record more than the inflight window
+ * beyond the end of our range, no further records for the range can follow and the replay is cut short.
+ *
+ * If a <code>LogIndex</code> is supplied and it covers the range, the records are fetched directly from their
+ * offsets and no replay is done at all.
+ *
+ * Records are unpickled in parallel, a batch at a time, whilst the previous batch is passed to the consumer. Thus
+ * the consumer still sees packets strictly in log order.
  */
 class LogRangeProducer implements LogStorage.RecordListener, Producer {
 	private static final Logger _logger = LoggerFactory.getLogger(LogRangeProducer.class);
 
+    /**
+     * Thrown from <code>onRecord</code> to abandon a replay once the range is exhausted. Stackless as it's used
+     * for flow control, not error reporting.
+     */
+    private static class RangeExhausted extends RuntimeException {
+        RangeExhausted() {
+            super("Range exhausted", null, false, false);
+        }
+    }
+
 	private final long _lowerBoundSeq;
     private final long _maximumSeq;
+    private final long _cutoffSeq;
     private final Consumer _consumer;
     private final LogStorage _storage;
     private final Transport.PacketPickler _pickler;
+    private final LogIndex _index;
+
+    static final int DECODE_BATCH_SIZE = 256;
+    private static final int DECODE_SPLIT_SIZE = 32;
+    private static final boolean PARALLEL_DECODE = Runtime.getRuntime().availableProcessors() > 1;
+    private static final ForkJoinPool _decoders = new ForkJoinPool();
+
+    private Batch _filling = new Batch();
+    private Batch _decoding;
 
     /**
      * @param aLowerBoundSeq the sequence number above (&gt;) which to stream records.
@@ -25,29 +59,167 @@ class LogRangeProducer implements LogStorage.RecordListener, Producer {
      * @param aStorage
      */
     LogRangeProducer(long aLowerBoundSeq, long aMaximumSeq, Consumer aConsumer, LogStorage aStorage, Transport.PacketPickler aPickler) {
+        this(aLowerBoundSeq, aMaximumSeq, aConsumer, aStorage, aPickler, null);
+    }
+
+    /**
+     * @param aLowerBoundSeq the sequence number above (&gt;) which to stream records.
+     * @param aMaximumSeq the last sequence number in the range (&lt;=) to stream.
+     * @param aConsumer
+     * @param aStorage
+     * @param anIndex the index to consult for record offsets or <code>null</code> to always replay the log.
+     */
+    LogRangeProducer(long aLowerBoundSeq, long aMaximumSeq, Consumer aConsumer, LogStorage aStorage,
+                     Transport.PacketPickler aPickler, LogIndex anIndex) {
+        this(aLowerBoundSeq, aMaximumSeq, aConsumer, aStorage, aPickler, anIndex, Constants.DEFAULT_MAX_INFLIGHT);
+    }
+
+    /**
+     * @param aLowerBoundSeq the sequence number above (&gt;) which to stream records.
+     * @param aMaximumSeq the last sequence number in the range (&lt;=) to stream.
+     * @param aConsumer
+     * @param aStorage
+     * @param anIndex the index to consult for record offsets or <code>null</code> to always replay the log.
+     * @param aMaxInflight the inflight window the log was written under.
+     */
+    LogRangeProducer(long aLowerBoundSeq, long aMaximumSeq, Consumer aConsumer, LogStorage aStorage,
+                     Transport.PacketPickler aPickler, LogIndex anIndex, int aMaxInflight) {
         _lowerBoundSeq = aLowerBoundSeq;
         _maximumSeq = aMaximumSeq;
+        _cutoffSeq = (aMaximumSeq > Long.MAX_VALUE - aMaxInflight) ? Long.MAX_VALUE : aMaximumSeq + aMaxInflight;
         _consumer = aConsumer;
         _storage = aStorage;
         _pickler = aPickler;
+        _index = anIndex;
     }
 
+    /**
+     * @param aLogOffset the offset of the record from which to start the replay. This must be an offset previously
+     *                   obtained from the storage this producer is reading (or 0 to replay the entire log).
+     *                   Ignored if the records can be located via the index.
+     */
     public void produce(long aLogOffset) throws Exception {
-        _storage.replay(this, 0);
+        long[] myOffsets = (_index == null) ? null : _index.getOffsets(_lowerBoundSeq, _maximumSeq);
+
+        try {
+            if (myOffsets != null) {
+                for (long myOffset : myOffsets) {
+                    byte[] myRecord = _storage.get(myOffset);
+
+                    // Log may have been truncated by a checkpoint since we consulted the index
+                    //
+                    if (myRecord != null)
+                        onRecord(myOffset, myRecord);
+                }
+            } else
+                _storage.replay(this, aLogOffset);
+
+            finish();
+        } catch (RangeExhausted anRE) {
+            _logger.trace("Range exhausted: " + Long.toHexString(_maximumSeq));
+        }
     }
 
     public void onRecord(long anOffset, byte[] aRecord) {
-        Transport.Packet myPacket = _pickler.unpickle(aRecord);
-        PaxosMessage myMessage = myPacket.getMessage();
+        if (! PARALLEL_DECODE) {
+            consume(anOffset, _pickler.unpickle(aRecord));
+            return;
+        }
+
+        _filling.add(anOffset, aRecord);
+
+        if (_filling._count == DECODE_BATCH_SIZE) {
+            Batch myNext = _filling;
+            _filling = new Batch();
+
+            myNext.decodeAsync();
+            drain();
+            _decoding = myNext;
+        }
+    }
+
+    /**
+     * Pass the outstanding batches to the consumer. Small batches aren't worth farming out to the decoders.
+     */
+    private void finish() {
+        if ((_decoding == null) && (_filling._count < DECODE_SPLIT_SIZE)) {
+            for (int i = 0; i < _filling._count; i++)
+                consume(_filling._offsets[i], _pickler.unpickle(_filling._records[i]));
+        } else {
+            _filling.decodeAsync();
+            drain();
+            _decoding = _filling;
+            drain();
+        }
+    }
+
+    private void drain() {
+        if (_decoding == null)
+            return;
+
+        Batch myBatch = _decoding;
+        _decoding = null;
+
+        myBatch._task.join();
+
+        for (int i = 0; i < myBatch._count; i++)
+            consume(myBatch._offsets[i], myBatch._packets[i]);
+    }
+
+    private void consume(long anOffset, Transport.Packet aPacket) {
+        PaxosMessage myMessage = aPacket.getMessage();
 
         // Only send messages in the specified window
         //
         if ((myMessage.getSeqNum() > _lowerBoundSeq)
                 && (myMessage.getSeqNum() <= _maximumSeq)) {
             _logger.trace("Producing: " + myMessage);
-            _consumer.process(myPacket, anOffset);
+            _consumer.process(aPacket, anOffset);
+        } else if (myMessage.getSeqNum() > _cutoffSeq) {
+            throw new RangeExhausted();
         } else {
             _logger.trace("Not producing: " + myMessage);
         }
     }
+
+    private class Batch {
+        private final long[] _offsets = new long[DECODE_BATCH_SIZE];
+        private final byte[][] _records = new byte[DECODE_BATCH_SIZE][];
+        private final Transport.Packet[] _packets = new Transport.Packet[DECODE_BATCH_SIZE];
+        private int _count;
+        private ForkJoinTask<Void> _task;
+
+        void add(long anOffset, byte[] aRecord) {
+            _offsets[_count] = anOffset;
+            _records[_count] = aRecord;
+            ++_count;
+        }
+
+        void decodeAsync() {
+            _task = _decoders.submit(new Decode(this, 0, _count));
+        }
+    }
+
+    private class Decode extends RecursiveAction {
+        private final Batch _batch;
+        private final int _start;
+        private final int _end;
+
+        Decode(Batch aBatch, int aStart, int anEnd) {
+            _batch = aBatch;
+            _start = aStart;
+            _end = anEnd;
+        }
+
+        protected void compute() {
+            if (_end - _start <= DECODE_SPLIT_SIZE) {
+                for (int i = _start; i < _end; i++)
+                    _batch._packets[i] = _pickler.unpickle(_batch._records[i]);
+            } else {
+                int myMid = (_start + _end) >>> 1;
+
+                invokeAll(new Decode(_batch, _start, myMid), new Decode(_batch, myMid, _end));
+            }
+        }
+    }
 }
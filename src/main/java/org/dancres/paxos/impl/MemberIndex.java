@@ -0,0 +1,64 @@
+package org.dancres.paxos.impl;
+
+import java.net.InetSocketAddress;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Gives each member a small, dense index such that per-member state can be held in a bitset rather than a set of
+ * addresses. A member keeps its index for the life of the node so state gathered across a membership change can't
+ * count one member twice.
+ *
+ * Indices are handed out as members are first seen (a wildcard membership such as
+ * <code>FailureDetectorImpl.OPEN_PIN</code> can't be enumerated up front). Whilst we're a member, only addresses the
+ * failure detector reports as members are given one. A node outside the membership (e.g. one yet to be promoted)
+ * doesn't know the membership and so indexes all it hears from. Members that leave are forgotten and their indices
+ * are not reused, thus the index grows only with membership changes.
+ */
+class MemberIndex {
+    static final int NOT_MEMBER = -1;
+
+    private final Common _common;
+    private final Map<InetSocketAddress, Integer> _indices = new ConcurrentHashMap<>();
+    private int _next = 0;
+
+    MemberIndex(Common aCommon) {
+        _common = aCommon;
+    }
+
+    /**
+     * @return the index of the member or <code>NOT_MEMBER</code> if the address is not that of a member.
+     */
+    int indexOf(InetSocketAddress anAddress) {
+        Integer myIndex = _indices.get(anAddress);
+
+        if (myIndex != null)
+            return myIndex;
+
+        if ((_common.amMember()) && (! _common.getTransport().getFD().isMember(anAddress)))
+            return NOT_MEMBER;
+
+        synchronized(this) {
+            myIndex = _indices.get(anAddress);
+
+            if (myIndex == null) {
+                myIndex = _next++;
+                _indices.put(anAddress, myIndex);
+            }
+
+            return myIndex;
+        }
+    }
+
+    /**
+     * Forget those that are no longer members.
+     *
+     * @param aMembers the new membership
+     */
+    void retain(Collection<InetSocketAddress> aMembers) {
+        synchronized(this) {
+            _indices.keySet().retainAll(aMembers);
+        }
+    }
+}
@@ -5,30 +5,65 @@ import org.dancres.paxos.messages.Need;
 import java.net.InetSocketAddress;
 import java.util.*;
 
+/**
+ * Holds packets until the low watermark reaches them. With an inflight window of N, packets for up to N instances
+ * beyond the low watermark are released for processing such that several Begins can be accepted whilst earlier
+ * instances are still being decided. A packet beyond the window whilst there is nothing else to process indicates
+ * we have missed an instance and must recover.
+ *
+ * Packets ahead of those released are held in an <code>InstanceWindow</code> so that, in the common case, holding and
+ * releasing a packet is constant time. Packets behind it (typically NEEDs) are released on the next call to
+ * <code>process</code>. Emptied packet lists are kept for reuse so that steady state processing doesn't allocate a list
+ * per instance.
+ */
 class PacketSorter {
+    private static final long NO_PACKETS = Long.MIN_VALUE;
+
     private final int _maxInflight;
 
-    private SortedMap<Long, List<Transport.Packet>> _packets = new TreeMap<>();
+    /**
+     * Packets not yet released, the window's floor is the last sequence number released.
+     */
+    private final InstanceWindow<List<Transport.Packet>> _ahead;
+    private final SortedMap<Long, List<Transport.Packet>> _behind = new TreeMap<>();
+
+    /**
+     * Emptied packet lists available for reuse, bounded by the inflight window.
+     */
+    private final Deque<List<Transport.Packet>> _spares = new ArrayDeque<>();
+
+    private int _count = 0;
+    private long _maxSeq = NO_PACKETS;
 
     PacketSorter() {
         this(Constants.DEFAULT_MAX_INFLIGHT);
     }
 
     PacketSorter(int aMaxInflight) {
+        if (aMaxInflight < 1)
+            throw new IllegalArgumentException("Inflight window must be at least 1: " + aMaxInflight);
+
         _maxInflight = aMaxInflight;
+        _ahead = new InstanceWindow<>(aMaxInflight);
     }
 
     int numPackets() {
-        int myTotal = 0;
-
-        for (List<Transport.Packet> myPs : _packets.values())
-            myTotal += myPs.size();
-
-        return myTotal;
+        synchronized(this) {
+            return _count;
+        }
     }
 
     void add(Transport.Packet aPacket) {
-        _packets = insert(aPacket, _packets);
+        synchronized(this) {
+            long mySeq = aPacket.getMessage().getSeqNum();
+
+            packetsFor(mySeq, true).add(aPacket);
+
+            ++_count;
+
+            if ((_maxSeq == NO_PACKETS) || (mySeq > _maxSeq))
+                _maxSeq = mySeq;
+        }
     }
 
     /**
@@ -47,39 +82,32 @@ class PacketSorter {
          *
          * Packets less than the low watermark are ignored in AL.process()
          */
-        List<Transport.Packet> myConsumables = new LinkedList<>();
+        List<Transport.Packet> myConsumables = new ArrayList<>();
+        long myLastSeq;
+        InetSocketAddress myTriggerAddr = null;
 
         synchronized(this) {
-            Iterator<Map.Entry<Long, List<Transport.Packet>>> mySeqsAndPkts = _packets.entrySet().iterator();
+            // Packets below aLowWatermark + 1 will be NEED's encountered during normal processing
+            //
+            release(aLowWatermark + _maxInflight, myConsumables);
 
-            while(mySeqsAndPkts.hasNext()) {
-                Map.Entry<Long, List<Transport.Packet>> mySeqAndPkt = mySeqsAndPkts.next();
+            myLastSeq = _maxSeq;
 
-                // Packets below aLowWatermark + 1 will be NEED's encountered during normal processing
-                //
-                if (mySeqAndPkt.getKey() <= (aLowWatermark + 1)) {
-                    myConsumables.addAll(mySeqAndPkt.getValue());
-                    mySeqsAndPkts.remove();
-                }
-            }
+            if ((myConsumables.size() == 0) && (_count != 0) && (myLastSeq > (aLowWatermark + _maxInflight)))
+                myTriggerAddr = packetsFor(myLastSeq, false).get(0).getSource();
         }
 
-        if ((myConsumables.size() == 0) && (_packets.size() != 0)) {
-            // Do we need to trigger recovery?
+        if (myTriggerAddr != null) {
+            // We need to trigger recovery
             //
-            SortedSet<Long> myAllSeqs = new TreeSet<>(_packets.keySet());
-            Long myLastSeq = myAllSeqs.last();
-
-            if (myLastSeq > (aLowWatermark + _maxInflight)) {
-                InetSocketAddress myTriggerAddr = _packets.get(myLastSeq).get(0).getSource();
+            if (aProcessor.recover(new Need(aLowWatermark, myLastSeq - 1), myTriggerAddr)) {
+                synchronized(this) {
+                    List<Transport.Packet> myLastPackets = new ArrayList<>(packetsFor(myLastSeq, false));
 
-                if (aProcessor.recover(new Need(aLowWatermark, myLastSeq - 1), myTriggerAddr)) {
-                    synchronized(this) {
-                        List<Transport.Packet> myLastPackets = _packets.get(myLastSeq);
+                    clear();
 
-                        _packets.clear();
-                        _packets.put(myLastSeq, myLastPackets);
-                    }
+                    for (Transport.Packet myPacket : myLastPackets)
+                        add(myPacket);
                 }
             }
 
@@ -92,19 +120,58 @@ class PacketSorter {
         }
     }
 
-    private SortedMap<Long, List<Transport.Packet>> insert(Transport.Packet aPacket,
-                                                     SortedMap<Long, List<Transport.Packet>> aPackets) {
-        Long mySeq = aPacket.getMessage().getSeqNum();
-        List<Transport.Packet> myPackets = aPackets.get(mySeq);
+    /**
+     * Release all packets behind the window and those in it up to and including the specified sequence number, in
+     * sequence order.
+     */
+    private void release(long aSeqNum, List<Transport.Packet> aReleased) {
+        List<List<Transport.Packet>> myReleased = new ArrayList<>(_behind.values());
+
+        _behind.clear();
+        _ahead.advance(aSeqNum, myReleased);
 
-        if (myPackets == null) {
-            myPackets = new LinkedList<>();
-            _packets.put(mySeq, myPackets);
+        for (List<Transport.Packet> myPackets : myReleased) {
+            aReleased.addAll(myPackets);
+            recycle(myPackets);
         }
 
-        myPackets.add(aPacket);
+        removed(aReleased.size());
+    }
+
+    private void removed(int aCount) {
+        _count -= aCount;
 
-        return aPackets;
+        if (_count == 0)
+            _maxSeq = NO_PACKETS;
+    }
+
+    /**
+     * @param isCreate if <code>true</code> create an empty list should there be no packets for the sequence number.
+     */
+    private List<Transport.Packet> packetsFor(long aSeqNum, boolean isCreate) {
+        List<Transport.Packet> myPackets =
+                (aSeqNum <= _ahead.getFloor()) ? _behind.get(aSeqNum) : _ahead.get(aSeqNum);
+
+        if ((myPackets == null) && (isCreate)) {
+            myPackets = _spares.poll();
+
+            if (myPackets == null)
+                myPackets = new ArrayList<>();
+
+            if (aSeqNum <= _ahead.getFloor())
+                _behind.put(aSeqNum, myPackets);
+            else
+                _ahead.put(aSeqNum, myPackets);
+        }
+
+        return myPackets;
+    }
+
+    private void recycle(List<Transport.Packet> aPackets) {
+        aPackets.clear();
+
+        if (_spares.size() < _maxInflight)
+            _spares.push(aPackets);
     }
 
     /**
@@ -124,18 +191,30 @@ class PacketSorter {
      */
     void recoveredToCheckpoint(long aLowWatermark) {
         synchronized(this) {
-            Iterator<Long> mySeqs = _packets.keySet().iterator();
+            SortedMap<Long, List<Transport.Packet>> myBehind = _behind.headMap(aLowWatermark + 1);
+            List<List<Transport.Packet>> myLaggers = new ArrayList<>(myBehind.values());
+
+            myBehind.clear();
+            _ahead.advance(aLowWatermark, myLaggers);
+
+            int myCount = 0;
 
-            while (mySeqs.hasNext()) {
-                if (mySeqs.next() <= aLowWatermark)
-                    mySeqs.remove();
+            for (List<Transport.Packet> myPackets : myLaggers) {
+                myCount += myPackets.size();
+                recycle(myPackets);
             }
+
+            removed(myCount);
         }
     }
 
     void clear() {
         synchronized(this) {
-            _packets.clear();
+            _ahead.clear();
+            _behind.clear();
+
+            _count = 0;
+            _maxSeq = NO_PACKETS;
         }
     }
 
@@ -17,6 +17,12 @@ class ProposalAllocator {
     private long _nextRnd;
     private long _nextSeq;
     private boolean _amLeader;
+
+    /**
+     * Instances up to and including this one may have had values accepted from a previous leader and must be
+     * collected before a value is proposed for them.
+     */
+    private long _collectThrough = Constants.UNKNOWN_SEQ;
     private final SortedSet<Long> _recycling = new TreeSet<>();
     private final Set<Long> _inflight = new HashSet<>();
     private final Set<Listener> _listeners = new CopyOnWriteArraySet<>();
@@ -43,6 +49,16 @@ class ProposalAllocator {
         }
     }
 
+    /**
+     * @return the instance following the last one allocated, in the current round. Only meaningful whilst leader and
+     * with no instances in flight.
+     */
+    Instance nextRenewal() {
+        synchronized (_inflight) {
+            return new NextInstance(Leader.State.BEGIN, _nextSeq + 1, _nextRnd);
+        }
+    }
+
     void add(Listener aListener) {
         _listeners.add(aListener);
     }
@@ -76,6 +92,14 @@ class ProposalAllocator {
     }
 
     void conclusion(Instance anInstance, VoteOutcome anOutcome) {
+        conclusion(anInstance, anOutcome, Constants.UNKNOWN_SEQ);
+    }
+
+    /**
+     * @param aHighestAccepted the highest instance the collect for this instance (if any) reported a Begin for. Until
+     *                         we've collected all instances up to that one, they're allocated in the COLLECT state.
+     */
+    void conclusion(Instance anInstance, VoteOutcome anOutcome, long aHighestAccepted) {
         synchronized (_inflight) {
             // Is this instance invalidated due to other happenings?
             //
@@ -85,6 +109,7 @@ class ProposalAllocator {
             switch (anOutcome.getResult()) {
                 case VoteOutcome.Reason.VALUE : {
                     _amLeader = true;
+                    _collectThrough = Math.max(_collectThrough, aHighestAccepted);
 
                     break;
                 }
@@ -119,6 +144,10 @@ class ProposalAllocator {
             if (_inflight.size() == 0)
                 for (Listener anL : _listeners)
                     anL.allConcluded();
+
+            // Wake anyone waiting in nextInstance for a free slot
+            //
+            _inflight.notifyAll();
         }
     }
 
@@ -159,8 +188,14 @@ class ProposalAllocator {
 
                 }
 
-                NextInstance myNext = new NextInstance((_amLeader) ? Leader.State.BEGIN : Leader.State.COLLECT,
-                        chooseNext(), _nextRnd);
+                long mySeqNum = chooseNext();
+
+                /*
+                 * A previous leader may have had values chosen for instances beyond the one we collected when we
+                 * became leader. Collecting them recovers those values such that we propose no other.
+                 */
+                NextInstance myNext = new NextInstance((mySeqNum <= _collectThrough) ? Leader.State.COLLECT :
+                        Leader.State.BEGIN, mySeqNum, _nextRnd);
 
                 if (_inflight.size() == 1)
                     for (Listener anL: _listeners)
@@ -0,0 +1,339 @@
+package org.dancres.paxos.impl;
+
+import org.dancres.paxos.Completion;
+import org.dancres.paxos.InactiveException;
+import org.dancres.paxos.Proposal;
+import org.dancres.paxos.VoteOutcome;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Combines proposals from concurrent submitters such that a single instance of Paxos (and its disk syncs) is
+ * amortised across many of them.
+ *
+ * Submitters queue their proposal and the first of them to find no other submitter combining becomes the combiner.
+ * The combiner waits (up to the linger time) for the batch to fill, takes as many queued proposals as the limits allow
+ * and submits them as one. Whilst the combiner is blocked waiting for the leader to accept a new instance, further
+ * submitters queue up to form the next batch. Each submitter returns once its proposal has been submitted as part of a
+ * batch, as it would have had it been submitted directly.
+ *
+ * A batch of one is submitted unaltered. Larger batches are packed into a single <code>Proposal</code> under
+ * <code>BATCH_KEY</code> which the <code>AcceptorLearner</code> unpacks, signalling a value for each of the original
+ * proposals. The outcome of the instance is reported to each submitter with its own proposal as the value. Membership
+ * changes are always submitted alone as the <code>AcceptorLearner</code> only acts upon them unbatched.
+ *
+ * Asynchronous submitters queue their proposal and return immediately. Should there be no submitter to combine on
+ * their behalf, a single drainer thread does so, blocking on the leader as needed such that any number of asynchronous
+ * submissions are driven by one thread.
+ */
+class ProposalBatcher {
+    private static final Logger _logger = LoggerFactory.getLogger(ProposalBatcher.class);
+
+    static final String BATCH_KEY = "org.dancres.paxos.Batch";
+
+    static final int DEFAULT_MAX_COUNT = 64;
+    /**
+     * Leaves room for a Begin carrying a full batch to fit within a single datagram.
+     */
+    static final int DEFAULT_MAX_BYTES = 32 * 1024;
+    static final long DEFAULT_MAX_LINGER = 0;
+
+    private final Common _common;
+    private final LeaderFactory _leaders;
+
+    private final Object _lock = new Object();
+    private final LinkedList<Entry> _queue = new LinkedList<>();
+    private int _queuedBytes;
+    private boolean _combining;
+    private boolean _draining;
+
+    private final ExecutorService _drainer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable aRunnable) {
+            Thread myThread = new Thread(aRunnable, "Proposal drainer");
+            myThread.setDaemon(true);
+
+            return myThread;
+        }
+    });
+
+    private int _maxCount = DEFAULT_MAX_COUNT;
+    private int _maxBytes = DEFAULT_MAX_BYTES;
+    private long _maxLinger = DEFAULT_MAX_LINGER;
+
+    ProposalBatcher(Common aCommon, LeaderFactory aLeaders) {
+        _common = aCommon;
+        _leaders = aLeaders;
+    }
+
+    /**
+     * @param aMaxCount the maximum number of proposals in a batch.
+     * @param aMaxBytes the maximum size of the marshalled proposals in a batch. A single proposal larger than this
+     *                  will be submitted alone.
+     * @param aMaxLinger the maximum time in milliseconds to wait for a batch to fill before submitting it.
+     */
+    void setLimits(int aMaxCount, int aMaxBytes, long aMaxLinger) {
+        if ((aMaxCount < 1) || (aMaxBytes < 1) || (aMaxLinger < 0))
+            throw new IllegalArgumentException("Invalid batch limits: " + aMaxCount + ", " + aMaxBytes + ", " +
+                    aMaxLinger);
+
+        synchronized(_lock) {
+            _maxCount = aMaxCount;
+            _maxBytes = aMaxBytes;
+            _maxLinger = aMaxLinger;
+        }
+    }
+
+    void submit(Proposal aValue, Completion<VoteOutcome> aCompletion) throws InactiveException {
+        Entry myEntry = new Entry(aValue, aCompletion, false);
+
+        synchronized(_lock) {
+            _queue.add(myEntry);
+            _queuedBytes += myEntry._size;
+            _lock.notifyAll();
+        }
+
+        while (true) {
+            synchronized(_lock) {
+                while ((! myEntry._submitted) && (_combining)) {
+                    try {
+                        _lock.wait();
+                    } catch (InterruptedException anIE) {
+                    }
+                }
+
+                if (myEntry._submitted)
+                    break;
+
+                _combining = true;
+            }
+
+            try {
+                combine();
+            } finally {
+                synchronized(_lock) {
+                    _combining = false;
+                    _lock.notifyAll();
+                }
+            }
+        }
+
+        if (myEntry._failure != null)
+            throw myEntry._failure;
+    }
+
+    /**
+     * Queues a proposal without waiting for it to be submitted. Failure to submit is reported to the completion as
+     * <code>VoteOutcome.Reason.INACTIVE</code>.
+     */
+    void submitAsync(Proposal aValue, Completion<VoteOutcome> aCompletion) {
+        Entry myEntry = new Entry(aValue, aCompletion, true);
+        boolean isRejected = false;
+
+        synchronized(_lock) {
+            _queue.add(myEntry);
+            _queuedBytes += myEntry._size;
+            _lock.notifyAll();
+
+            if (! _draining) {
+                try {
+                    _drainer.execute(new Runnable() {
+                        public void run() {
+                            drain();
+                        }
+                    });
+
+                    _draining = true;
+                } catch (RejectedExecutionException anREE) {
+                    _queue.remove(myEntry);
+                    _queuedBytes -= myEntry._size;
+                    isRejected = true;
+                }
+            }
+        }
+
+        if (isRejected)
+            myEntry.inactive();
+    }
+
+    /**
+     * Combine on behalf of asynchronous submitters until there's nothing left queued.
+     */
+    private void drain() {
+        while (true) {
+            synchronized(_lock) {
+                while (_combining) {
+                    try {
+                        _lock.wait();
+                    } catch (InterruptedException anIE) {
+                    }
+                }
+
+                if (_queue.isEmpty()) {
+                    _draining = false;
+                    return;
+                }
+
+                _combining = true;
+            }
+
+            try {
+                combine();
+            } finally {
+                synchronized(_lock) {
+                    _combining = false;
+                    _lock.notifyAll();
+                }
+            }
+        }
+    }
+
+    void stop() {
+        _drainer.shutdown();
+    }
+
+    private void combine() {
+        final List<Entry> myBatch = new ArrayList<>();
+
+        synchronized(_lock) {
+            long myExpiry = System.currentTimeMillis() + _maxLinger;
+
+            while ((_queue.size() < _maxCount) && (_queuedBytes < _maxBytes)) {
+                long myPause = myExpiry - System.currentTimeMillis();
+
+                if (myPause < 1)
+                    break;
+
+                try {
+                    _lock.wait(myPause);
+                } catch (InterruptedException anIE) {
+                }
+            }
+
+            int myBytes = 0;
+
+            while ((! _queue.isEmpty()) && (myBatch.size() < _maxCount) &&
+                    ((myBatch.isEmpty()) || ((myBytes + _queue.getFirst()._size <= _maxBytes) &&
+                            (! myBatch.get(0)._solo) && (! _queue.getFirst()._solo)))) {
+                Entry myEntry = _queue.removeFirst();
+
+                myBytes += myEntry._size;
+                _queuedBytes -= myEntry._size;
+                myBatch.add(myEntry);
+            }
+        }
+
+        InactiveException myFailure = null;
+
+        try {
+            if (myBatch.size() == 1) {
+                _leaders.submit(myBatch.get(0)._value, myBatch.get(0)._completion);
+            } else {
+                _logger.trace("Submitting batch of " + myBatch.size() + ", " + myBatch);
+
+                List<byte[]> myValues = new ArrayList<>();
+
+                for (Entry myEntry : myBatch)
+                    myValues.add(myEntry._marshalled);
+
+                _leaders.submit(new Proposal(BATCH_KEY, pack(myValues)), new Completion<VoteOutcome>() {
+                    public void complete(VoteOutcome anOutcome) {
+                        for (Entry myEntry : myBatch)
+                            myEntry._completion.complete(new VoteOutcome(anOutcome.getResult(),
+                                    anOutcome.getSeqNum(), anOutcome.getRndNumber(), myEntry._value,
+                                    anOutcome.getLeader()));
+                    }
+                });
+            }
+        } catch (InactiveException anIE) {
+            myFailure = anIE;
+        }
+
+        synchronized(_lock) {
+            for (Entry myEntry : myBatch) {
+                myEntry._failure = myFailure;
+                myEntry._submitted = true;
+            }
+
+            _lock.notifyAll();
+        }
+
+        if (myFailure != null)
+            for (Entry myEntry : myBatch)
+                if (myEntry._async)
+                    myEntry.inactive();
+    }
+
+    /**
+     * @param aMarshalled a list of marshalled proposals
+     */
+    static byte[] pack(List<byte[]> aMarshalled) {
+        int mySize = 4;
+
+        for (byte[] myBytes : aMarshalled)
+            mySize += 4 + myBytes.length;
+
+        ByteBuffer myBuffer = ByteBuffer.allocate(mySize);
+        myBuffer.putInt(aMarshalled.size());
+
+        for (byte[] myBytes : aMarshalled) {
+            myBuffer.putInt(myBytes.length);
+            myBuffer.put(myBytes);
+        }
+
+        return myBuffer.array();
+    }
+
+    static List<Proposal> unpack(byte[] aBatch) {
+        ByteBuffer myBuffer = ByteBuffer.wrap(aBatch);
+        int myCount = myBuffer.getInt();
+        List<Proposal> myValues = new ArrayList<>(myCount);
+
+        for (int i = 0; i < myCount; i++) {
+            byte[] myBytes = new byte[myBuffer.getInt()];
+
+            myBuffer.get(myBytes);
+            myValues.add(new Proposal(myBytes));
+        }
+
+        return myValues;
+    }
+
+    private class Entry {
+        private final Proposal _value;
+        private final Completion<VoteOutcome> _completion;
+        private final boolean _async;
+        private final boolean _solo;
+        private final byte[] _marshalled;
+        private final int _size;
+
+        private boolean _submitted;
+        private InactiveException _failure;
+
+        Entry(Proposal aValue, Completion<VoteOutcome> aCompletion, boolean isAsync) {
+            _value = aValue;
+            _completion = aCompletion;
+            _async = isAsync;
+            _solo = (aValue.get(AcceptorLearner.MEMBER_CHANGE_KEY) != null);
+            _marshalled = aValue.marshall();
+            _size = _marshalled.length;
+        }
+
+        void inactive() {
+            _completion.complete(new VoteOutcome(VoteOutcome.Reason.INACTIVE, Constants.UNKNOWN_SEQ,
+                    Long.MIN_VALUE, _value, _common.getTransport().getLocalAddress()));
+        }
+
+        public String toString() {
+            return _value.toString();
+        }
+    }
+}
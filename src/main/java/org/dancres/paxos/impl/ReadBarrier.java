@@ -0,0 +1,202 @@
+package org.dancres.paxos.impl;
+
+import org.dancres.paxos.messages.Committed;
+import org.dancres.paxos.messages.PaxosMessage;
+import org.dancres.paxos.messages.ReadIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetSocketAddress;
+
+/**
+ * Allows any node to serve a read consistent with all values chosen before the read was requested. The node asks the
+ * current leader for the last instance it has had chosen (<code>ReadIndex</code>) and then waits for its own
+ * <code>AcceptorLearner</code> to deliver that instance. The leader can only vouch for that instance whilst it holds
+ * its lease (see <code>LeaderFactory.Lease</code>).
+ *
+ * Concurrent readers share requests. A reader cannot make use of a request already sent (the leader may have answered
+ * it before the reader arrived) so readers arriving whilst a request is outstanding are gathered together and served
+ * by the next one. A reader that times out only withdraws itself, the request is abandoned once no-one is waiting on
+ * it.
+ */
+class ReadBarrier implements MessageProcessor {
+    private static final Logger _logger = LoggerFactory.getLogger(ReadBarrier.class);
+
+    private final Common _common;
+    private final AcceptorLearner _al;
+    private final LeaderFactory _leaders;
+
+    private long _nextRequestId = 0;
+    private Round _outstanding;
+    private Round _gathering;
+
+    ReadBarrier(Common aCommon, AcceptorLearner anAl, LeaderFactory aLeaders) {
+        _common = aCommon;
+        _al = anAl;
+        _leaders = aLeaders;
+    }
+
+    /**
+     * @param aTimeout the maximum time in milliseconds to wait.
+     * @return <code>true</code> if local state reflects all values chosen before this call, <code>false</code> if that
+     * couldn't be established within the timeout (e.g. because there's no leader).
+     */
+    boolean await(long aTimeout) {
+        long myExpiry = System.currentTimeMillis() + aTimeout;
+        long mySeqNum;
+
+        // If we're the leader, we needn't ask anyone
+        //
+        LeaderFactory.Lease myLease = _leaders.getLease();
+
+        if (myLease.isValidUntil(System.currentTimeMillis())) {
+            mySeqNum = myLease.getSeqNum();
+        } else {
+            Round myRound;
+
+            synchronized(this) {
+                if (_gathering == null)
+                    _gathering = new Round();
+
+                myRound = _gathering;
+                myRound._waiters++;
+
+                if (_outstanding == null)
+                    send();
+            }
+
+            mySeqNum = myRound.await(myExpiry);
+
+            synchronized(this) {
+                // Timed out, withdraw leaving any other readers to wait out their own timeouts. Once the last has
+                // left, the request is presumed lost (or the leader failed) and is given up so another can be sent
+                //
+                if ((! myRound.isDone()) && (--myRound._waiters == 0)) {
+                    if (_outstanding == myRound) {
+                        myRound.complete(Constants.UNKNOWN_SEQ);
+                        _outstanding = null;
+
+                        if (_gathering != null)
+                            send();
+                    } else if (_gathering == myRound) {
+                        _gathering = null;
+                    }
+                }
+            }
+
+            if (mySeqNum == Constants.UNKNOWN_SEQ)
+                return false;
+        }
+
+        return _al.awaitDelivered(mySeqNum, myExpiry - System.currentTimeMillis());
+    }
+
+    /**
+     * Must be called holding the lock.
+     */
+    private void send() {
+        InetSocketAddress myLeader = _al.getLeaderAddress();
+
+        _outstanding = _gathering;
+        _gathering = null;
+        _outstanding._requestId = _nextRequestId++;
+
+        if (myLeader == null) {
+            _logger.debug(toString() + " No leader to request read index from");
+
+            _outstanding.complete(Constants.UNKNOWN_SEQ);
+            _outstanding = null;
+        } else {
+            _common.getTransport().send(
+                    _common.getTransport().getPickler().newPacket(new ReadIndex(_outstanding._requestId)), myLeader);
+        }
+    }
+
+    public boolean accepts(Transport.Packet aPacket) {
+        return aPacket.getMessage().getClassifications().contains(PaxosMessage.Classification.READ_INDEX);
+    }
+
+    public void processMessage(Transport.Packet aPacket) {
+        PaxosMessage myMessage = aPacket.getMessage();
+
+        switch (myMessage.getType()) {
+            case PaxosMessage.Types.READINDEX : {
+                LeaderFactory.Lease myLease = _leaders.getLease();
+                long mySeqNum = (myLease.isValidUntil(System.currentTimeMillis())) ?
+                        myLease.getSeqNum() : Constants.UNKNOWN_SEQ;
+
+                _common.getTransport().send(_common.getTransport().getPickler().newPacket(
+                        new Committed(((ReadIndex) myMessage).getRequestId(), mySeqNum)), aPacket.getSource());
+
+                break;
+            }
+
+            case PaxosMessage.Types.COMMITTED : {
+                Committed myCommitted = (Committed) myMessage;
+
+                synchronized(this) {
+                    if ((_outstanding == null) || (_outstanding._requestId != myCommitted.getRequestId()))
+                        return;
+
+                    _outstanding.complete(myCommitted.getSeqNum());
+                    _outstanding = null;
+
+                    if (_gathering != null)
+                        send();
+                }
+
+                break;
+            }
+        }
+    }
+
+    /**
+     * Request id and waiter count are guarded by the <code>ReadBarrier</code> lock.
+     */
+    private static class Round {
+        private long _requestId;
+        private int _waiters = 0;
+        private long _seqNum = Constants.UNKNOWN_SEQ;
+        private boolean _done = false;
+
+        boolean isDone() {
+            synchronized(this) {
+                return _done;
+            }
+        }
+
+        void complete(long aSeqNum) {
+            synchronized(this) {
+                _seqNum = aSeqNum;
+                _done = true;
+                notifyAll();
+            }
+        }
+
+        /**
+         * @return the leader's committed sequence number or <code>Constants.UNKNOWN_SEQ</code> if it wasn't obtained
+         * before the expiry.
+         */
+        long await(long anExpiry) {
+            synchronized(this) {
+                while (! _done) {
+                    long myPause = anExpiry - System.currentTimeMillis();
+
+                    if (myPause < 1)
+                        return Constants.UNKNOWN_SEQ;
+
+                    try {
+                        wait(myPause);
+                    } catch (InterruptedException anIE) {
+                    }
+                }
+
+                return _seqNum;
+            }
+        }
+    }
+
+    public String toString() {
+        return "RB [ " + _common.getTransport().getLocalAddress() + " ]";
+    }
+}
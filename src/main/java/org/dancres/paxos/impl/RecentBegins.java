@@ -0,0 +1,117 @@
+package org.dancres.paxos.impl;
+
+import org.dancres.paxos.messages.Begin;
+
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Holds the highest round Begin logged for each recent instance such that a Last can be constructed without
+ * consulting the log. Instances above the low watermark are always held (there can be no more than the inflight
+ * window's worth of them) as are those within a configurable window below it.
+ *
+ * Like <code>LogIndex</code> the cache only covers sequence numbers above a floor. For those it has seen every Begin
+ * that was logged and thus the absence of an entry means there is no logged state for the instance. Queries at or
+ * below the floor must fall back to the log.
+ */
+class RecentBegins {
+    static final int DEFAULT_WINDOW = 256;
+
+    private final SortedMap<Long, Begin> _begins = new TreeMap<>();
+    private long _floor = Constants.UNKNOWN_SEQ;
+    private int _window = DEFAULT_WINDOW;
+
+    /**
+     * @param aWindow the number of instances at or below the low watermark to retain.
+     */
+    void setWindow(int aWindow) {
+        if (aWindow < 0)
+            throw new IllegalArgumentException("Window cannot be negative: " + aWindow);
+
+        synchronized(this) {
+            _window = aWindow;
+        }
+    }
+
+    /**
+     * Discard the contents of the cache and start afresh covering only sequence numbers greater than that specified.
+     *
+     * @param aFloorSeq
+     */
+    void reset(long aFloorSeq) {
+        synchronized(this) {
+            _begins.clear();
+            _floor = aFloorSeq;
+        }
+    }
+
+    /**
+     * Discard all entries for sequence numbers at or below that specified.
+     *
+     * @param aFloorSeq
+     */
+    void truncate(long aFloorSeq) {
+        synchronized(this) {
+            if (aFloorSeq <= _floor)
+                return;
+
+            _begins.headMap(aFloorSeq + 1).clear();
+            _floor = aFloorSeq;
+        }
+    }
+
+    /**
+     * Discard all entries that have fallen out of the window as a consequence of the low watermark advancing.
+     *
+     * @param aLowWatermark
+     */
+    void advance(long aLowWatermark) {
+        synchronized(this) {
+            truncate(aLowWatermark - _window);
+        }
+    }
+
+    void add(Begin aBegin) {
+        synchronized(this) {
+            if (aBegin.getSeqNum() <= _floor)
+                return;
+
+            Begin myCurrent = _begins.get(aBegin.getSeqNum());
+
+            if ((myCurrent == null) || (aBegin.getRndNumber() > myCurrent.getRndNumber()))
+                _begins.put(aBegin.getSeqNum(), aBegin);
+        }
+    }
+
+    boolean covers(long aSeqNum) {
+        synchronized(this) {
+            return (aSeqNum > _floor);
+        }
+    }
+
+    /**
+     * @return the highest round Begin for the instance or <code>null</code> if there is none or the instance is not
+     * covered.
+     */
+    Begin get(long aSeqNum) {
+        synchronized(this) {
+            return _begins.get(aSeqNum);
+        }
+    }
+
+    /**
+     * @return the highest sequence number for which a Begin is held or <code>Constants.UNKNOWN_SEQ</code> if there
+     * are none.
+     */
+    long highestSeq() {
+        synchronized(this) {
+            return (_begins.isEmpty()) ? Constants.UNKNOWN_SEQ : _begins.lastKey();
+        }
+    }
+
+    int size() {
+        synchronized(this) {
+            return _begins.size();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package org.dancres.paxos.impl;
+
+import org.dancres.paxos.messages.PaxosMessage;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Tracks the round trip time to each peer for each phase a <code>Leader</code> drives (COLLECT to LAST and BEGIN to
+ * ACCEPT, the latter including the acceptor's disk sync) and derives interaction timeouts from them. Estimates are
+ * maintained as per TCP (RFC 6298): a smoothed round trip time plus four times its mean deviation.
+ *
+ * A leader needs a majority to respond so an interaction's timeout is that of the slowest peer in the fastest
+ * majority. Peers we've yet to hear from are assumed to need <code>INITIAL_TIMEOUT</code>.
+ */
+class RoundTrips {
+    static final long INITIAL_TIMEOUT = 1000;
+
+    /**
+     * Upper bound on any timeout, including after backoff. Well above <code>INITIAL_TIMEOUT</code> so that peers
+     * with long round trips (e.g. in another region) can be waited for, RFC 6298 suggests at least 60 seconds.
+     */
+    static final long MAX_TIMEOUT = 60000;
+
+    /**
+     * Timeouts shorter than this are meaningless given the resolution of <code>WheelTimer</code>.
+     */
+    static final long MIN_TIMEOUT = WheelTimer.DEFAULT_TICK;
+
+    private final ConcurrentMap<InetSocketAddress, Estimate> _collects = new ConcurrentHashMap<>();
+    private final ConcurrentMap<InetSocketAddress, Estimate> _begins = new ConcurrentHashMap<>();
+
+    /**
+     * @param aType the type of message sent, one of <code>COLLECT</code> or <code>BEGIN</code>.
+     * @param aPeer the peer that responded.
+     * @param aRoundTrip the time in nanoseconds between sending the message and receiving the response.
+     */
+    void sample(int aType, InetSocketAddress aPeer, long aRoundTrip) {
+        ConcurrentMap<InetSocketAddress, Estimate> myEstimates = estimatesFor(aType);
+
+        if (myEstimates == null)
+            return;
+
+        Estimate myEstimate = myEstimates.get(aPeer);
+
+        if (myEstimate == null) {
+            Estimate myNew = new Estimate();
+
+            myEstimate = myEstimates.putIfAbsent(aPeer, myNew);
+
+            if (myEstimate == null)
+                myEstimate = myNew;
+        }
+
+        myEstimate.sample(aRoundTrip / 1000000.0);
+    }
+
+    /**
+     * @param aType the type of message to be sent, one of <code>COLLECT</code> or <code>BEGIN</code>.
+     * @param aPeers the peers the message will be sent to.
+     * @param aMajority the number of peers that must respond.
+     * @return the time in milliseconds to wait for a majority of responses.
+     */
+    long timeout(int aType, Collection<InetSocketAddress> aPeers, int aMajority) {
+        ConcurrentMap<InetSocketAddress, Estimate> myEstimates = estimatesFor(aType);
+
+        if ((myEstimates == null) || (aPeers.size() < aMajority) || (aMajority < 1))
+            return INITIAL_TIMEOUT;
+
+        long[] myTimeouts = new long[aPeers.size()];
+        int i = 0;
+
+        for (InetSocketAddress myPeer : aPeers)
+            myTimeouts[i++] = timeoutFor(myEstimates, myPeer);
+
+        Arrays.sort(myTimeouts);
+
+        return myTimeouts[aMajority - 1];
+    }
+
+    /**
+     * @param aType the type of message to be sent, one of <code>COLLECT</code> or <code>BEGIN</code>.
+     * @param aPeers the peers to choose from.
+     * @param aCount the number of peers to choose.
+     * @return the peers with the shortest timeouts, fastest first. Ties are broken by address such that the choice
+     * is stable.
+     */
+    List<InetSocketAddress> fastest(int aType, Collection<InetSocketAddress> aPeers, int aCount) {
+        final ConcurrentMap<InetSocketAddress, Estimate> myEstimates = estimatesFor(aType);
+        List<InetSocketAddress> myPeers = new ArrayList<>(aPeers);
+
+        Collections.sort(myPeers, new Comparator<InetSocketAddress>() {
+            public int compare(InetSocketAddress aPeer, InetSocketAddress anotherPeer) {
+                int myResult = Long.compare(timeoutFor(myEstimates, aPeer), timeoutFor(myEstimates, anotherPeer));
+
+                return (myResult != 0) ? myResult : aPeer.toString().compareTo(anotherPeer.toString());
+            }
+        });
+
+        return myPeers.subList(0, Math.min(aCount, myPeers.size()));
+    }
+
+    private static long timeoutFor(ConcurrentMap<InetSocketAddress, Estimate> anEstimates, InetSocketAddress aPeer) {
+        Estimate myEstimate = (anEstimates == null) ? null : anEstimates.get(aPeer);
+
+        return (myEstimate == null) ? INITIAL_TIMEOUT : myEstimate.timeout();
+    }
+
+    private ConcurrentMap<InetSocketAddress, Estimate> estimatesFor(int aType) {
+        switch (aType) {
+            case PaxosMessage.Types.COLLECT : return _collects;
+            case PaxosMessage.Types.BEGIN : return _begins;
+            default : return null;
+        }
+    }
+
+    private static class Estimate {
+        private double _smoothed;
+        private double _deviation;
+        private boolean _sampled = false;
+
+        synchronized void sample(double aRoundTrip) {
+            if (! _sampled) {
+                _smoothed = aRoundTrip;
+                _deviation = aRoundTrip / 2;
+                _sampled = true;
+            } else {
+                _deviation = (0.75 * _deviation) + (0.25 * Math.abs(_smoothed - aRoundTrip));
+                _smoothed = (0.875 * _smoothed) + (0.125 * aRoundTrip);
+            }
+        }
+
+        synchronized long timeout() {
+            long myTimeout = (long) Math.ceil(_smoothed + Math.max(MIN_TIMEOUT, 4 * _deviation));
+
+            return Math.max(MIN_TIMEOUT, Math.min(myTimeout, MAX_TIMEOUT));
+        }
+    }
+}
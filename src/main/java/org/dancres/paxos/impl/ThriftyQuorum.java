@@ -0,0 +1,74 @@
+package org.dancres.paxos.impl;
+
+import org.dancres.paxos.messages.PaxosMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Chooses the majority a <code>Leader</code> sends its Begins to when running thrifty. The majority is made up of
+ * ourselves (our local AcceptorLearner must see every value so we can serve reads and hold the lease) plus the
+ * fastest responders as measured by <code>RoundTrips</code>.
+ *
+ * Members outside the majority don't see Begins, the <code>Leader</code> sends them the value with the outcome instead.
+ * A choice is kept until one of its members leaves the <code>Assembly</code> or a Begin sent to it goes unanswered
+ * such that round trip jitter doesn't move Begins from member to member.
+ */
+class ThriftyQuorum {
+    private static final Logger _logger = LoggerFactory.getLogger(ThriftyQuorum.class);
+
+    private final Common _common;
+    private List<InetSocketAddress> _current = null;
+
+    ThriftyQuorum(Common aCommon) {
+        _common = aCommon;
+    }
+
+    /**
+     * @param anAssembly the membership the <code>Leader</code> is working with.
+     * @return the members to send to or <code>null</code> if there are too few live members to choose from.
+     */
+    synchronized List<InetSocketAddress> choose(Assembly anAssembly) {
+        Collection<InetSocketAddress> myMembers = anAssembly.getMembers().keySet();
+        InetSocketAddress myLocal = _common.getTransport().getLocalAddress();
+        int myMajority = _common.getTransport().getFD().getMajority();
+
+        if ((_current != null) && (_current.size() == myMajority) && (myMembers.containsAll(_current)))
+            return _current;
+
+        if ((myMembers.size() < myMajority) || (! myMembers.contains(myLocal))) {
+            _current = null;
+            return null;
+        }
+
+        List<InetSocketAddress> myPeers = new ArrayList<>(myMembers);
+        myPeers.remove(myLocal);
+
+        List<InetSocketAddress> myChoice = new ArrayList<>();
+        myChoice.add(myLocal);
+        myChoice.addAll(_common.getRoundTrips().fastest(PaxosMessage.Types.BEGIN, myPeers, myMajority - 1));
+
+        _current = Collections.unmodifiableList(myChoice);
+
+        _logger.debug(toString() + " chose " + _current);
+
+        return _current;
+    }
+
+    /**
+     * @param aQuorum a choice previously returned by <code>choose</code> that failed to respond in time.
+     */
+    synchronized void failed(List<InetSocketAddress> aQuorum) {
+        if (_current == aQuorum)
+            _current = null;
+    }
+
+    public String toString() {
+        return "TQ [ " + _common.getTransport().getLocalAddress() + " ]";
+    }
+}
@@ -0,0 +1,267 @@
+package org.dancres.paxos.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hashed-wheel timer used for the per-interaction, heartbeat and recovery alarms. Scheduling and cancelling are
+ * constant time (a task is linked into or out of the bucket for its deadline) so there's no need to purge cancelled
+ * tasks as there is with <code>java.util.Timer</code>. The price is that tasks fire on a tick boundary and thus up to
+ * one tick late.
+ *
+ * Tasks are spread round-robin across several wheels, one per core up to <code>MAX_WHEELS</code>, each with its own
+ * thread. A wheel runs its expired tasks on its thread, one after another, so tasks should be brief.
+ */
+class WheelTimer {
+    private static final Logger _logger = LoggerFactory.getLogger(WheelTimer.class);
+
+    static final long DEFAULT_TICK = 10;
+    static final int DEFAULT_WHEEL_SIZE = 512;
+    static final int MAX_WHEELS = 4;
+
+    private final Wheel[] _wheels;
+    private final AtomicInteger _nextWheel = new AtomicInteger(0);
+
+    WheelTimer(String aName) {
+        this(aName, Math.min(Runtime.getRuntime().availableProcessors(), MAX_WHEELS), DEFAULT_TICK,
+                DEFAULT_WHEEL_SIZE);
+    }
+
+    /**
+     * @param aName the name for the wheels' threads.
+     * @param aWheels the number of wheels to spread tasks across.
+     * @param aTick the resolution of the timer in milliseconds.
+     * @param aWheelSize the number of buckets in each wheel, rounded up to a power of two.
+     */
+    WheelTimer(String aName, int aWheels, long aTick, int aWheelSize) {
+        if ((aWheels < 1) || (aTick < 1) || (aWheelSize < 1))
+            throw new IllegalArgumentException("Invalid timer parameters: " + aWheels + ", " + aTick + ", " +
+                    aWheelSize);
+
+        int mySize = Integer.highestOneBit(aWheelSize);
+        if (mySize < aWheelSize)
+            mySize <<= 1;
+
+        _wheels = new Wheel[aWheels];
+
+        for (int i = 0; i < aWheels; i++)
+            _wheels[i] = new Wheel(aName + "-" + i, aTick, mySize);
+    }
+
+    /**
+     * @param aTask the task to run, which must not have been scheduled before.
+     * @param aDelay the time in milliseconds after which to run the task.
+     */
+    void schedule(Task aTask, long aDelay) {
+        if (aDelay < 0)
+            throw new IllegalArgumentException("Negative delay: " + aDelay);
+
+        _wheels[(_nextWheel.getAndIncrement() & Integer.MAX_VALUE) % _wheels.length].add(aTask, aDelay);
+    }
+
+    /**
+     * Discards all scheduled tasks. No further tasks can be scheduled.
+     */
+    void stop() {
+        for (Wheel myWheel : _wheels)
+            myWheel.stop();
+    }
+
+    abstract static class Task implements Runnable {
+        private static final int NEW = 0;
+        private static final int SCHEDULED = 1;
+        private static final int CANCELLED = 2;
+        private static final int EXPIRED = 3;
+
+        /**
+         * State and links are guarded by the lock of the wheel the task is scheduled on, or by the task itself prior to
+         * that.
+         */
+        private int _state = NEW;
+        private Wheel _wheel;
+        private long _deadline;
+        private Task _prev;
+        private Task _next;
+
+        /**
+         * @return <code>true</code> if this prevented the task from running.
+         */
+        public boolean cancel() {
+            Wheel myWheel;
+
+            synchronized(this) {
+                myWheel = _wheel;
+
+                if (myWheel == null) {
+                    boolean isNew = (_state == NEW);
+
+                    _state = CANCELLED;
+                    return isNew;
+                }
+            }
+
+            return myWheel.remove(this);
+        }
+    }
+
+    private static class Wheel implements Runnable {
+        private final long _tick;
+        private final Task[] _buckets;
+        private final int _mask;
+        private final long _start = System.nanoTime();
+        private final Thread _thread;
+
+        /**
+         * The tick to be processed next, ticks being counted from <code>_start</code>.
+         */
+        private long _currentTick = 0;
+        private boolean _stopped = false;
+
+        Wheel(String aName, long aTick, int aSize) {
+            _tick = aTick;
+            _buckets = new Task[aSize];
+            _mask = aSize - 1;
+
+            _thread = new Thread(this, aName);
+            _thread.start();
+        }
+
+        private long elapsed() {
+            return (System.nanoTime() - _start) / 1000000;
+        }
+
+        void add(Task aTask, long aDelay) {
+            synchronized(this) {
+                if (_stopped)
+                    throw new IllegalStateException("Timer already stopped");
+
+                synchronized(aTask) {
+                    if (aTask._state != Task.NEW)
+                        throw new IllegalStateException("Task already scheduled or cancelled");
+
+                    aTask._state = Task.SCHEDULED;
+                    aTask._wheel = this;
+                }
+
+                // Round up such that we never fire early
+                //
+                aTask._deadline = Math.max(_currentTick, (elapsed() + aDelay + _tick - 1) / _tick);
+
+                int myBucket = (int) (aTask._deadline & _mask);
+
+                aTask._prev = null;
+                aTask._next = _buckets[myBucket];
+
+                if (aTask._next != null)
+                    aTask._next._prev = aTask;
+
+                _buckets[myBucket] = aTask;
+                notifyAll();
+            }
+        }
+
+        boolean remove(Task aTask) {
+            synchronized(this) {
+                if (aTask._state != Task.SCHEDULED) {
+                    return false;
+                }
+
+                unlink(aTask);
+                aTask._state = Task.CANCELLED;
+
+                return true;
+            }
+        }
+
+        /**
+         * Must be called holding the lock.
+         */
+        private void unlink(Task aTask) {
+            if (aTask._prev != null)
+                aTask._prev._next = aTask._next;
+            else
+                _buckets[(int) (aTask._deadline & _mask)] = aTask._next;
+
+            if (aTask._next != null)
+                aTask._next._prev = aTask._prev;
+
+            aTask._prev = null;
+            aTask._next = null;
+        }
+
+        void stop() {
+            synchronized(this) {
+                _stopped = true;
+
+                for (int i = 0; i < _buckets.length; i++) {
+                    Task myTask = _buckets[i];
+
+                    while (myTask != null) {
+                        Task myNext = myTask._next;
+
+                        myTask._state = Task.CANCELLED;
+                        myTask._prev = null;
+                        myTask._next = null;
+                        myTask = myNext;
+                    }
+
+                    _buckets[i] = null;
+                }
+
+                notifyAll();
+            }
+        }
+
+        public void run() {
+            List<Task> myExpired = new ArrayList<>();
+
+            while (true) {
+                synchronized(this) {
+                    long myPause;
+
+                    while ((! _stopped) && ((myPause = (_currentTick * _tick) - elapsed()) > 0)) {
+                        try {
+                            wait(myPause);
+                        } catch (InterruptedException anIE) {
+                        }
+                    }
+
+                    if (_stopped)
+                        return;
+
+                    // Tasks further out than a revolution share this bucket and are left in place
+                    //
+                    Task myTask = _buckets[(int) (_currentTick & _mask)];
+
+                    while (myTask != null) {
+                        Task myNext = myTask._next;
+
+                        if (myTask._deadline <= _currentTick) {
+                            unlink(myTask);
+                            myTask._state = Task.EXPIRED;
+                            myExpired.add(myTask);
+                        }
+
+                        myTask = myNext;
+                    }
+
+                    ++_currentTick;
+                }
+
+                for (Task myTask : myExpired) {
+                    try {
+                        myTask.run();
+                    } catch (Throwable aT) {
+                        _logger.warn(_thread.getName() + " Timer task failed", aT);
+                    }
+                }
+
+                myExpired.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package org.dancres.paxos.impl;
+
+import org.dancres.paxos.LogStorage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pipelines writes to <code>LogStorage</code> such that the thread generating records needn't wait on the disk.
+ * Records are queued in the order they're submitted and a single thread puts all records queued since its last
+ * pass to the log, forcing only the last of them (which also makes durable all those before it). Thus records for
+ * many sequence numbers are committed with a single force and log order is preserved.
+ *
+ * A record can be submitted with a <code>Completion</code> that is invoked (from the pipeline thread) once the record
+ * is durable or it can be put synchronously in which case the caller waits for it and all records queued before it
+ * to be written.
+ */
+class WritePipeline {
+    private static final Logger _logger = LoggerFactory.getLogger(WritePipeline.class);
+
+    interface Completion {
+        /**
+         * @param anOffset at which the record was written
+         */
+        public void written(long anOffset);
+    }
+
+    private final LogStorage _storage;
+
+    private List<Entry> _pending = new ArrayList<>();
+    private Exception _failure;
+    private boolean _stopping;
+    private Thread _writer;
+    private String _name;
+
+    WritePipeline(LogStorage aStorage) {
+        _storage = aStorage;
+    }
+
+    /**
+     * @param aName to identify the pipeline in logs and thread dumps.
+     */
+    void start(String aName) {
+        synchronized(this) {
+            assert (_writer == null);
+
+            _name = aName;
+            _failure = null;
+            _stopping = false;
+            _writer = new Thread(new Worker(), "Paxos log writer [" + _name + "]");
+            _writer.setDaemon(true);
+            _writer.start();
+        }
+    }
+
+    /**
+     * Wait for all queued records to be written and then halt the pipeline. Puts made after this returns are made
+     * directly to the log.
+     */
+    void stop() throws InterruptedException {
+        Thread myWriter;
+
+        synchronized(this) {
+            if (_writer == null)
+                return;
+
+            _stopping = true;
+            myWriter = _writer;
+            notifyAll();
+        }
+
+        myWriter.join();
+
+        synchronized(this) {
+            _writer = null;
+        }
+    }
+
+    /**
+     * Put a record to the log, waiting for it to be written.
+     *
+     * @return the offset at which the record was written.
+     */
+    long put(byte[] aRecord, boolean aForceRequired) throws Exception {
+        Entry myEntry = new Entry(aRecord, aForceRequired, null);
+
+        if (! enqueue(myEntry))
+            return _storage.put(aRecord, aForceRequired);
+
+        return myEntry.await();
+    }
+
+    /**
+     * Queue a record to be written durably and return immediately.
+     *
+     * @param aCompletion to be invoked once the record is durable. If the record cannot be written, the completion is
+     *                    never invoked.
+     */
+    void put(byte[] aRecord, Completion aCompletion) throws Exception {
+        if (! enqueue(new Entry(aRecord, true, aCompletion)))
+            aCompletion.written(_storage.put(aRecord, true));
+    }
+
+    /**
+     * @return <code>false</code> if the pipeline isn't running and the caller should put to the log itself.
+     */
+    private boolean enqueue(Entry anEntry) throws Exception {
+        synchronized(this) {
+            if ((_writer == null) || (_stopping))
+                return false;
+
+            assert (Thread.currentThread() != _writer);
+
+            if (_failure != null)
+                throw new Exception("Pipeline has failed", _failure);
+
+            _pending.add(anEntry);
+            notifyAll();
+
+            return true;
+        }
+    }
+
+    private class Worker implements Runnable {
+        public void run() {
+            while (true) {
+                List<Entry> myBatch;
+
+                synchronized(WritePipeline.this) {
+                    while ((_pending.isEmpty()) && (! _stopping)) {
+                        try {
+                            WritePipeline.this.wait();
+                        } catch (InterruptedException anIE) {
+                        }
+                    }
+
+                    if (_pending.isEmpty())
+                        return;
+
+                    myBatch = _pending;
+                    _pending = new ArrayList<>();
+                }
+
+                write(myBatch);
+            }
+        }
+
+        private void write(List<Entry> aBatch) {
+            boolean myForceRequired = false;
+
+            for (Entry myEntry : aBatch)
+                myForceRequired |= myEntry._forceRequired;
+
+            int myLast = aBatch.size() - 1;
+
+            for (int i = 0; i <= myLast; i++) {
+                Entry myEntry = aBatch.get(i);
+
+                try {
+                    myEntry._offset = _storage.put(myEntry._record, (i == myLast) && myForceRequired);
+                } catch (Exception anE) {
+                    _logger.error(_name + " cannot log: " + System.currentTimeMillis(), anE);
+
+                    synchronized(WritePipeline.this) {
+                        _failure = anE;
+                    }
+
+                    for (Entry myFailed : aBatch.subList(i, aBatch.size()))
+                        myFailed.fail(anE);
+
+                    aBatch = aBatch.subList(0, i);
+                    break;
+                }
+            }
+
+            for (Entry myEntry : aBatch)
+                myEntry.complete();
+        }
+    }
+
+    private static class Entry {
+        private final byte[] _record;
+        private final boolean _forceRequired;
+        private final Completion _completion;
+
+        private long _offset = -1;
+        private Exception _failure;
+        private boolean _done;
+
+        Entry(byte[] aRecord, boolean aForceRequired, Completion aCompletion) {
+            _record = aRecord;
+            _forceRequired = aForceRequired;
+            _completion = aCompletion;
+        }
+
+        void complete() {
+            if (_completion != null) {
+                try {
+                    _completion.written(_offset);
+                } catch (Throwable aT) {
+                    _logger.error("Completion failed", aT);
+                }
+            } else {
+                synchronized(this) {
+                    _done = true;
+                    notifyAll();
+                }
+            }
+        }
+
+        void fail(Exception anE) {
+            synchronized(this) {
+                _failure = anE;
+                _done = true;
+                notifyAll();
+            }
+        }
+
+        long await() throws Exception {
+            synchronized(this) {
+                while (! _done) {
+                    try {
+                        wait();
+                    } catch (InterruptedException anIE) {
+                    }
+                }
+
+                if (_failure != null)
+                    throw _failure;
+
+                return _offset;
+            }
+        }
+    }
+}
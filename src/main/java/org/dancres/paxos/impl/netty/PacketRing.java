@@ -0,0 +1,147 @@
+package org.dancres.paxos.impl.netty;
+
+import org.dancres.paxos.impl.Transport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A fixed size ring of packet slots drained by a single dispatcher thread. Receiving threads claim a slot by
+ * advancing a sequence number and publish into it, the dispatcher hands packets to its <code>Consumer</code> in
+ * sequence order. Nothing is allocated per packet and there are no locks.
+ *
+ * Should the ring fill, receivers wait (as per the <code>WaitStrategy</code>) for the dispatcher to free a slot.
+ */
+class PacketRing {
+    private static final Logger _logger = LoggerFactory.getLogger(PacketRing.class);
+
+    static final int DEFAULT_SIZE = 1024;
+
+    interface Consumer {
+        void consume(Transport.Packet aPacket);
+    }
+
+    private final Transport.Packet[] _slots;
+
+    /**
+     * The sequence number last published into each slot.
+     */
+    private final AtomicLongArray _published;
+    private final int _mask;
+
+    private final AtomicLong _claimed = new AtomicLong(-1);
+    private final AtomicLong _consumed = new AtomicLong(-1);
+
+    private final WaitStrategy _strategy;
+    private final Consumer _consumer;
+    private final Thread _dispatcher;
+
+    private volatile boolean _sleeping = false;
+    private volatile boolean _stopped = false;
+
+    /**
+     * @param aSize the number of slots, must be a power of two.
+     */
+    PacketRing(String aName, int aSize, WaitStrategy aStrategy, Consumer aConsumer) {
+        if (Integer.bitCount(aSize) != 1)
+            throw new IllegalArgumentException("Size must be a power of two: " + aSize);
+
+        _slots = new Transport.Packet[aSize];
+        _published = new AtomicLongArray(aSize);
+        _mask = aSize - 1;
+        _strategy = aStrategy;
+        _consumer = aConsumer;
+
+        for (int i = 0; i < aSize; i++)
+            _published.set(i, -1);
+
+        _dispatcher = new Thread(new Runnable() {
+            public void run() {
+                dispatch();
+            }
+        }, aName);
+
+        _dispatcher.setDaemon(true);
+        _dispatcher.start();
+    }
+
+    /**
+     * @param aPacket to be dispatched. Dropped if the ring is stopped whilst waiting for a slot.
+     */
+    void publish(Transport.Packet aPacket) {
+        long mySeq;
+        int myIdles = 0;
+
+        for (;;) {
+            long myLast = _claimed.get();
+
+            // The slot is free once the packet published a lap ago has been consumed
+            //
+            if (myLast + 1 - _consumed.get() > _slots.length) {
+                if (_stopped)
+                    return;
+
+                _strategy.idle(myIdles++);
+            } else if (_claimed.compareAndSet(myLast, myLast + 1)) {
+                mySeq = myLast + 1;
+                break;
+            }
+        }
+
+        int myIndex = (int) (mySeq & _mask);
+
+        _slots[myIndex] = aPacket;
+        _published.set(myIndex, mySeq);
+
+        if (_sleeping)
+            LockSupport.unpark(_dispatcher);
+    }
+
+    void stop() {
+        _stopped = true;
+        LockSupport.unpark(_dispatcher);
+    }
+
+    private void dispatch() {
+        long myNext = 0;
+
+        while (! _stopped) {
+            int myIndex = (int) (myNext & _mask);
+            int myIdles = 0;
+
+            while (_published.get(myIndex) != myNext) {
+                if (_stopped)
+                    return;
+
+                /*
+                 * A receiver publishes then checks whether we're sleeping, we declare we're sleeping then check for
+                 * a publish. Thus either it sees we're sleeping and wakes us or we see its packet.
+                 */
+                if (_strategy.parks(myIdles)) {
+                    _sleeping = true;
+
+                    if ((_published.get(myIndex) != myNext) && (! _stopped))
+                        LockSupport.park(this);
+
+                    _sleeping = false;
+                } else
+                    _strategy.idle(myIdles);
+
+                ++myIdles;
+            }
+
+            Transport.Packet myPacket = _slots[myIndex];
+            _slots[myIndex] = null;
+            _consumed.set(myNext++);
+
+            try {
+                _consumer.consume(myPacket);
+            } catch (Throwable aT) {
+                _logger.warn("Dispatch failed: " + myPacket, aT);
+            }
+        }
+    }
+}
@@ -20,7 +20,6 @@ import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -58,6 +57,12 @@ public class TransportImpl extends SimpleChannelHandler implements Transport {
 
 	private static final int BROADCAST_PORT = 41952;
 
+    /**
+     * Netty defaults to a 768 byte receive buffer for datagrams, truncating larger packets (such as Begins carrying
+     * batched proposals). Size it for the largest possible datagram instead.
+     */
+    private static final int MAX_DATAGRAM_SIZE = 65536;
+
     private volatile Heartbeater _hb;
     private final MessageBasedFailureDetector _fd;
     private final byte[] _meta;
@@ -77,12 +82,16 @@ public class TransportImpl extends SimpleChannelHandler implements Transport {
     private final AtomicBoolean _isStopping = new AtomicBoolean(false);
     private final PacketPickler _pickler = new PicklerImpl();
 
+    private static final int MAX_DISPATCHERS = 4;
+
     /**
-     * Netty doesn't seem to like re-entrant behaviours so we need a thread pool
-     *
-     * TODO: Ought to be able to run this multi-threaded but AL is not ready for that yet
+     * Netty doesn't seem to like re-entrant behaviours so we hand packets off to dispatcher threads. Packets from a
+     * given source are always dispatched by the same thread such that they are processed in the order they were sent
+     * (e.g. a Collect ahead of the Begin that follows it) whilst packets from different sources are processed
+     * concurrently.
      */
-    private final ExecutorService _packetDispatcher = Executors.newSingleThreadExecutor();
+    private final PacketRing[] _packetDispatchers =
+            new PacketRing[Math.min(Runtime.getRuntime().availableProcessors(), MAX_DISPATCHERS)];
 
     private static class Factory implements ThreadFactory {
 		public Thread newThread(Runnable aRunnable) {
@@ -128,18 +137,30 @@ public class TransportImpl extends SimpleChannelHandler implements Transport {
     	System.runFinalizersOnExit(true);
     }
 
-    private TransportImpl(PipelineFactory aFactory, MessageBasedFailureDetector anFD, byte[] aMeta) throws Exception {
-        this(aFactory, new InetSocketAddress(Utils.getWorkableInterfaceAddress(), 0), anFD, aMeta);
+    private TransportImpl(PipelineFactory aFactory, MessageBasedFailureDetector anFD, byte[] aMeta,
+                          WaitStrategy aStrategy) throws Exception {
+        this(aFactory, new InetSocketAddress(Utils.getWorkableInterfaceAddress(), 0), anFD, aMeta, aStrategy);
     }
 
     private TransportImpl(PipelineFactory aFactory, InetSocketAddress aServerAddr,
-                         MessageBasedFailureDetector anFD, byte[] aMeta) throws Exception {
+                         MessageBasedFailureDetector anFD, byte[] aMeta, WaitStrategy aStrategy) throws Exception {
         if (aFactory == null)
             throw new IllegalArgumentException();
 
         PipelineFactory myFactory = aFactory;
         _fd = anFD;
 
+        for (int i = 0; i < _packetDispatchers.length; i++)
+            _packetDispatchers[i] = new PacketRing("Packet dispatcher-" + i, PacketRing.DEFAULT_SIZE, aStrategy,
+                    new PacketRing.Consumer() {
+                        public void consume(Packet aPacket) {
+                            for (Dispatcher d : _dispatchers) {
+                                if (d.messageReceived(aPacket))
+                                    break;
+                            }
+                        }
+                    });
+
         _mcastAddr = new InetSocketAddress("224.0.0.1", BROADCAST_PORT);
         _broadcastAddr = new InetSocketAddress(Utils.getBroadcastAddress(), 255);
 
@@ -147,6 +168,8 @@ public class TransportImpl extends SimpleChannelHandler implements Transport {
         _mcast = _mcastFactory.newChannel(myFactory.newPipeline(_pickler, this));
 
         _mcast.getConfig().setReuseAddress(true);
+        _mcast.getConfig().setReceiveBufferSizePredictorFactory(
+                new FixedReceiveBufferSizePredictorFactory(MAX_DATAGRAM_SIZE));
         _mcast.bind(new InetSocketAddress(BROADCAST_PORT)).await();
         _mcast.joinGroup(_mcastAddr, Utils.getWorkableInterface()).await();
         _channels.add(_mcast);
@@ -155,6 +178,8 @@ public class TransportImpl extends SimpleChannelHandler implements Transport {
         _unicast = _unicastFactory.newChannel(myFactory.newPipeline(_pickler, this));
 
         _unicast.getConfig().setReuseAddress(true);
+        _unicast.getConfig().setReceiveBufferSizePredictorFactory(
+                new FixedReceiveBufferSizePredictorFactory(MAX_DATAGRAM_SIZE));
         _unicast.bind(aServerAddr).await();
         _channels.add(_unicast);
 
@@ -208,12 +233,19 @@ public class TransportImpl extends SimpleChannelHandler implements Transport {
         _logger.debug("Transport bound on: " + _unicastAddr);
     }
 
+    /**
+     * @param aStrategy how packet dispatchers wait for packets to arrive.
+     */
+    public TransportImpl(MessageBasedFailureDetector anFD, byte[] aMeta, WaitStrategy aStrategy) throws Exception {
+        this(new DefaultPipelineFactory(), anFD, aMeta, aStrategy);
+    }
+
     public TransportImpl(MessageBasedFailureDetector anFD, byte[] aMeta) throws Exception {
-        this(new DefaultPipelineFactory(), anFD, aMeta);
+        this(new DefaultPipelineFactory(), anFD, aMeta, WaitStrategy.PARK);
     }
 
 	public TransportImpl(MessageBasedFailureDetector anFD) throws Exception {
-        this(new DefaultPipelineFactory(), anFD, null);
+        this(new DefaultPipelineFactory(), anFD, null, WaitStrategy.PARK);
     }
 
     public PacketPickler getPickler() {
@@ -241,7 +273,8 @@ public class TransportImpl extends SimpleChannelHandler implements Transport {
         if (_fd != null)
             _fd.stop();
 
-		_packetDispatcher.shutdown();
+        for (PacketRing myDispatcher : _packetDispatchers)
+            myDispatcher.stop();
 
 		try {
             for (Dispatcher d: _dispatchers)
@@ -309,14 +342,9 @@ public class TransportImpl extends SimpleChannelHandler implements Transport {
             return;
         }
 
-        _packetDispatcher.execute(new Runnable() {
-            public void run() {
-                for (Dispatcher d : _dispatchers) {
-                    if (d.messageReceived(myPacket))
-                        break;
-                }
-            }
-        });
+        int myStripe = (myPacket.getSource().hashCode() & Integer.MAX_VALUE) % _packetDispatchers.length;
+
+        _packetDispatchers[myStripe].publish(myPacket);
     }
 
     public void exceptionCaught(ChannelHandlerContext aContext, ExceptionEvent anEvent) {
@@ -0,0 +1,66 @@
+package org.dancres.paxos.impl.netty;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How a thread waits on a <code>PacketRing</code>, whether a dispatcher awaiting packets or a receiver awaiting space.
+ * Trades latency against CPU consumption.
+ */
+public enum WaitStrategy {
+    /**
+     * Lowest latency but each dispatcher consumes a core even when idle.
+     */
+    BUSY_SPIN {
+        void idle(int anIdles) {
+        }
+
+        boolean parks(int anIdles) {
+            return false;
+        }
+    },
+
+    /**
+     * Gives up the core to other threads whilst waiting but never sleeps.
+     */
+    YIELD {
+        void idle(int anIdles) {
+            Thread.yield();
+        }
+
+        boolean parks(int anIdles) {
+            return false;
+        }
+    },
+
+    /**
+     * Spins then yields briefly before sleeping. Dispatchers are woken by the arrival of a packet.
+     */
+    PARK {
+        void idle(int anIdles) {
+            if (anIdles < SPINS)
+                return;
+            else if (anIdles < SPINS * 2)
+                Thread.yield();
+            else
+                LockSupport.parkNanos(PARK_NANOS);
+        }
+
+        boolean parks(int anIdles) {
+            return (anIdles >= SPINS * 2);
+        }
+    };
+
+    private static final int SPINS = 100;
+    private static final long PARK_NANOS = 50000;
+
+    /**
+     * @param anIdles the number of times the caller has already waited.
+     */
+    abstract void idle(int anIdles);
+
+    /**
+     * @param anIdles the number of times the caller has already waited.
+     * @return <code>true</code> if a dispatcher should now sleep until woken.
+     */
+    abstract boolean parks(int anIdles);
+}
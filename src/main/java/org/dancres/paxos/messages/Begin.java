@@ -1,6 +1,7 @@
 package org.dancres.paxos.messages;
 
 import org.dancres.paxos.Proposal;
+import org.dancres.paxos.impl.Constants;
 
 import java.util.EnumSet;
 
@@ -8,11 +9,24 @@ public class Begin implements PaxosMessage {
     private final long _seqNum;
     private final long _rndNumber;
     private final Proposal _consolidatedValue;
-    
+    private final long _committedSeqNum;
+    private final long _committedRndNumber;
+
     public Begin(long aSeqNum, long aRndNumber, Proposal aValue) {
+        this(aSeqNum, aRndNumber, aValue, Constants.UNKNOWN_SEQ, Long.MIN_VALUE);
+    }
+
+    /**
+     * @param aCommittedSeqNum the most recent instance the leader knows to have been decided or
+     *                         <code>Constants.UNKNOWN_SEQ</code>.
+     * @param aCommittedRndNumber the round in which that instance was decided.
+     */
+    public Begin(long aSeqNum, long aRndNumber, Proposal aValue, long aCommittedSeqNum, long aCommittedRndNumber) {
         _seqNum = aSeqNum;
         _rndNumber = aRndNumber;
         _consolidatedValue = aValue;
+        _committedSeqNum = aCommittedSeqNum;
+        _committedRndNumber = aCommittedRndNumber;
     }
 
     public int getType() {
@@ -34,6 +48,14 @@ public class Begin implements PaxosMessage {
     public Proposal getConsolidatedValue() {
     	return _consolidatedValue;
     }
+
+    public long getCommittedSeqNum() {
+        return _committedSeqNum;
+    }
+
+    public long getCommittedRndNumber() {
+        return _committedRndNumber;
+    }
     
     public int hashCode() {
     	return Long.valueOf(_seqNum).hashCode() ^ Long.valueOf(_rndNumber).hashCode();
@@ -0,0 +1,37 @@
+package org.dancres.paxos.messages;
+
+import java.util.EnumSet;
+
+/**
+ * Returned by a leader in response to a <code>ReadIndex</code>. Carries the sequence number of the last instance the
+ * leader has had chosen or -1 if it does not hold a lease and thus cannot vouch for it.
+ */
+public class Committed implements PaxosMessage {
+    private final long _requestId;
+    private final long _seqNum;
+
+    public Committed(long aRequestId, long aSeqNum) {
+        _requestId = aRequestId;
+        _seqNum = aSeqNum;
+    }
+
+    public EnumSet<Classification> getClassifications() {
+        return EnumSet.of(Classification.READ_INDEX);
+    }
+
+    public long getSeqNum() {
+        return _seqNum;
+    }
+
+    public int getType() {
+        return Types.COMMITTED;
+    }
+
+    public long getRequestId() {
+        return _requestId;
+    }
+
+    public String toString() {
+        return "Committed: " + Long.toHexString(_requestId) + ", " + Long.toHexString(_seqNum);
+    }
+}
@@ -11,6 +11,7 @@ public class Last implements PaxosMessage, LeaderSelection {
     private final long _low;
     private final long _rndNumber;
     private final Proposal _value;
+    private final long _highestAccepted;
 
     /**
      * @param aSeqNum is the sequence number received in the related collect
@@ -19,10 +20,19 @@ public class Last implements PaxosMessage, LeaderSelection {
      * @param aValue is the value, if any, associated with the sequence number of the related collect
      */
     public Last(long aSeqNum, long aLowWatermark, long aMostRecentRound, Proposal aValue) {
+        this(aSeqNum, aLowWatermark, aMostRecentRound, aValue, aSeqNum);
+    }
+
+    /**
+     * @param aHighestAccepted is the highest sequence number for which a begin may have been accepted, at least
+     *                         <code>aSeqNum</code>
+     */
+    public Last(long aSeqNum, long aLowWatermark, long aMostRecentRound, Proposal aValue, long aHighestAccepted) {
         _seqNum = aSeqNum;
         _low = aLowWatermark;
         _rndNumber = aMostRecentRound;
         _value = aValue;
+        _highestAccepted = Math.max(aSeqNum, aHighestAccepted);
     }
 
     public int getType() {
@@ -65,6 +75,16 @@ public class Last implements PaxosMessage, LeaderSelection {
         return _seqNum;
     }
 
+    /**
+     * With several instances in flight, a previous leader may have had values accepted for instances beyond that of
+     * the collect. A new leader must collect all of those before starting fresh instances.
+     *
+     * @return the highest sequence number for which a begin may have been accepted
+     */
+    public long getHighestAccepted() {
+        return _highestAccepted;
+    }
+
     public int hashCode() {
     	return Long.valueOf(_seqNum).hashCode() ^ Long.valueOf(_low).hashCode() ^
     		Long.valueOf(_rndNumber).hashCode();
@@ -74,7 +94,8 @@ public class Last implements PaxosMessage, LeaderSelection {
     	if (anObject instanceof Last) {
     		Last myOther = (Last) anObject;
     		
-    		return (_seqNum == myOther._seqNum) && (_low == myOther._low) && (_rndNumber == myOther._rndNumber);
+    		return (_seqNum == myOther._seqNum) && (_low == myOther._low) && (_rndNumber == myOther._rndNumber) &&
+                    (_highestAccepted == myOther._highestAccepted);
     	}
     	
     	return false;
@@ -82,6 +103,7 @@ public class Last implements PaxosMessage, LeaderSelection {
     
     public String toString() {
         return "Last: " + Long.toHexString(_seqNum) + " " + Long.toHexString(_low) + 
-                " [ " + Long.toHexString(_rndNumber) + " ] " + _value.equals(Proposal.NO_VALUE);
+                " [ " + Long.toHexString(_rndNumber) + " ] " + _value.equals(Proposal.NO_VALUE) + " " +
+                Long.toHexString(_highestAccepted);
     }
 }
@@ -1,14 +1,25 @@
 package org.dancres.paxos.messages;
 
+import org.dancres.paxos.Proposal;
+
 import java.util.EnumSet;
 
 public class Learned implements PaxosMessage {
     private final long _seqNum;
     private final long _rndNum;
+    private final Proposal _value;
     
     public Learned(long aSeqNum, long aRndNumber) {
+        this(aSeqNum, aRndNumber, null);
+    }
+
+    /**
+     * @param aValue the value learned, for a member that wasn't sent the Begin or <code>null</code>.
+     */
+    public Learned(long aSeqNum, long aRndNumber, Proposal aValue) {
         _seqNum = aSeqNum;
         _rndNum = aRndNumber;
+        _value = aValue;
     }
 
     public int getType() {
@@ -26,6 +37,13 @@ public class Learned implements PaxosMessage {
     public long getRndNum() {
     	return _rndNum;
     }
+
+    /**
+     * @return the value learned or <code>null</code> if the recipient is expected to have it from the Begin.
+     */
+    public Proposal getValue() {
+        return _value;
+    }
     
     public int hashCode() {
     	return Long.valueOf(_seqNum).hashCode() ^ Long.valueOf(_rndNum).hashCode();
@@ -42,6 +60,7 @@ public class Learned implements PaxosMessage {
     }
     
     public String toString() {
-        return "Learned: " + Long.toHexString(_seqNum) + ", " + Long.toHexString(_rndNum);
+        return "Learned: " + Long.toHexString(_seqNum) + ", " + Long.toHexString(_rndNum) +
+                ((_value != null) ? ", " + _value : "");
     }
 }
@@ -4,7 +4,7 @@ import java.util.EnumSet;
 
 public interface PaxosMessage {
     public enum Classification {
-        ACCEPTOR_LEARNER, CLIENT, LEADER, FAILURE_DETECTOR, RECOVERY
+        ACCEPTOR_LEARNER, CLIENT, LEADER, FAILURE_DETECTOR, RECOVERY, READ_INDEX
     }
 
     public int getType();
@@ -23,5 +23,9 @@ public interface PaxosMessage {
         public static final int OLDROUND = 9;
         public static final int NEED = 10;
         public static final int EVENT = 11;
+        public static final int READINDEX = 12;
+        public static final int COMMITTED = 13;
+        public static final int RENEW = 14;
+        public static final int RENEWED = 15;
     }
 }
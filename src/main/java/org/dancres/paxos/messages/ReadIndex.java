@@ -0,0 +1,37 @@
+package org.dancres.paxos.messages;
+
+import java.util.EnumSet;
+
+/**
+ * Emitted by a node that wishes to serve a read to ask the current leader for the last instance it has had chosen.
+ * The leader responds with <code>Committed</code>.
+ */
+public class ReadIndex implements PaxosMessage {
+    private final long _requestId;
+
+    public ReadIndex(long aRequestId) {
+        _requestId = aRequestId;
+    }
+
+    public EnumSet<Classification> getClassifications() {
+        return EnumSet.of(Classification.READ_INDEX);
+    }
+
+    public long getSeqNum() {
+        // No meaningful seqnum
+        //
+        return -1;
+    }
+
+    public int getType() {
+        return Types.READINDEX;
+    }
+
+    public long getRequestId() {
+        return _requestId;
+    }
+
+    public String toString() {
+        return "ReadIndex: " + Long.toHexString(_requestId);
+    }
+}
@@ -0,0 +1,48 @@
+package org.dancres.paxos.messages;
+
+import java.util.EnumSet;
+
+/**
+ * Sent by a leader with no instances in flight to keep its lease alive with the AcceptorLearners. Unlike an instance
+ * of Paxos it is never logged. The sequence number is that of the instance following the leader's last such that an
+ * AcceptorLearner that has missed instances will notice and recover. AcceptorLearners that still regard the sender as
+ * leader respond with <code>Renewed</code>.
+ */
+public class Renew implements PaxosMessage {
+    private final long _seqNum;
+    private final long _rndNumber;
+    private final long _timestamp;
+
+    /**
+     * @param aTimestamp the time at which the leader sent the renewal, returned in <code>Renewed</code>.
+     */
+    public Renew(long aSeqNum, long aRndNumber, long aTimestamp) {
+        _seqNum = aSeqNum;
+        _rndNumber = aRndNumber;
+        _timestamp = aTimestamp;
+    }
+
+    public int getType() {
+        return Types.RENEW;
+    }
+
+    public EnumSet<Classification> getClassifications() {
+        return EnumSet.of(Classification.ACCEPTOR_LEARNER);
+    }
+
+    public long getSeqNum() {
+        return _seqNum;
+    }
+
+    public long getRndNumber() {
+        return _rndNumber;
+    }
+
+    public long getTimestamp() {
+        return _timestamp;
+    }
+
+    public String toString() {
+        return "Renew: " + Long.toHexString(_seqNum) + " [ " + Long.toHexString(_rndNumber) + " ] @ " + _timestamp;
+    }
+}
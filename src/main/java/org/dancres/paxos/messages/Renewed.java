@@ -0,0 +1,43 @@
+package org.dancres.paxos.messages;
+
+import java.util.EnumSet;
+
+/**
+ * Returned by an AcceptorLearner that has extended the lease of the leader that sent the corresponding
+ * <code>Renew</code>.
+ */
+public class Renewed implements PaxosMessage {
+    private final long _seqNum;
+    private final long _rndNumber;
+    private final long _timestamp;
+
+    public Renewed(long aSeqNum, long aRndNumber, long aTimestamp) {
+        _seqNum = aSeqNum;
+        _rndNumber = aRndNumber;
+        _timestamp = aTimestamp;
+    }
+
+    public int getType() {
+        return Types.RENEWED;
+    }
+
+    public EnumSet<Classification> getClassifications() {
+        return EnumSet.of(Classification.LEADER);
+    }
+
+    public long getSeqNum() {
+        return _seqNum;
+    }
+
+    public long getRndNumber() {
+        return _rndNumber;
+    }
+
+    public long getTimestamp() {
+        return _timestamp;
+    }
+
+    public String toString() {
+        return "Renewed: " + Long.toHexString(_seqNum) + " [ " + Long.toHexString(_rndNumber) + " ] @ " + _timestamp;
+    }
+}
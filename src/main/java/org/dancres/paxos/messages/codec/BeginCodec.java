@@ -13,13 +13,15 @@ class BeginCodec implements Codec {
         
         ByteBuffer myBuffer;
 
-        myBuffer = ByteBuffer.allocate(4 + 4 + 8 + 8 + myBytes.length);
+        myBuffer = ByteBuffer.allocate(4 + 4 + 8 + 8 + myBytes.length + 8 + 8);
 
         myBuffer.putInt(PaxosMessage.Types.BEGIN);
         myBuffer.putInt(myBytes.length);
         myBuffer.putLong(myBegin.getSeqNum());
         myBuffer.putLong(myBegin.getRndNumber());
         myBuffer.put(myBytes);
+        myBuffer.putLong(myBegin.getCommittedSeqNum());
+        myBuffer.putLong(myBegin.getCommittedRndNumber());
 
         myBuffer.flip();
         return myBuffer;
@@ -36,7 +38,15 @@ class BeginCodec implements Codec {
 
         byte[] myBytes = new byte[myArrLength];
         aBuffer.get(myBytes);
-        
-        return new Begin(mySeqNum, myRndNum, new Proposal(myBytes));
+
+        // Begins logged before the committed instance was added won't have it
+        //
+        if (aBuffer.remaining() < 8 + 8)
+            return new Begin(mySeqNum, myRndNum, new Proposal(myBytes));
+
+        long myCommittedSeqNum = aBuffer.getLong();
+        long myCommittedRndNum = aBuffer.getLong();
+
+        return new Begin(mySeqNum, myRndNum, new Proposal(myBytes), myCommittedSeqNum, myCommittedRndNum);
     }
 }
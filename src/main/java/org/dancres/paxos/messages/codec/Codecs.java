@@ -22,6 +22,10 @@ public class Codecs {
                 put(PaxosMessage.Types.OLDROUND, new OldRoundCodec());
                 put(PaxosMessage.Types.NEED, new NeedCodec());
                 put(PaxosMessage.Types.EVENT, new EventCodec());
+                put(PaxosMessage.Types.READINDEX, new ReadIndexCodec());
+                put(PaxosMessage.Types.COMMITTED, new CommittedCodec());
+                put(PaxosMessage.Types.RENEW, new RenewCodec());
+                put(PaxosMessage.Types.RENEWED, new RenewedCodec());
             }});
 
     public static byte[] encode(PaxosMessage aMessage) {
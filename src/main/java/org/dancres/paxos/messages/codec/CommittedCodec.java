@@ -0,0 +1,32 @@
+package org.dancres.paxos.messages.codec;
+
+import org.dancres.paxos.messages.Committed;
+import org.dancres.paxos.messages.PaxosMessage;
+
+import java.nio.ByteBuffer;
+
+public class CommittedCodec implements Codec {
+    public ByteBuffer encode(Object anObject) {
+        Committed myCommitted = (Committed) anObject;
+
+        ByteBuffer myBuffer;
+
+        myBuffer = ByteBuffer.allocate(4 + 8 + 8);
+        myBuffer.putInt(PaxosMessage.Types.COMMITTED);
+        myBuffer.putLong(myCommitted.getRequestId());
+        myBuffer.putLong(myCommitted.getSeqNum());
+
+        myBuffer.flip();
+        return myBuffer;
+    }
+
+    public Object decode(ByteBuffer aBuffer) {
+        // Discard type
+        aBuffer.getInt();
+
+        long myRequestId = aBuffer.getLong();
+        long mySeqNum = aBuffer.getLong();
+
+        return new Committed(myRequestId, mySeqNum);
+    }
+}
@@ -13,7 +13,7 @@ public class LastCodec implements Codec {
 
         ByteBuffer myBuffer;
 
-        myBuffer = ByteBuffer.allocate(8 + 8 + 8 + 8 + myBytes.length);
+        myBuffer = ByteBuffer.allocate(8 + 8 + 8 + 8 + 8 + myBytes.length);
 
         myBuffer.putInt(PaxosMessage.Types.LAST);
         myBuffer.putInt(myBytes.length);
@@ -21,6 +21,7 @@ public class LastCodec implements Codec {
         myBuffer.putLong(myLast.getSeqNum());
         myBuffer.putLong(myLast.getLowWatermark());
         myBuffer.putLong(myLast.getRndNumber());
+        myBuffer.putLong(myLast.getHighestAccepted());
 
         myBuffer.put(myBytes);
 
@@ -39,10 +40,11 @@ public class LastCodec implements Codec {
         long mySeqNum = aBuffer.getLong();
         long myLow = aBuffer.getLong();
         long myRndNum = aBuffer.getLong();
-        
+        long myHighestAccepted = aBuffer.getLong();
+
 		byte[] myBytes = new byte[myArrLength];
 		aBuffer.get(myBytes);
 
-		return new Last(mySeqNum, myLow, myRndNum, new Proposal(myBytes));
+		return new Last(mySeqNum, myLow, myRndNum, new Proposal(myBytes), myHighestAccepted);
     }
 }
@@ -0,0 +1,28 @@
+package org.dancres.paxos.messages.codec;
+
+import org.dancres.paxos.messages.PaxosMessage;
+import org.dancres.paxos.messages.ReadIndex;
+
+import java.nio.ByteBuffer;
+
+public class ReadIndexCodec implements Codec {
+    public ByteBuffer encode(Object anObject) {
+        ReadIndex myReadIndex = (ReadIndex) anObject;
+
+        ByteBuffer myBuffer;
+
+        myBuffer = ByteBuffer.allocate(4 + 8);
+        myBuffer.putInt(PaxosMessage.Types.READINDEX);
+        myBuffer.putLong(myReadIndex.getRequestId());
+
+        myBuffer.flip();
+        return myBuffer;
+    }
+
+    public Object decode(ByteBuffer aBuffer) {
+        // Discard type
+        aBuffer.getInt();
+
+        return new ReadIndex(aBuffer.getLong());
+    }
+}
@@ -0,0 +1,34 @@
+package org.dancres.paxos.messages.codec;
+
+import org.dancres.paxos.messages.PaxosMessage;
+import org.dancres.paxos.messages.Renew;
+
+import java.nio.ByteBuffer;
+
+public class RenewCodec implements Codec {
+    public ByteBuffer encode(Object anObject) {
+        Renew myRenew = (Renew) anObject;
+
+        ByteBuffer myBuffer;
+
+        myBuffer = ByteBuffer.allocate(4 + 8 + 8 + 8);
+        myBuffer.putInt(PaxosMessage.Types.RENEW);
+        myBuffer.putLong(myRenew.getSeqNum());
+        myBuffer.putLong(myRenew.getRndNumber());
+        myBuffer.putLong(myRenew.getTimestamp());
+
+        myBuffer.flip();
+        return myBuffer;
+    }
+
+    public Object decode(ByteBuffer aBuffer) {
+        // Discard type
+        aBuffer.getInt();
+
+        long mySeqNum = aBuffer.getLong();
+        long myRndNumber = aBuffer.getLong();
+        long myTimestamp = aBuffer.getLong();
+
+        return new Renew(mySeqNum, myRndNumber, myTimestamp);
+    }
+}
@@ -0,0 +1,34 @@
+package org.dancres.paxos.messages.codec;
+
+import org.dancres.paxos.messages.PaxosMessage;
+import org.dancres.paxos.messages.Renewed;
+
+import java.nio.ByteBuffer;
+
+public class RenewedCodec implements Codec {
+    public ByteBuffer encode(Object anObject) {
+        Renewed myRenewed = (Renewed) anObject;
+
+        ByteBuffer myBuffer;
+
+        myBuffer = ByteBuffer.allocate(4 + 8 + 8 + 8);
+        myBuffer.putInt(PaxosMessage.Types.RENEWED);
+        myBuffer.putLong(myRenewed.getSeqNum());
+        myBuffer.putLong(myRenewed.getRndNumber());
+        myBuffer.putLong(myRenewed.getTimestamp());
+
+        myBuffer.flip();
+        return myBuffer;
+    }
+
+    public Object decode(ByteBuffer aBuffer) {
+        // Discard type
+        aBuffer.getInt();
+
+        long mySeqNum = aBuffer.getLong();
+        long myRndNumber = aBuffer.getLong();
+        long myTimestamp = aBuffer.getLong();
+
+        return new Renewed(mySeqNum, myRndNumber, myTimestamp);
+    }
+}
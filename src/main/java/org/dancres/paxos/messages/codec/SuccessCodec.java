@@ -1,5 +1,6 @@
 package org.dancres.paxos.messages.codec;
 
+import org.dancres.paxos.Proposal;
 import org.dancres.paxos.messages.Learned;
 import org.dancres.paxos.messages.PaxosMessage;
 
@@ -8,15 +9,21 @@ import java.nio.ByteBuffer;
 public class SuccessCodec implements Codec {
     public ByteBuffer encode(Object anObject) {
         Learned myLearned = (Learned) anObject;
+        byte[] myBytes = (myLearned.getValue() != null) ? myLearned.getValue().marshall() : null;
 
         ByteBuffer myBuffer;
 
-        myBuffer = ByteBuffer.allocate(4 + 8 + 8);
+        myBuffer = ByteBuffer.allocate(4 + 8 + 8 + ((myBytes != null) ? 4 + myBytes.length : 0));
 
         myBuffer.putInt(PaxosMessage.Types.LEARNED);
         myBuffer.putLong(myLearned.getSeqNum());
         myBuffer.putLong(myLearned.getRndNum());
 
+        if (myBytes != null) {
+            myBuffer.putInt(myBytes.length);
+            myBuffer.put(myBytes);
+        }
+
         myBuffer.flip();
         return myBuffer;
     }
@@ -27,7 +34,15 @@ public class SuccessCodec implements Codec {
 
         long mySeqNum = aBuffer.getLong();
         long myRndNum = aBuffer.getLong();
-        
-        return new Learned(mySeqNum, myRndNum);
+
+        // Only those sent to members that missed the Begin carry the value
+        //
+        if (aBuffer.remaining() < 4)
+            return new Learned(mySeqNum, myRndNum);
+
+        byte[] myBytes = new byte[aBuffer.getInt()];
+        aBuffer.get(myBytes);
+
+        return new Learned(mySeqNum, myRndNum, new Proposal(myBytes));
     }
 }
@@ -27,7 +27,9 @@ public class HowlLogger implements LogStorage {
 	public byte[] get(long mark) throws Exception {
 		LogRecord myRecord = new LogRecord(DEFAULT_RECORD_SIZE);
 		
-		return _logger.get(myRecord, mark).data;
+		// Record data includes Howl's field headers, we want the content of the single field we put
+		//
+		return _logger.get(myRecord, mark).getFields()[0];
 	}
 
 	public void mark(long key, boolean force) throws Exception {
@@ -2,7 +2,7 @@ package org.dancres.paxos.storage;
 
 import org.dancres.paxos.LogStorage;
 
-import java.util.Iterator;
+import java.util.Map;
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -23,12 +23,7 @@ public class MemoryLogStorage implements LogStorage {
 	}
 
 	public void mark(long key, boolean force) throws Exception {
-        Iterator<Long> myKeys = _log.keySet().iterator();
-        while (myKeys.hasNext()) {
-            Long myKey = myKeys.next();
-            if (myKey < key)
-                myKeys.remove();
-        }
+        _log.headMap(key).clear();
 	}
 
 	public void open() throws Exception {
@@ -68,12 +63,10 @@ public class MemoryLogStorage implements LogStorage {
 			assert (!isClosed);
 		}
 
-        ConcurrentSkipListMap<Long, byte[]> myCopy = _log.clone();
-
-		for (Long myKey : myCopy.keySet()) {
-			if (myKey >= mark) {
-				listener.onRecord(myKey, myCopy.get(myKey));
-			}
+        // Iteration is weakly consistent, no need to copy the log
+        //
+		for (Map.Entry<Long, byte[]> myEntry : _log.tailMap(mark).entrySet()) {
+			listener.onRecord(myEntry.getKey(), myEntry.getValue());
 		}
 	}
 }
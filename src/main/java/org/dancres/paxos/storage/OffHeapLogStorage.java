@@ -0,0 +1,242 @@
+package org.dancres.paxos.storage;
+
+import org.dancres.paxos.LogStorage;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * In-memory <code>LogStorage</code> that holds records outside of the heap such that the log's size doesn't add to
+ * GC pressure. Records are appended, length prefixed, to a sequence of direct <code>ByteBuffer</code> arenas and
+ * located via a primitive array of positions indexed by key.
+ *
+ * Keys are allocated sequentially from zero as per <code>MemoryLogStorage</code>. <code>mark</code> simply advances the
+ * first live key, releasing any arenas that no longer hold live records.
+ */
+public class OffHeapLogStorage implements LogStorage {
+    public static final int DEFAULT_ARENA_SIZE = 1024 * 1024;
+
+    private static final int LENGTH_SIZE = 4;
+    private static final int MAX_POOLED_ARENAS = 4;
+
+    private final int _arenaSize;
+
+    /**
+     * Arenas in order of allocation, the last being the one currently appended to. Arena ids are contiguous such
+     * that an arena is at index <code>id - _firstArenaId</code>.
+     */
+    private final List<Arena> _arenas = new ArrayList<>();
+    private final ArrayDeque<ByteBuffer> _pool = new ArrayDeque<>();
+    private long _firstArenaId = 0;
+
+    /**
+     * Position of each live record, packed as arena id (upper 32 bits) and position within the arena (lower 32).
+     * Entry 0 is for <code>_baseKey</code>.
+     */
+    private long[] _positions = new long[1024];
+    private long _baseKey = 0;
+    private long _firstKey = 0;
+    private long _nextKey = 0;
+
+    private boolean isClosed = false;
+    private boolean isOpened = false;
+
+    public OffHeapLogStorage() {
+        this(DEFAULT_ARENA_SIZE);
+    }
+
+    /**
+     * @param anArenaSize the size of each block of memory allocated to hold records.
+     */
+    public OffHeapLogStorage(int anArenaSize) {
+        if (anArenaSize <= LENGTH_SIZE)
+            throw new IllegalArgumentException("Arena size is too small: " + anArenaSize);
+
+        _arenaSize = anArenaSize;
+    }
+
+    public void open() throws Exception {
+        synchronized(this) {
+            assert (!isOpened);
+            assert (!isClosed);
+
+            isOpened = true;
+        }
+    }
+
+    public void close() throws Exception {
+        synchronized(this) {
+            assert (isOpened);
+            assert (!isClosed);
+
+            isClosed = true;
+            _arenas.clear();
+            _pool.clear();
+        }
+    }
+
+    public long put(byte[] data, boolean sync) throws Exception {
+        synchronized(this) {
+            assert (isOpened);
+            assert (!isClosed);
+
+            int myRequired = LENGTH_SIZE + data.length;
+            Arena myArena = _arenas.isEmpty() ? null : _arenas.get(_arenas.size() - 1);
+
+            if ((myArena == null) || (myArena._buffer.remaining() < myRequired))
+                myArena = allocate(myRequired);
+
+            int myPosition = myArena._buffer.position();
+
+            myArena._buffer.putInt(data.length);
+            myArena._buffer.put(data);
+
+            long myKey = _nextKey++;
+
+            ensureCapacity();
+            _positions[(int) (myKey - _baseKey)] = (myArena._id << 32) | myPosition;
+
+            return myKey;
+        }
+    }
+
+    public byte[] get(long mark) throws Exception {
+        synchronized(this) {
+            assert (isOpened);
+            assert (!isClosed);
+
+            return read(mark);
+        }
+    }
+
+    /**
+     * Truncation is constant time bar the release of any arenas that are now empty.
+     */
+    public void mark(long key, boolean force) throws Exception {
+        synchronized(this) {
+            if ((key <= _firstKey) || (_nextKey == _firstKey))
+                return;
+
+            _firstKey = Math.min(key, _nextKey);
+
+            // The last arena is retained regardless as it's the one we're appending to
+            //
+            long myFirstLiveArena = (_firstKey == _nextKey) ? _firstArenaId + _arenas.size() - 1 :
+                    (_positions[(int) (_firstKey - _baseKey)] >>> 32);
+            List<Arena> myDead = _arenas.subList(0, (int) (myFirstLiveArena - _firstArenaId));
+
+            for (Arena myArena : myDead)
+                release(myArena);
+
+            myDead.clear();
+            _firstArenaId = myFirstLiveArena;
+        }
+    }
+
+    /**
+     * Records are replayed directly from the arenas without taking a copy of the log.
+     */
+    public void replay(RecordListener listener, long mark) throws Exception {
+        long myLast;
+        long myKey;
+
+        synchronized(this) {
+            assert (isOpened);
+            assert (!isClosed);
+
+            myLast = _nextKey;
+            myKey = Math.max(mark, _firstKey);
+        }
+
+        for (; myKey < myLast; myKey++) {
+            byte[] myRecord;
+
+            synchronized(this) {
+                myRecord = read(myKey);
+            }
+
+            // Log may have been truncated underneath us
+            //
+            if (myRecord != null)
+                listener.onRecord(myKey, myRecord);
+        }
+    }
+
+    /**
+     * Must be called holding the lock.
+     */
+    private byte[] read(long aKey) {
+        if ((aKey < _firstKey) || (aKey >= _nextKey))
+            return null;
+
+        long myPacked = _positions[(int) (aKey - _baseKey)];
+        long myArenaId = myPacked >>> 32;
+        int myPosition = (int) myPacked;
+
+        ByteBuffer myBuffer = _arenas.get((int) (myArenaId - _firstArenaId))._buffer.duplicate();
+        myBuffer.position(myPosition);
+
+        byte[] myRecord = new byte[myBuffer.getInt()];
+        myBuffer.get(myRecord);
+
+        return myRecord;
+    }
+
+    private Arena allocate(int aRequired) {
+        ByteBuffer myBuffer;
+
+        if (aRequired > _arenaSize)
+            myBuffer = ByteBuffer.allocateDirect(aRequired);
+        else if (! _pool.isEmpty())
+            myBuffer = _pool.removeFirst();
+        else
+            myBuffer = ByteBuffer.allocateDirect(_arenaSize);
+
+        Arena myArena = new Arena(_firstArenaId + _arenas.size(), myBuffer);
+        _arenas.add(myArena);
+
+        return myArena;
+    }
+
+    /**
+     * Direct memory is only reclaimed by the GC, so recycle standard sized arenas to avoid repeated allocation.
+     */
+    private void release(Arena anArena) {
+        if ((anArena._buffer.capacity() == _arenaSize) && (_pool.size() < MAX_POOLED_ARENAS)) {
+            anArena._buffer.clear();
+            _pool.addLast(anArena._buffer);
+        }
+    }
+
+    /**
+     * Make room in the position index for <code>_nextKey - 1</code>, discarding truncated entries before growing.
+     */
+    private void ensureCapacity() {
+        int myRequired = (int) (_nextKey - _baseKey);
+
+        if (myRequired <= _positions.length)
+            return;
+
+        int myDead = (int) (_firstKey - _baseKey);
+
+        if (myDead >= _positions.length / 2) {
+            System.arraycopy(_positions, myDead, _positions, 0, _positions.length - myDead);
+            _baseKey = _firstKey;
+        } else {
+            _positions = Arrays.copyOf(_positions, _positions.length * 2);
+        }
+    }
+
+    private static class Arena {
+        private final long _id;
+        private final ByteBuffer _buffer;
+
+        Arena(long anId, ByteBuffer aBuffer) {
+            _id = anId;
+            _buffer = aBuffer;
+        }
+    }
+}
@@ -0,0 +1,643 @@
+package org.dancres.paxos.storage;
+
+import org.dancres.paxos.LogStorage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only <code>LogStorage</code> built directly on <code>FileChannel</code>. The log is a sequence of
+ * preallocated segment files, each holding records framed as length, CRC32 and data. A torn or otherwise corrupt
+ * record marks the end of the log. A full segment is sealed with a marker record before the next is started so a
+ * corrupt record in any segment but the last can be told apart from its end and is reported as an error.
+ *
+ * Synchronous puts are subject to group commit. A flusher thread issues a single <code>force</code> on behalf of all
+ * callers that have written since the last one completed, so the number of disk syncs tracks the disk's speed rather
+ * than the rate of requests.
+ *
+ * Offsets encode the segment number in the upper 32 bits and the position within the segment in the lower 32 and
+ * thus increase in put order. <code>mark</code> deletes all segments wholly before the mark, those in use by a
+ * concurrent <code>get</code> or <code>replay</code> are deleted once it completes.
+ */
+public class SegmentedLogStorage implements LogStorage {
+    private static final Logger _logger = LoggerFactory.getLogger(SegmentedLogStorage.class);
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final int SEGMENT_MAGIC = 0x5041584c;
+    private static final int SEGMENT_HEADER_SIZE = 8;
+    private static final int FRAME_HEADER_SIZE = 8;
+    private static final int SEAL_LENGTH = -1;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final File _dir;
+    private final int _segmentSize;
+
+    private final ConcurrentSkipListMap<Integer, Segment> _segments = new ConcurrentSkipListMap<>();
+
+    private Segment _current;
+    private int _position;
+
+    /**
+     * Offset of the end of the last record written
+     */
+    private long _written;
+
+    /**
+     * Offset up to which a synchronous put has requested the log be forced
+     */
+    private long _syncRequested;
+
+    /**
+     * Offset up to which the log has been forced
+     */
+    private long _durable;
+
+    private IOException _failure;
+    private boolean _isOpened = false;
+    private boolean _isClosed = false;
+    private Thread _flusher;
+
+    public SegmentedLogStorage(String aDirectory) {
+        this(aDirectory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * @param aDirectory in which to hold the segment files
+     * @param aSegmentSize the size to which each segment file is preallocated
+     */
+    public SegmentedLogStorage(String aDirectory, int aSegmentSize) {
+        if (aSegmentSize <= SEGMENT_HEADER_SIZE + FRAME_HEADER_SIZE)
+            throw new IllegalArgumentException("Segment size is too small: " + aSegmentSize);
+
+        _dir = new File(aDirectory);
+        _segmentSize = aSegmentSize;
+    }
+
+    private static long toOffset(int aSegmentId, int aPosition) {
+        return (((long) aSegmentId) << 32) | (aPosition & 0xFFFFFFFFL);
+    }
+
+    private static int segmentOf(long anOffset) {
+        return (int) (anOffset >>> 32);
+    }
+
+    private static int positionOf(long anOffset) {
+        return (int) anOffset;
+    }
+
+    public void open() throws Exception {
+        synchronized(this) {
+            assert (! _isOpened);
+            assert (! _isClosed);
+
+            if ((! _dir.exists()) && (! _dir.mkdirs()))
+                throw new IOException("Couldn't create log directory: " + _dir);
+
+            File[] myFiles = _dir.listFiles(new FilenameFilter() {
+                public boolean accept(File aDir, String aName) {
+                    return aName.endsWith(SEGMENT_SUFFIX);
+                }
+            });
+
+            for (File myFile : myFiles) {
+                String myName = myFile.getName();
+                int myId = Integer.parseInt(myName.substring(0, myName.length() - SEGMENT_SUFFIX.length()), 16);
+
+                _segments.put(myId, Segment.open(myFile, myId));
+            }
+
+            if (_segments.isEmpty()) {
+                _current = Segment.create(segmentFile(0), 0, _segmentSize);
+                _segments.put(0, _current);
+                _position = SEGMENT_HEADER_SIZE;
+            } else {
+                _current = _segments.lastEntry().getValue();
+                _position = _current.recoverEnd();
+            }
+
+            _written = toOffset(_current.getId(), _position);
+            _syncRequested = _written;
+            _durable = _written;
+
+            _flusher = new Thread(new Flusher(), "Paxos log flusher [" + _dir + "]");
+            _flusher.setDaemon(true);
+            _flusher.start();
+
+            _isOpened = true;
+        }
+    }
+
+    public void close() throws Exception {
+        Thread myFlusher;
+
+        synchronized(this) {
+            assert (_isOpened);
+            assert (! _isClosed);
+
+            _current.force();
+            _durable = _written;
+            _isClosed = true;
+
+            myFlusher = _flusher;
+            notifyAll();
+        }
+
+        myFlusher.join();
+
+        for (Segment mySegment : _segments.values())
+            mySegment.release();
+
+        _segments.clear();
+    }
+
+    public long put(byte[] data, boolean sync) throws Exception {
+        long myOffset;
+        long myEnd;
+
+        synchronized(this) {
+            assert (_isOpened);
+            assert (! _isClosed);
+
+            if (_failure != null)
+                throw new IOException("Log has failed", _failure);
+
+            int myFrameSize = FRAME_HEADER_SIZE + data.length;
+
+            // Always leave room to seal the segment
+            //
+            if ((long) _position + myFrameSize + FRAME_HEADER_SIZE > _current.getCapacity())
+                roll(myFrameSize);
+
+            _current.write(_position, frame(data));
+
+            myOffset = toOffset(_current.getId(), _position);
+            _position += myFrameSize;
+            myEnd = toOffset(_current.getId(), _position);
+            _written = myEnd;
+
+            if (sync) {
+                _syncRequested = myEnd;
+                notifyAll();
+            }
+        }
+
+        if (sync)
+            awaitDurable(myEnd);
+
+        return myOffset;
+    }
+
+    private void awaitDurable(long anOffset) throws IOException {
+        synchronized(this) {
+            while (_durable < anOffset) {
+                if (_failure != null)
+                    throw new IOException("Log has failed", _failure);
+
+                try {
+                    wait();
+                } catch (InterruptedException anIE) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Seal the current segment and start a new one. Must be called holding the lock.
+     *
+     * @param aFrameSize the size of the record that didn't fit in the current segment
+     */
+    private void roll(int aFrameSize) throws IOException {
+        _current.write(_position, seal());
+
+        // Everything written prior to the new segment is now durable
+        //
+        _current.force();
+        _durable = _written;
+        notifyAll();
+
+        int myNextId = _current.getId() + 1;
+        int myCapacity = Math.max(_segmentSize, SEGMENT_HEADER_SIZE + aFrameSize + FRAME_HEADER_SIZE);
+
+        _current = Segment.create(segmentFile(myNextId), myNextId, myCapacity);
+        _segments.put(myNextId, _current);
+        _position = SEGMENT_HEADER_SIZE;
+    }
+
+    private File segmentFile(int anId) {
+        return new File(_dir, String.format("%08x", anId) + SEGMENT_SUFFIX);
+    }
+
+    private static ByteBuffer frame(byte[] aData) {
+        ByteBuffer myFrame = ByteBuffer.allocate(FRAME_HEADER_SIZE + aData.length);
+
+        myFrame.putInt(aData.length);
+        myFrame.putInt(checksum(aData.length, aData, 0, aData.length));
+        myFrame.put(aData);
+        myFrame.flip();
+
+        return myFrame;
+    }
+
+    private static ByteBuffer seal() {
+        ByteBuffer mySeal = ByteBuffer.allocate(FRAME_HEADER_SIZE);
+
+        mySeal.putInt(SEAL_LENGTH);
+        mySeal.putInt(checksum(SEAL_LENGTH, new byte[0], 0, 0));
+        mySeal.flip();
+
+        return mySeal;
+    }
+
+    /**
+     * Length is included in the checksum so that preallocated (zero'd) space never looks like a valid record.
+     */
+    private static int checksum(int aLength, byte[] aData, int anOffset, int aCount) {
+        CRC32 myCrc = new CRC32();
+
+        myCrc.update(aLength >>> 24);
+        myCrc.update(aLength >>> 16);
+        myCrc.update(aLength >>> 8);
+        myCrc.update(aLength);
+        myCrc.update(aData, anOffset, aCount);
+
+        return (int) myCrc.getValue();
+    }
+
+    public byte[] get(long mark) throws Exception {
+        Segment mySegment = _segments.get(segmentOf(mark));
+
+        if ((mySegment == null) || (! mySegment.acquire()))
+            return null;
+
+        try {
+            return mySegment.read(positionOf(mark));
+        } finally {
+            mySegment.release();
+        }
+    }
+
+    /**
+     * Deletes all segments prior to the one containing the mark.
+     */
+    public void mark(long key, boolean force) throws Exception {
+        int myMarkSegment = segmentOf(key);
+
+        synchronized(this) {
+            myMarkSegment = Math.min(myMarkSegment, _current.getId());
+        }
+
+        for (Map.Entry<Integer, Segment> myEntry : _segments.headMap(myMarkSegment).entrySet()) {
+            if (_segments.remove(myEntry.getKey(), myEntry.getValue())) {
+                _logger.debug("Dropping segment: " + myEntry.getValue());
+
+                myEntry.getValue().drop();
+            }
+        }
+    }
+
+    public void replay(RecordListener listener, long mark) throws Exception {
+        long myLimit;
+
+        synchronized(this) {
+            assert (_isOpened);
+            assert (! _isClosed);
+
+            myLimit = _written;
+        }
+
+        int myStartSegment = segmentOf(mark);
+        int myLimitSegment = segmentOf(myLimit);
+
+        // Hold on to the segments for the duration such that a concurrent mark can't delete them from under us
+        //
+        List<Segment> mySegments = new ArrayList<>();
+
+        for (Segment mySegment : _segments.subMap(myStartSegment, true, myLimitSegment, true).values())
+            if (mySegment.acquire())
+                mySegments.add(mySegment);
+
+        try {
+            for (Segment mySegment : mySegments) {
+                int myStart = (mySegment.getId() == myStartSegment) ?
+                        Math.max(positionOf(mark), SEGMENT_HEADER_SIZE) : SEGMENT_HEADER_SIZE;
+                long myEnd = (mySegment.getId() == myLimitSegment) ? positionOf(myLimit) : mySegment.getCapacity();
+
+                if (! mySegment.replay(myStart, myEnd, listener)) {
+                    if (mySegment.getId() != myLimitSegment)
+                        throw new IOException("Corrupt record in sealed segment: " + mySegment);
+
+                    break;
+                }
+            }
+        } finally {
+            for (Segment mySegment : mySegments)
+                mySegment.release();
+        }
+    }
+
+    private class Flusher implements Runnable {
+        public void run() {
+            while (true) {
+                long myTarget;
+                Segment mySegment;
+
+                synchronized(SegmentedLogStorage.this) {
+                    while ((! _isClosed) && (_syncRequested <= _durable)) {
+                        try {
+                            SegmentedLogStorage.this.wait();
+                        } catch (InterruptedException anIE) {
+                        }
+                    }
+
+                    if (_isClosed)
+                        return;
+
+                    myTarget = _written;
+                    mySegment = _current;
+                }
+
+                IOException myFailure = null;
+
+                try {
+                    mySegment.force();
+                } catch (ClosedChannelException aCCE) {
+                    // Segment was sealed (and thus forced) and then dropped by a mark
+                } catch (IOException anIOE) {
+                    _logger.error("Failed to force log", anIOE);
+                    myFailure = anIOE;
+                }
+
+                synchronized(SegmentedLogStorage.this) {
+                    if (myFailure != null)
+                        _failure = myFailure;
+                    else if (myTarget > _durable)
+                        _durable = myTarget;
+
+                    SegmentedLogStorage.this.notifyAll();
+                }
+            }
+        }
+    }
+
+    private static class Segment {
+        private final File _file;
+        private final int _id;
+        private final RandomAccessFile _raf;
+        private final FileChannel _channel;
+        private final long _capacity;
+
+        /**
+         * One reference is held by the log itself, the remainder by in progress reads
+         */
+        private int _references = 1;
+        private boolean _isDropped = false;
+
+        private Segment(File aFile, int anId, RandomAccessFile aRaf) throws IOException {
+            _file = aFile;
+            _id = anId;
+            _raf = aRaf;
+            _channel = aRaf.getChannel();
+            _capacity = aRaf.length();
+        }
+
+        /**
+         * Preallocation means subsequent forces need not update file metadata.
+         */
+        static Segment create(File aFile, int anId, int aCapacity) throws IOException {
+            RandomAccessFile myRaf = new RandomAccessFile(aFile, "rw");
+            myRaf.setLength(aCapacity);
+
+            ByteBuffer myHeader = ByteBuffer.allocate(SEGMENT_HEADER_SIZE);
+            myHeader.putInt(SEGMENT_MAGIC);
+            myHeader.putInt(anId);
+            myHeader.flip();
+
+            writeFully(myRaf.getChannel(), 0, myHeader);
+            myRaf.getChannel().force(true);
+
+            return new Segment(aFile, anId, myRaf);
+        }
+
+        static Segment open(File aFile, int anId) throws IOException {
+            RandomAccessFile myRaf = new RandomAccessFile(aFile, "rw");
+            ByteBuffer myHeader = ByteBuffer.allocate(SEGMENT_HEADER_SIZE);
+
+            readFully(myRaf.getChannel(), 0, myHeader);
+            myHeader.flip();
+
+            if ((myHeader.remaining() != SEGMENT_HEADER_SIZE) || (myHeader.getInt() != SEGMENT_MAGIC) ||
+                    (myHeader.getInt() != anId)) {
+                myRaf.close();
+                throw new IOException("Not a valid log segment: " + aFile);
+            }
+
+            return new Segment(aFile, anId, myRaf);
+        }
+
+        int getId() {
+            return _id;
+        }
+
+        long getCapacity() {
+            return _capacity;
+        }
+
+        /**
+         * Locate the end of the valid records in this segment and discard anything beyond it (e.g. records that
+         * made it to disk after a torn write) so that it cannot be mistaken for valid records later.
+         *
+         * @return the position at which to append the next record
+         */
+        int recoverEnd() throws IOException {
+            final int[] myEnd = new int[] {SEGMENT_HEADER_SIZE};
+
+            replay(SEGMENT_HEADER_SIZE, _capacity, new RecordListener() {
+                public void onRecord(long anOffset, byte[] aRecord) {
+                    myEnd[0] = positionOf(anOffset) + FRAME_HEADER_SIZE + aRecord.length;
+                }
+            });
+
+            _channel.truncate(myEnd[0]);
+            _raf.setLength(_capacity);
+            _channel.force(true);
+
+            return myEnd[0];
+        }
+
+        void write(int aPosition, ByteBuffer aFrame) throws IOException {
+            writeFully(_channel, aPosition, aFrame);
+        }
+
+        void force() throws IOException {
+            _channel.force(false);
+        }
+
+        byte[] read(int aPosition) throws IOException {
+            ByteBuffer myHeader = ByteBuffer.allocate(FRAME_HEADER_SIZE);
+
+            readFully(_channel, aPosition, myHeader);
+            myHeader.flip();
+
+            if (myHeader.remaining() != FRAME_HEADER_SIZE)
+                throw new IOException("No record at: " + Long.toHexString(toOffset(_id, aPosition)));
+
+            int myLength = myHeader.getInt();
+            int myCrc = myHeader.getInt();
+
+            if ((myLength < 0) || (myLength > _capacity - aPosition - FRAME_HEADER_SIZE))
+                throw new IOException("No record at: " + Long.toHexString(toOffset(_id, aPosition)));
+
+            ByteBuffer myData = ByteBuffer.allocate(myLength);
+            readFully(_channel, aPosition + FRAME_HEADER_SIZE, myData);
+
+            if ((myData.position() != myLength) || (checksum(myLength, myData.array(), 0, myLength) != myCrc))
+                throw new IOException("Corrupt record at: " + Long.toHexString(toOffset(_id, aPosition)));
+
+            return myData.array();
+        }
+
+        /**
+         * Sequentially read all valid records between the specified positions.
+         *
+         * @return <code>true</code> if the end or the segment's seal was reached, <code>false</code> if an invalid
+         * record was encountered first.
+         */
+        boolean replay(int aStart, long anEnd, RecordListener aListener) throws IOException {
+            ByteBuffer myBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            long myBufferBase = aStart;
+            int myPosition = aStart;
+
+            myBuffer.limit(0);
+
+            while (myPosition + FRAME_HEADER_SIZE <= anEnd) {
+                if (myBuffer.remaining() < FRAME_HEADER_SIZE) {
+                    myBuffer = fill(myBuffer, myPosition, FRAME_HEADER_SIZE, anEnd);
+                    myBufferBase = myPosition;
+
+                    if (myBuffer.remaining() < FRAME_HEADER_SIZE)
+                        return false;
+                }
+
+                int myLength = myBuffer.getInt(myBuffer.position());
+                int myCrc = myBuffer.getInt(myBuffer.position() + 4);
+
+                if (myLength == SEAL_LENGTH)
+                    return (checksum(SEAL_LENGTH, myBuffer.array(), 0, 0) == myCrc);
+
+                if ((myLength < 0) || (myPosition + FRAME_HEADER_SIZE + (long) myLength > anEnd))
+                    return false;
+
+                if (myBuffer.remaining() < FRAME_HEADER_SIZE + myLength) {
+                    myBuffer = fill(myBuffer, myPosition, FRAME_HEADER_SIZE + myLength, anEnd);
+                    myBufferBase = myPosition;
+
+                    if (myBuffer.remaining() < FRAME_HEADER_SIZE + myLength)
+                        return false;
+                }
+
+                int myDataStart = myBuffer.position() + FRAME_HEADER_SIZE;
+
+                if (checksum(myLength, myBuffer.array(), myBuffer.arrayOffset() + myDataStart, myLength) != myCrc)
+                    return false;
+
+                byte[] myRecord = new byte[myLength];
+                System.arraycopy(myBuffer.array(), myBuffer.arrayOffset() + myDataStart, myRecord, 0, myLength);
+                myBuffer.position(myDataStart + myLength);
+
+                aListener.onRecord(toOffset(_id, myPosition), myRecord);
+
+                myPosition += FRAME_HEADER_SIZE + myLength;
+
+                assert (myBufferBase + myBuffer.position() == myPosition);
+            }
+
+            return true;
+        }
+
+        /**
+         * @return a buffer positioned at <code>aPosition</code> in the segment, holding at least
+         * <code>aRequired</code> bytes unless the end was reached first.
+         */
+        private ByteBuffer fill(ByteBuffer aBuffer, int aPosition, int aRequired, long anEnd) throws IOException {
+            ByteBuffer myBuffer = (aBuffer.capacity() < aRequired) ? ByteBuffer.allocate(aRequired) : aBuffer;
+
+            myBuffer.clear();
+            myBuffer.limit((int) Math.min(myBuffer.capacity(), anEnd - aPosition));
+            readFully(_channel, aPosition, myBuffer);
+            myBuffer.flip();
+
+            return myBuffer;
+        }
+
+        /**
+         * @return <code>false</code> if the segment has been closed or dropped and can no longer be read.
+         */
+        synchronized boolean acquire() {
+            if (_references == 0)
+                return false;
+
+            ++_references;
+            return true;
+        }
+
+        /**
+         * Give up a reference, closing the segment (and deleting it if it has been dropped) when none remain.
+         */
+        synchronized void release() throws IOException {
+            if (--_references > 0)
+                return;
+
+            _channel.close();
+            _raf.close();
+
+            if ((_isDropped) && (! _file.delete()))
+                _logger.warn("Failed to delete segment: " + _file);
+        }
+
+        /**
+         * Give up the log's reference such that the segment is deleted once any in progress reads complete.
+         */
+        synchronized void drop() throws IOException {
+            _isDropped = true;
+            release();
+        }
+
+        public String toString() {
+            return "Segment: " + _file + ", " + Long.toHexString(_capacity);
+        }
+
+        private static void writeFully(FileChannel aChannel, long aPosition, ByteBuffer aBuffer) throws IOException {
+            long myPosition = aPosition;
+
+            while (aBuffer.hasRemaining())
+                myPosition += aChannel.write(aBuffer, myPosition);
+        }
+
+        private static void readFully(FileChannel aChannel, long aPosition, ByteBuffer aBuffer) throws IOException {
+            long myPosition = aPosition;
+
+            while (aBuffer.hasRemaining()) {
+                int myRead = aChannel.read(aBuffer, myPosition);
+
+                if (myRead < 0)
+                    return;
+
+                myPosition += myRead;
+            }
+        }
+    }
+}
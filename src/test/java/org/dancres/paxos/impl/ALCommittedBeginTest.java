@@ -0,0 +1,93 @@
+package org.dancres.paxos.impl;
+
+import org.dancres.paxos.*;
+import org.dancres.paxos.impl.faildet.FailureDetectorImpl;
+import org.dancres.paxos.messages.Begin;
+import org.dancres.paxos.messages.Collect;
+import org.dancres.paxos.storage.MemoryLogStorage;
+import org.dancres.paxos.test.net.FakePacket;
+import org.dancres.paxos.test.net.StandalonePickler;
+import org.dancres.paxos.test.net.Utils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+
+/**
+ * Check an AL that missed the accepts for an instance learns it from the committed instance carried on the next
+ * Begin, but only where the rounds match.
+ */
+public class ALCommittedBeginTest {
+    private InetSocketAddress _nodeId = Utils.getTestAddress();
+    private InetSocketAddress _broadcastId = Utils.getTestAddress();
+
+    private class TransportImpl implements Transport {
+        private Transport.PacketPickler _pickler = new StandalonePickler(_nodeId);
+        private MessageBasedFailureDetector _fd = new FailureDetectorImpl(5000, FailureDetectorImpl.OPEN_PIN);
+
+        public void routeTo(Dispatcher aDispatcher) {
+        }
+
+        public Transport.PacketPickler getPickler() {
+            return _pickler;
+        }
+
+        public FailureDetector getFD() {
+            return _fd;
+        }
+
+        public void send(Packet aPacket, InetSocketAddress aNodeId) {
+        }
+
+        public InetSocketAddress getLocalAddress() {
+            return _nodeId;
+        }
+
+        public InetSocketAddress getBroadcastAddress() {
+            return _broadcastId;
+        }
+
+        public void terminate() {
+        }
+    }
+
+    private void begin(AcceptorLearner anAl, long aSeqNum, long aRndNum, long aCommittedSeqNum,
+                       long aCommittedRndNum) {
+        anAl.processMessage(new FakePacket(_nodeId,
+                new Begin(aSeqNum, aRndNum, new Proposal("data", new byte[] {(byte) aSeqNum}), aCommittedSeqNum,
+                        aCommittedRndNum)));
+    }
+
+    @Test public void test() throws Exception {
+        MemoryLogStorage myStorage = new MemoryLogStorage();
+        long myRndNum = 1;
+
+        AcceptorLearner myAl = new AcceptorLearner(myStorage, new Common(new TransportImpl()), new Listener() {
+            public void transition(StateEvent anEvent) {
+            }
+        });
+
+        myAl.open(CheckpointHandle.NO_CHECKPOINT);
+
+        myAl.processMessage(new FakePacket(_nodeId, new Collect(0, myRndNum)));
+
+        begin(myAl, 0, myRndNum, Constants.UNKNOWN_SEQ, Long.MIN_VALUE);
+
+        Assert.assertEquals(-1, myAl.getLowWatermark().getSeqNum());
+
+        // No accepts seen for instance 0, learn it from the next Begin
+        //
+        begin(myAl, 1, myRndNum, 0, myRndNum);
+
+        Assert.assertEquals(0, myAl.getLowWatermark().getSeqNum());
+        Assert.assertEquals(0, myAl.getStats().getRecoveryCycles());
+
+        // A committed instance from another round says nothing about the Begin we hold
+        //
+        begin(myAl, 2, myRndNum, 1, myRndNum + 1);
+
+        Assert.assertEquals(0, myAl.getLowWatermark().getSeqNum());
+
+        myAl.close();
+    }
+}
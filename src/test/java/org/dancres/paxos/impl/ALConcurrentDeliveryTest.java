@@ -0,0 +1,103 @@
+package org.dancres.paxos.impl;
+
+import org.dancres.paxos.*;
+import org.dancres.paxos.impl.faildet.FailureDetectorImpl;
+import org.dancres.paxos.messages.Begin;
+import org.dancres.paxos.messages.Collect;
+import org.dancres.paxos.messages.Learned;
+import org.dancres.paxos.storage.MemoryLogStorage;
+import org.dancres.paxos.test.net.FakePacket;
+import org.dancres.paxos.test.net.StandalonePickler;
+import org.dancres.paxos.test.net.Utils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deliver packets to an AL from several threads at once and check values are still learned in order.
+ */
+public class ALConcurrentDeliveryTest {
+    private static final int INSTANCES = 200;
+
+    private InetSocketAddress _nodeId = Utils.getTestAddress();
+    private InetSocketAddress _broadcastId = Utils.getTestAddress();
+
+    private class TransportImpl implements Transport {
+        private Transport.PacketPickler _pickler = new StandalonePickler(_nodeId);
+        private MessageBasedFailureDetector _fd = new FailureDetectorImpl(5000, FailureDetectorImpl.OPEN_PIN);
+
+        public void routeTo(Dispatcher aDispatcher) {
+        }
+
+        public Transport.PacketPickler getPickler() {
+            return _pickler;
+        }
+
+        public FailureDetector getFD() {
+            return _fd;
+        }
+
+        public void send(Packet aPacket, InetSocketAddress aNodeId) {
+        }
+
+        public InetSocketAddress getLocalAddress() {
+            return _nodeId;
+        }
+
+        public InetSocketAddress getBroadcastAddress() {
+            return _broadcastId;
+        }
+
+        public void terminate() {
+        }
+    }
+
+    @Test public void test() throws Exception {
+        final List<Long> mySeqs = Collections.synchronizedList(new ArrayList<Long>());
+        final long myRndNum = 1;
+
+        final AcceptorLearner myAl = new AcceptorLearner(new MemoryLogStorage(), new Common(new TransportImpl()),
+                new Listener() {
+                    public void transition(StateEvent anEvent) {
+                        if (anEvent.getResult() == StateEvent.Reason.VALUE)
+                            mySeqs.add(anEvent.getSeqNum());
+                    }
+                }, INSTANCES);
+
+        myAl.open(CheckpointHandle.NO_CHECKPOINT);
+
+        myAl.processMessage(new FakePacket(_nodeId, new Collect(0, myRndNum)));
+
+        ExecutorService myDeliverers = Executors.newFixedThreadPool(8);
+
+        for (long i = 0; i < INSTANCES; i++) {
+            final long mySeqNum = i;
+
+            myDeliverers.execute(new Runnable() {
+                public void run() {
+                    myAl.processMessage(new FakePacket(_nodeId,
+                            new Begin(mySeqNum, myRndNum, new Proposal("data", new byte[] {(byte) mySeqNum}))));
+                    myAl.processMessage(new FakePacket(_nodeId, new Learned(mySeqNum, myRndNum)));
+                }
+            });
+        }
+
+        myDeliverers.shutdown();
+        Assert.assertTrue(myDeliverers.awaitTermination(10000, TimeUnit.MILLISECONDS));
+
+        Assert.assertEquals(INSTANCES - 1, myAl.getLowWatermark().getSeqNum());
+        Assert.assertEquals(INSTANCES, mySeqs.size());
+
+        for (int i = 0; i < INSTANCES; i++)
+            Assert.assertEquals(i, mySeqs.get(i).longValue());
+
+        myAl.close();
+    }
+}
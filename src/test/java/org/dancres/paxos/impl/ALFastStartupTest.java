@@ -0,0 +1,161 @@
+package org.dancres.paxos.impl;
+
+import org.dancres.paxos.*;
+import org.dancres.paxos.impl.faildet.FailureDetectorImpl;
+import org.dancres.paxos.messages.Begin;
+import org.dancres.paxos.messages.Collect;
+import org.dancres.paxos.messages.Learned;
+import org.dancres.paxos.storage.MemoryLogStorage;
+import org.dancres.paxos.test.net.FakePacket;
+import org.dancres.paxos.test.net.StandalonePickler;
+import org.dancres.paxos.test.net.Utils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Check that a restart from a checkpoint replays only the log beyond that checkpoint.
+ */
+public class ALFastStartupTest {
+    private InetSocketAddress _nodeId = Utils.getTestAddress();
+    private InetSocketAddress _broadcastId = Utils.getTestAddress();
+
+    private class TransportImpl implements Transport {
+        private Transport.PacketPickler _pickler = new StandalonePickler(_nodeId);
+        private MessageBasedFailureDetector _fd = new FailureDetectorImpl(5000, FailureDetectorImpl.OPEN_PIN);
+
+        public void routeTo(Dispatcher aDispatcher) {
+        }
+
+        public Transport.PacketPickler getPickler() {
+            return _pickler;
+        }
+
+        public FailureDetector getFD() {
+            return _fd;
+        }
+
+        public void send(Packet aPacket, InetSocketAddress aNodeId) {
+        }
+
+        public InetSocketAddress getLocalAddress() {
+            return _nodeId;
+        }
+
+        public InetSocketAddress getBroadcastAddress() {
+            return _broadcastId;
+        }
+
+        public void terminate() {
+        }
+    }
+
+    /**
+     * Survives the AL's open/close cycles and tracks where replays start and how many records they visit.
+     */
+    private static class TrackingStorage implements LogStorage {
+        private final MemoryLogStorage _log = new MemoryLogStorage();
+        private long _lastReplayMark = -1;
+        private int _replayed;
+
+        TrackingStorage() throws Exception {
+            _log.open();
+        }
+
+        public byte[] get(long mark) throws Exception {
+            return _log.get(mark);
+        }
+
+        public long put(byte[] data, boolean sync) throws Exception {
+            return _log.put(data, sync);
+        }
+
+        public void mark(long key, boolean force) throws Exception {
+            _log.mark(key, force);
+        }
+
+        public void close() {
+        }
+
+        public void open() {
+            _lastReplayMark = -1;
+            _replayed = 0;
+        }
+
+        public void replay(final RecordListener listener, long mark) throws Exception {
+            if (_lastReplayMark == -1)
+                _lastReplayMark = mark;
+
+            _log.replay(new RecordListener() {
+                public void onRecord(long anOffset, byte[] aRecord) {
+                    ++_replayed;
+                    listener.onRecord(anOffset, aRecord);
+                }
+            }, mark);
+        }
+    }
+
+    private static class Values implements Listener {
+        final List<Long> _seqs = new ArrayList<>();
+
+        public void transition(StateEvent anEvent) {
+            if (anEvent.getResult() == StateEvent.Reason.VALUE)
+                _seqs.add(anEvent.getSeqNum());
+        }
+    }
+
+    @Test public void test() throws Exception {
+        TrackingStorage myStorage = new TrackingStorage();
+        TransportImpl myTransport = new TransportImpl();
+        long myRndNum = 1;
+
+        AcceptorLearner myAl = new AcceptorLearner(myStorage, new Common(myTransport), new Values());
+        myAl.open(CheckpointHandle.NO_CHECKPOINT);
+
+        myAl.processMessage(new FakePacket(_nodeId, new Collect(0, myRndNum)));
+
+        CheckpointHandle myHandle = null;
+
+        for (long mySeqNum = 0; mySeqNum < 10; mySeqNum++) {
+            Proposal myValue = new Proposal("data", new byte[] {(byte) mySeqNum});
+
+            myAl.processMessage(new FakePacket(_nodeId, new Begin(mySeqNum, myRndNum, myValue)));
+            myAl.processMessage(new FakePacket(_nodeId, new Learned(mySeqNum, myRndNum)));
+
+            if (mySeqNum == 6)
+                myHandle = myAl.newCheckpoint();
+        }
+
+        Assert.assertEquals(9, myAl.getLowWatermark().getSeqNum());
+        myAl.close();
+
+        Values myValues = new Values();
+        myAl = new AcceptorLearner(myStorage, new Common(myTransport), myValues);
+        myAl.open(myHandle);
+
+        // Replay should start at the learned record for the checkpoint and thus visit it plus three instances
+        //
+        Assert.assertTrue(myStorage._lastReplayMark > 0);
+        Assert.assertEquals(7, myStorage._replayed);
+
+        Assert.assertEquals(9, myAl.getLowWatermark().getSeqNum());
+        Assert.assertEquals(3, myValues._seqs.size());
+        Assert.assertEquals(7, myValues._seqs.get(0).longValue());
+
+        myAl.close();
+
+        // Without a checkpoint we must replay everything
+        //
+        myValues = new Values();
+        myAl = new AcceptorLearner(myStorage, new Common(myTransport), myValues);
+        myAl.open(CheckpointHandle.NO_CHECKPOINT);
+
+        Assert.assertEquals(0, myStorage._lastReplayMark);
+        Assert.assertEquals(10, myValues._seqs.size());
+
+        myAl.close();
+    }
+}
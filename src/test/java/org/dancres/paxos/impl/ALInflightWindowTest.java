@@ -0,0 +1,244 @@
+package org.dancres.paxos.impl;
+
+import org.dancres.paxos.*;
+import org.dancres.paxos.impl.faildet.FailureDetectorImpl;
+import org.dancres.paxos.messages.Begin;
+import org.dancres.paxos.messages.Collect;
+import org.dancres.paxos.messages.Last;
+import org.dancres.paxos.messages.Learned;
+import org.dancres.paxos.messages.PaxosMessage;
+import org.dancres.paxos.storage.MemoryLogStorage;
+import org.dancres.paxos.test.net.FakePacket;
+import org.dancres.paxos.test.net.StandalonePickler;
+import org.dancres.paxos.test.net.Utils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Check that with several instances in flight, values are still learned in order and a checkpoint taken whilst
+ * Begins are outstanding recovers them.
+ */
+public class ALInflightWindowTest {
+    private InetSocketAddress _nodeId = Utils.getTestAddress();
+    private InetSocketAddress _otherLeaderId = Utils.getTestAddress();
+    private InetSocketAddress _broadcastId = Utils.getTestAddress();
+
+    private class TransportImpl implements Transport {
+        private Transport.PacketPickler _pickler = new StandalonePickler(_nodeId);
+        private MessageBasedFailureDetector _fd = new FailureDetectorImpl(5000, FailureDetectorImpl.OPEN_PIN);
+        private final List<PaxosMessage> _sent = new ArrayList<>();
+
+        public void routeTo(Dispatcher aDispatcher) {
+        }
+
+        public Transport.PacketPickler getPickler() {
+            return _pickler;
+        }
+
+        public FailureDetector getFD() {
+            return _fd;
+        }
+
+        public void send(Packet aPacket, InetSocketAddress aNodeId) {
+            synchronized(_sent) {
+                _sent.add(aPacket.getMessage());
+            }
+        }
+
+        Last lastLast() {
+            synchronized(_sent) {
+                for (int i = _sent.size() - 1; i >= 0; i--)
+                    if (_sent.get(i).getType() == PaxosMessage.Types.LAST)
+                        return (Last) _sent.get(i);
+
+                return null;
+            }
+        }
+
+        public InetSocketAddress getLocalAddress() {
+            return _nodeId;
+        }
+
+        public InetSocketAddress getBroadcastAddress() {
+            return _broadcastId;
+        }
+
+        public void terminate() {
+        }
+    }
+
+    /**
+     * Survives the AL's open/close cycles.
+     */
+    private static class DurableStorage implements LogStorage {
+        private final MemoryLogStorage _log = new MemoryLogStorage();
+
+        DurableStorage() throws Exception {
+            _log.open();
+        }
+
+        public byte[] get(long mark) throws Exception {
+            return _log.get(mark);
+        }
+
+        public long put(byte[] data, boolean sync) throws Exception {
+            return _log.put(data, sync);
+        }
+
+        public void mark(long key, boolean force) throws Exception {
+            _log.mark(key, force);
+        }
+
+        public void close() {
+        }
+
+        public void open() {
+        }
+
+        public void replay(RecordListener listener, long mark) throws Exception {
+            _log.replay(listener, mark);
+        }
+    }
+
+    private static class Values implements Listener {
+        final List<Long> _seqs = new ArrayList<>();
+        final List<Proposal> _values = new ArrayList<>();
+
+        public void transition(StateEvent anEvent) {
+            if (anEvent.getResult() == StateEvent.Reason.VALUE) {
+                _seqs.add(anEvent.getSeqNum());
+                _values.add(anEvent.getValues());
+            }
+        }
+    }
+
+    private static Proposal valueFor(long aSeqNum, long aRndNum) {
+        return new Proposal("data", new byte[] {(byte) aSeqNum, (byte) aRndNum});
+    }
+
+    private void begin(AcceptorLearner anAl, long aSeqNum, long aRndNum) {
+        begin(anAl, _nodeId, aSeqNum, aRndNum);
+    }
+
+    private void begin(AcceptorLearner anAl, InetSocketAddress aLeader, long aSeqNum, long aRndNum) {
+        anAl.processMessage(new FakePacket(aLeader, new Begin(aSeqNum, aRndNum, valueFor(aSeqNum, aRndNum))));
+    }
+
+    private void learned(AcceptorLearner anAl, long aSeqNum, long aRndNum) {
+        anAl.processMessage(new FakePacket(_nodeId, new Learned(aSeqNum, aRndNum)));
+    }
+
+    @Test public void test() throws Exception {
+        DurableStorage myStorage = new DurableStorage();
+        TransportImpl myTransport = new TransportImpl();
+        Values myValues = new Values();
+        long myRndNum = 1;
+
+        AcceptorLearner myAl = new AcceptorLearner(myStorage, new Common(myTransport), myValues, 3);
+        myAl.open(CheckpointHandle.NO_CHECKPOINT);
+
+        myAl.processMessage(new FakePacket(_nodeId, new Collect(0, myRndNum)));
+
+        for (long mySeqNum = 0; mySeqNum < 3; mySeqNum++)
+            begin(myAl, mySeqNum, myRndNum);
+
+        // Learned out of order is held until the gap is filled
+        //
+        learned(myAl, 1, myRndNum);
+
+        Assert.assertEquals(-1, myAl.getLowWatermark().getSeqNum());
+        Assert.assertEquals(0, myValues._seqs.size());
+
+        learned(myAl, 0, myRndNum);
+
+        Assert.assertEquals(1, myAl.getLowWatermark().getSeqNum());
+        Assert.assertEquals(2, myValues._seqs.size());
+        Assert.assertEquals(0, myValues._seqs.get(0).longValue());
+        Assert.assertEquals(1, myValues._seqs.get(1).longValue());
+
+        // Begin for instance 2 was logged ahead of the learned record for instance 1
+        //
+        CheckpointHandle myHandle = myAl.newCheckpoint();
+        myHandle.saved();
+
+        learned(myAl, 2, myRndNum);
+
+        Assert.assertEquals(2, myAl.getLowWatermark().getSeqNum());
+        Assert.assertEquals(3, myValues._seqs.size());
+
+        myAl.close();
+
+        myValues = new Values();
+        myAl = new AcceptorLearner(myStorage, new Common(myTransport), myValues, 3);
+        myAl.open(myHandle);
+
+        Assert.assertEquals(2, myAl.getLowWatermark().getSeqNum());
+        Assert.assertEquals(1, myValues._seqs.size());
+        Assert.assertEquals(2, myValues._seqs.get(0).longValue());
+
+        myAl.close();
+    }
+
+    /**
+     * A new leader collecting the first instance beyond the low watermark must be told of Begins accepted from the
+     * previous leader for later instances. A Learned held back for one of those from the previous leader must not
+     * deliver the value of a Begin since accepted from the new leader.
+     */
+    @Test public void leaderChange() throws Exception {
+        DurableStorage myStorage = new DurableStorage();
+        TransportImpl myTransport = new TransportImpl();
+        Values myValues = new Values();
+        long myOldLease = Leader.LeaseDuration.get();
+
+        AcceptorLearner myAl = new AcceptorLearner(myStorage, new Common(myTransport), myValues, 3);
+        myAl.open(CheckpointHandle.NO_CHECKPOINT);
+
+        try {
+            myAl.processMessage(new FakePacket(_nodeId, new Collect(0, 1)));
+
+            for (long mySeqNum = 0; mySeqNum < 3; mySeqNum++)
+                begin(myAl, mySeqNum, 1);
+
+            learned(myAl, 1, 1);
+
+            Assert.assertEquals(-1, myAl.getLowWatermark().getSeqNum());
+
+            // Let the previous leader's lease lapse so another can take over
+            //
+            Leader.LeaseDuration.set(0);
+            Thread.sleep(10);
+
+            myAl.processMessage(new FakePacket(_otherLeaderId, new Collect(0, 2)));
+
+            Last myLast = myTransport.lastLast();
+
+            Assert.assertNotNull(myLast);
+            Assert.assertEquals(0, myLast.getSeqNum());
+            Assert.assertEquals(valueFor(0, 1), myLast.getConsolidatedValue());
+            Assert.assertEquals(2, myLast.getHighestAccepted());
+
+            // New leader's Begin for instance 1 replaces that of the previous leader
+            //
+            begin(myAl, _otherLeaderId, 1, 2);
+
+            learned(myAl, 0, 1);
+
+            Assert.assertEquals(0, myAl.getLowWatermark().getSeqNum());
+            Assert.assertEquals(1, myValues._seqs.size());
+            Assert.assertEquals(valueFor(0, 1), myValues._values.get(0));
+
+            myAl.processMessage(new FakePacket(_otherLeaderId, new Learned(1, 2)));
+
+            Assert.assertEquals(1, myAl.getLowWatermark().getSeqNum());
+            Assert.assertEquals(2, myValues._seqs.size());
+            Assert.assertEquals(valueFor(1, 2), myValues._values.get(1));
+        } finally {
+            Leader.LeaseDuration.set(myOldLease);
+            myAl.close();
+        }
+    }
+}
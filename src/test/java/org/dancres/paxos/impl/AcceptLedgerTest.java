@@ -2,20 +2,127 @@ package org.dancres.paxos.impl;
 
 import junit.framework.Assert;
 import org.dancres.paxos.Proposal;
+import org.dancres.paxos.impl.faildet.FailureDetectorImpl;
 import org.dancres.paxos.messages.Accept;
 import org.dancres.paxos.messages.Begin;
 import org.dancres.paxos.test.net.FakePacket;
+import org.dancres.paxos.test.net.StandalonePickler;
+import org.dancres.paxos.test.net.Utils;
 import org.junit.Test;
 
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Collection;
+
 public class AcceptLedgerTest {
+    private InetSocketAddress _nodeId = Utils.getTestAddress();
+
+    private class TransportImpl implements Transport {
+        private final Transport.PacketPickler _pickler = new StandalonePickler(_nodeId);
+        private final MessageBasedFailureDetector _fd;
+
+        TransportImpl(Collection<InetSocketAddress> aPinSet) {
+            _fd = new FailureDetectorImpl(5000, aPinSet);
+        }
+
+        public void routeTo(Dispatcher aDispatcher) {
+        }
+
+        public Transport.PacketPickler getPickler() {
+            return _pickler;
+        }
+
+        public FailureDetector getFD() {
+            return _fd;
+        }
+
+        public void send(Packet aPacket, InetSocketAddress aNodeId) {
+        }
+
+        public InetSocketAddress getLocalAddress() {
+            return _nodeId;
+        }
+
+        public InetSocketAddress getBroadcastAddress() {
+            return null;
+        }
+
+        public void terminate() {
+            _fd.stop();
+        }
+    }
+
     @Test
     public void breakLedger() throws Exception {
-        AcceptLedger myAL = new AcceptLedger("Test", 1);
+        TransportImpl myTransport = new TransportImpl(FailureDetectorImpl.OPEN_PIN);
+        AcceptLedger myAL = new AcceptLedger("Test", 1, new MemberIndex(new Common(myTransport)));
 
         myAL.add(new FakePacket(new Accept(1, 2)));
         myAL.add(new FakePacket(new Accept(1, 2)));
         myAL.add(new FakePacket(new Accept(1, 2)));
 
         Assert.assertNull(myAL.tally(new Begin(1, 2, new Proposal("key", new byte[0])), 3));
+
+        myTransport.terminate();
+    }
+
+    @Test
+    public void tallyByRound() throws Exception {
+        TransportImpl myTransport = new TransportImpl(FailureDetectorImpl.OPEN_PIN);
+        AcceptLedger myAL = new AcceptLedger("Test", 1, new MemberIndex(new Common(myTransport)));
+        Begin myBegin = new Begin(1, 3, new Proposal("key", new byte[0]));
+
+        myAL.add(new FakePacket(Utils.getTestAddress(), new Accept(1, 2)));
+        myAL.add(new FakePacket(Utils.getTestAddress(), new Accept(1, 2)));
+        myAL.add(new FakePacket(Utils.getTestAddress(), new Accept(1, 3)));
+
+        Assert.assertNull(myAL.tally(myBegin, 2));
+
+        myAL.purge(myBegin);
+
+        Assert.assertNull(myAL.tally(new Begin(1, 2, new Proposal("key", new byte[0])), 1));
+
+        myAL.add(new FakePacket(Utils.getTestAddress(), new Accept(1, 3)));
+
+        Assert.assertNotNull(myAL.tally(myBegin, 2));
+
+        myTransport.terminate();
+    }
+
+    @Test
+    public void ignoreNonMembers() throws Exception {
+        InetSocketAddress myMember = Utils.getTestAddress();
+        InetSocketAddress myStranger = Utils.getTestAddress();
+
+        TransportImpl myTransport = new TransportImpl(Arrays.asList(_nodeId, myMember));
+        MemberIndex myIndex = new MemberIndex(new Common(myTransport));
+        AcceptLedger myAL = new AcceptLedger("Test", 1, myIndex);
+        Begin myBegin = new Begin(1, 2, new Proposal("key", new byte[0]));
+
+        Assert.assertEquals(MemberIndex.NOT_MEMBER, myIndex.indexOf(myStranger));
+
+        myAL.add(new FakePacket(myStranger, new Accept(1, 2)));
+        myAL.add(new FakePacket(myMember, new Accept(1, 2)));
+
+        Assert.assertNull(myAL.tally(myBegin, 2));
+
+        myAL.add(new FakePacket(_nodeId, new Accept(1, 2)));
+
+        Assert.assertNotNull(myAL.tally(myBegin, 2));
+
+        // A member that leaves is forgotten, should it return it gets a fresh index
+        //
+        int myOldIndex = myIndex.indexOf(myMember);
+
+        myTransport.getFD().pin(Arrays.asList(_nodeId));
+        myIndex.retain(Arrays.asList(_nodeId));
+
+        Assert.assertEquals(MemberIndex.NOT_MEMBER, myIndex.indexOf(myMember));
+
+        myTransport.getFD().pin(Arrays.asList(_nodeId, myMember));
+
+        Assert.assertTrue(myIndex.indexOf(myMember) != myOldIndex);
+
+        myTransport.terminate();
     }
 }
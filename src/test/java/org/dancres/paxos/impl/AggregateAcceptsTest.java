@@ -0,0 +1,73 @@
+package org.dancres.paxos.impl;
+
+import org.dancres.paxos.Proposal;
+import org.dancres.paxos.VoteOutcome;
+import org.dancres.paxos.impl.faildet.FailureDetectorImpl;
+import org.dancres.paxos.impl.netty.TransportImpl;
+import org.dancres.paxos.test.junit.FDUtil;
+import org.dancres.paxos.test.net.ServerDispatcher;
+import org.junit.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * With accepts aggregated only the leader sees them so the other members can only learn from the leader's Learned.
+ */
+public class AggregateAcceptsTest {
+    private TransportImpl _tport1;
+    private TransportImpl _tport2;
+    private TransportImpl _tport3;
+
+    private ServerDispatcher _node1;
+    private ServerDispatcher _node2;
+    private ServerDispatcher _node3;
+
+    @Before public void init() throws Exception {
+        _node1 = new ServerDispatcher();
+        _node2 = new ServerDispatcher();
+        _node3 = new ServerDispatcher();
+
+        _tport1 = new TransportImpl(new FailureDetectorImpl(5000, FailureDetectorImpl.OPEN_PIN));
+        _tport1.routeTo(_node1);
+        _node1.init(_tport1);
+
+        _tport2 = new TransportImpl(new FailureDetectorImpl(5000, FailureDetectorImpl.OPEN_PIN));
+        _tport2.routeTo(_node2);
+        _node2.init(_tport2);
+
+        _tport3 = new TransportImpl(new FailureDetectorImpl(5000, FailureDetectorImpl.OPEN_PIN));
+        _tport3.routeTo(_node3);
+        _node3.init(_tport3);
+    }
+
+    @After public void stop() throws Exception {
+        _tport1.terminate();
+        _tport2.terminate();
+        _tport3.terminate();
+    }
+
+    @Test public void post() throws Exception {
+        FDUtil.ensureFD(_tport1.getFD());
+        FDUtil.ensureFD(_tport2.getFD());
+        FDUtil.ensureFD(_tport3.getFD());
+
+        _node1.getCore().setAggregateAccepts(true);
+        _node2.getCore().setAggregateAccepts(true);
+        _node3.getCore().setAggregateAccepts(true);
+
+        for (int i = 0; i < 10; i++) {
+            VoteOutcome myOutcome = _node1.getCore().submitAsync(new Proposal("data", new byte[] {(byte) i})).get(
+                    10000, TimeUnit.MILLISECONDS);
+
+            Assert.assertEquals(VoteOutcome.Reason.VALUE, myOutcome.getResult());
+        }
+
+        // Other members learn from a Learned that may still be in flight when the outcome is reported
+        //
+        Thread.sleep(1000);
+
+        Assert.assertEquals(9, _node1.getAcceptorLearner().getLowWatermark().getSeqNum());
+        Assert.assertEquals(9, _node2.getAcceptorLearner().getLowWatermark().getSeqNum());
+        Assert.assertEquals(9, _node3.getAcceptorLearner().getLowWatermark().getSeqNum());
+    }
+}
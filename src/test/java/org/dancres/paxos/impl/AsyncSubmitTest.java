@@ -0,0 +1,79 @@
+package org.dancres.paxos.impl;
+
+import org.dancres.paxos.*;
+import org.dancres.paxos.impl.faildet.FailureDetectorImpl;
+import org.dancres.paxos.impl.netty.TransportImpl;
+import org.dancres.paxos.test.junit.FDUtil;
+import org.dancres.paxos.test.net.ServerDispatcher;
+import org.junit.*;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AsyncSubmitTest {
+    private TransportImpl _tport1;
+    private TransportImpl _tport2;
+
+    private ServerDispatcher _node1;
+    private ServerDispatcher _node2;
+
+    @Before public void init() throws Exception {
+        _node1 = new ServerDispatcher();
+        _node2 = new ServerDispatcher();
+        _tport1 = new TransportImpl(new FailureDetectorImpl(5000, FailureDetectorImpl.OPEN_PIN));
+        _tport1.routeTo(_node1);
+        _node1.init(_tport1);
+
+        _tport2 = new TransportImpl(new FailureDetectorImpl(5000, FailureDetectorImpl.OPEN_PIN));
+        _tport2.routeTo(_node2);
+        _node2.init(_tport2);
+    }
+
+    @After public void stop() throws Exception {
+        _tport1.terminate();
+    }
+
+    @Test public void submit() throws Exception {
+        FDUtil.ensureFD(_tport1.getFD());
+        FDUtil.ensureFD(_tport2.getFD());
+
+        final AtomicInteger myCompleted = new AtomicInteger(0);
+        List<Promise<VoteOutcome>> myPromises = new ArrayList<>();
+
+        // One thread drives all the submissions
+        //
+        for (int i = 0; i < 100; i++)
+            myPromises.add(_node2.getCore().submitAsync(new Proposal("data", new byte[] {(byte) i})).then(
+                    new Completion<VoteOutcome>() {
+                        public void complete(VoteOutcome anOutcome) {
+                            myCompleted.incrementAndGet();
+                        }
+                    }));
+
+        for (Promise<VoteOutcome> myPromise : myPromises) {
+            VoteOutcome myOutcome = myPromise.get(10000, TimeUnit.MILLISECONDS);
+
+            Assert.assertEquals(VoteOutcome.Reason.VALUE, myOutcome.getResult());
+        }
+
+        Assert.assertEquals(100, myCompleted.get());
+
+        Promise<Boolean> myChange = _node2.getCore().getMembership().updateMembershipAsync(
+                Arrays.<InetSocketAddress>asList(_tport1.getLocalAddress(), _tport2.getLocalAddress()));
+
+        Assert.assertTrue(myChange.get(10000, TimeUnit.MILLISECONDS));
+
+        // Once shutdown, submissions fail without an exception
+        //
+        _tport2.terminate();
+
+        VoteOutcome myOutcome = _node2.getCore().submitAsync(new Proposal("data", new byte[] {1})).get(10000,
+                TimeUnit.MILLISECONDS);
+
+        Assert.assertEquals(VoteOutcome.Reason.INACTIVE, myOutcome.getResult());
+    }
+}
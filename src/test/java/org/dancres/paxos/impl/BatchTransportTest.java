@@ -0,0 +1,87 @@
+package org.dancres.paxos.impl;
+
+import org.dancres.paxos.Proposal;
+import org.dancres.paxos.impl.faildet.FailureDetectorImpl;
+import org.dancres.paxos.impl.netty.TransportImpl;
+import org.dancres.paxos.messages.Begin;
+import org.dancres.paxos.messages.PaxosMessage;
+import org.junit.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Check a Begin carrying a full batch of proposals makes it across the wire intact.
+ */
+public class BatchTransportTest {
+    private TransportImpl _tport1;
+    private TransportImpl _tport2;
+
+    private final BlockingQueue<Begin> _begins = new LinkedBlockingQueue<>();
+
+    @Before public void init() throws Exception {
+        _tport1 = new TransportImpl(new FailureDetectorImpl(5000, FailureDetectorImpl.OPEN_PIN));
+        _tport2 = new TransportImpl(new FailureDetectorImpl(5000, FailureDetectorImpl.OPEN_PIN));
+
+        _tport2.routeTo(new Transport.Dispatcher() {
+            public void init(Transport aTransport) {
+            }
+
+            public void terminate() {
+            }
+
+            public boolean messageReceived(Transport.Packet aPacket) {
+                if (aPacket.getMessage().getType() != PaxosMessage.Types.BEGIN)
+                    return false;
+
+                _begins.add((Begin) aPacket.getMessage());
+                return true;
+            }
+        });
+    }
+
+    @After public void stop() throws Exception {
+        _tport1.terminate();
+        _tport2.terminate();
+    }
+
+    @Test public void fullBatch() throws Exception {
+        List<byte[]> myValues = new ArrayList<>();
+        int myBytes = 0;
+
+        for (int i = 0; ; i++) {
+            byte[] myValue = new Proposal("data", new byte[1024 + i]).marshall();
+
+            if (myBytes + myValue.length > ProposalBatcher.DEFAULT_MAX_BYTES)
+                break;
+
+            myValues.add(myValue);
+            myBytes += myValue.length;
+        }
+
+        byte[] myBatch = ProposalBatcher.pack(myValues);
+
+        // Well beyond the 768 bytes Netty would otherwise receive
+        //
+        Assert.assertTrue(myBatch.length > 768);
+
+        _tport1.send(_tport1.getPickler().newPacket(new Begin(0, 1, new Proposal(ProposalBatcher.BATCH_KEY, myBatch))),
+                _tport2.getLocalAddress());
+
+        Begin myBegin = _begins.poll(5000, TimeUnit.MILLISECONDS);
+
+        Assert.assertNotNull(myBegin);
+
+        List<Proposal> myReceived =
+                ProposalBatcher.unpack(myBegin.getConsolidatedValue().get(ProposalBatcher.BATCH_KEY));
+
+        Assert.assertEquals(myValues.size(), myReceived.size());
+
+        for (int i = 0; i < myValues.size(); i++)
+            Assert.assertTrue(Arrays.equals(myValues.get(i), myReceived.get(i).marshall()));
+    }
+}
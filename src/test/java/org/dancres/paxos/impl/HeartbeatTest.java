@@ -61,10 +61,23 @@ public class HeartbeatTest {
         // Now we have an active leader, make sure acceptor learners see heartbeats
         //
         AcceptorLearner myAl = _node2.getAcceptorLearner();
+        AcceptorLearner myOtherAl = _node1.getAcceptorLearner();
+        long myLastSeq = myAl.getLowWatermark().getSeqNum();
 
         Thread.sleep(5000 + Leader.LeaseDuration.get());
 
         Assert.assertTrue(myAl.getStats().getHeartbeatCount() == 1);
+        Assert.assertTrue(myOtherAl.getStats().getHeartbeatCount() == 1);
+
+        // Heartbeats don't consume instances
+        //
+        Assert.assertEquals(myLastSeq, myAl.getLowWatermark().getSeqNum());
+        Assert.assertEquals(myLastSeq, myOtherAl.getLowWatermark().getSeqNum());
+
+        // Leader's lease has been renewed beyond that granted by the original instance
+        //
+        Assert.assertTrue(_node2.getCore().isLeaseHolder(System.currentTimeMillis() +
+                (Leader.LeaseDuration.get() / 2)));
     }
     
     public static void main(String[] anArgs) throws Exception {
@@ -0,0 +1,116 @@
+package org.dancres.paxos.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class InstanceWindowTest {
+    @Test public void putGetRemove() {
+        InstanceWindow<String> myWindow = new InstanceWindow<>(1);
+
+        Assert.assertNull(myWindow.put(0, "a"));
+        Assert.assertEquals("a", myWindow.put(0, "b"));
+        Assert.assertEquals("b", myWindow.get(0));
+        Assert.assertNull(myWindow.get(1));
+        Assert.assertEquals(1, myWindow.size());
+
+        Assert.assertEquals("b", myWindow.remove(0));
+        Assert.assertNull(myWindow.remove(0));
+        Assert.assertEquals(0, myWindow.size());
+    }
+
+    @Test public void putIfAbsent() {
+        InstanceWindow<String> myWindow = new InstanceWindow<>(1);
+
+        Assert.assertNull(myWindow.putIfAbsent(1, "a"));
+        Assert.assertEquals("a", myWindow.putIfAbsent(1, "b"));
+        Assert.assertEquals("a", myWindow.get(1));
+        Assert.assertEquals(1, myWindow.size());
+
+        // Overflowed instances behave the same
+        //
+        Assert.assertNull(myWindow.putIfAbsent(5000, "5000"));
+        Assert.assertEquals("5000", myWindow.putIfAbsent(5000, "other"));
+        Assert.assertEquals("5000", myWindow.get(5000));
+        Assert.assertEquals(2, myWindow.size());
+    }
+
+    @Test public void advanceEvicts() {
+        InstanceWindow<String> myWindow = new InstanceWindow<>(1);
+
+        // Instances that were never learned are swept away with the rest
+        //
+        for (long mySeq = 0; mySeq < 10; mySeq++)
+            myWindow.put(mySeq, Long.toString(mySeq));
+
+        myWindow.advance(5);
+
+        Assert.assertNull(myWindow.get(5));
+        Assert.assertEquals("6", myWindow.get(6));
+        Assert.assertEquals(4, myWindow.size());
+
+        // At or below the low watermark is ignored
+        //
+        Assert.assertNull(myWindow.put(3, "3"));
+        Assert.assertNull(myWindow.get(3));
+        Assert.assertEquals(4, myWindow.size());
+    }
+
+    @Test public void overflow() {
+        InstanceWindow<String> myWindow = new InstanceWindow<>(1);
+
+        // Far enough ahead to land outside the window's buffer
+        //
+        myWindow.put(1, "1");
+        myWindow.put(1000, "1000");
+        myWindow.put(5000, "5000");
+
+        Assert.assertEquals("1000", myWindow.get(1000));
+        Assert.assertEquals(3, myWindow.size());
+
+        myWindow.advance(999);
+
+        Assert.assertNull(myWindow.get(1));
+        Assert.assertEquals("1000", myWindow.get(1000));
+        Assert.assertEquals("5000", myWindow.get(5000));
+        Assert.assertEquals(2, myWindow.size());
+
+        myWindow.advance(4999);
+
+        Assert.assertEquals("5000", myWindow.remove(5000));
+        Assert.assertEquals(0, myWindow.size());
+    }
+
+    @Test public void evictInOrder() {
+        InstanceWindow<String> myWindow = new InstanceWindow<>(1);
+
+        myWindow.put(5000, "5000");
+        myWindow.put(2, "2");
+        myWindow.put(1000, "1000");
+        myWindow.put(0, "0");
+
+        List<String> myEvicted = new ArrayList<>();
+        myWindow.advance(1000, myEvicted);
+
+        Assert.assertEquals(Arrays.asList("0", "2", "1000"), myEvicted);
+        Assert.assertEquals(1000, myWindow.getFloor());
+        Assert.assertEquals(1, myWindow.size());
+    }
+
+    @Test public void reset() {
+        InstanceWindow<String> myWindow = new InstanceWindow<>(1);
+
+        myWindow.advance(10);
+        myWindow.put(11, "11");
+        myWindow.reset(Constants.UNKNOWN_SEQ);
+
+        Assert.assertEquals(0, myWindow.size());
+        Assert.assertNull(myWindow.get(11));
+
+        myWindow.put(0, "0");
+        Assert.assertEquals("0", myWindow.get(0));
+    }
+}
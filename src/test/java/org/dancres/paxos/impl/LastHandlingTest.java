@@ -190,7 +190,7 @@ public class LastHandlingTest {
                         _seenLast = true;
                         _tp.send(_tp.getPickler().newPacket(new Last(myOrig.getSeqNum(), myOrig.getLowWatermark(),
                                 myOrig.getRndNumber() + 1,
-                                new Proposal("data", myBuffer.array()))), anAddr);
+                                new Proposal("data", myBuffer.array()), myOrig.getHighestAccepted())), anAddr);
                     } else {
                         _tp.send(aPacket, anAddr);
                     }
@@ -0,0 +1,217 @@
+package org.dancres.paxos.impl;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+import org.dancres.paxos.CheckpointHandle;
+import org.dancres.paxos.Listener;
+import org.dancres.paxos.StateEvent;
+import org.dancres.paxos.VoteOutcome;
+import org.dancres.paxos.Proposal;
+import org.dancres.paxos.impl.faildet.FailureDetectorImpl;
+import org.dancres.paxos.messages.Begin;
+import org.dancres.paxos.messages.Collect;
+import org.dancres.paxos.messages.Learned;
+import org.dancres.paxos.storage.MemoryLogStorage;
+import org.dancres.paxos.test.junit.FDUtil;
+import org.dancres.paxos.test.net.ClientDispatcher;
+import org.dancres.paxos.test.net.FakePacket;
+import org.dancres.paxos.test.net.StandalonePickler;
+import org.dancres.paxos.test.net.ServerDispatcher;
+import org.dancres.paxos.test.net.Utils;
+import org.dancres.paxos.messages.Envelope;
+import org.dancres.paxos.impl.netty.TransportImpl;
+import org.junit.*;
+
+public class LeaseTest {
+    private static class NullTransport implements Transport {
+        private final InetSocketAddress _nodeId = Utils.getTestAddress();
+        private final InetSocketAddress _broadcastId = Utils.getTestAddress();
+        private final Transport.PacketPickler _pickler = new StandalonePickler(_nodeId);
+        private final MessageBasedFailureDetector _fd = new FailureDetectorImpl(5000, FailureDetectorImpl.OPEN_PIN);
+
+        public void send(Packet aPacket, InetSocketAddress aNodeId) {
+        }
+
+        public Transport.PacketPickler getPickler() {
+            return _pickler;
+        }
+
+        public FailureDetector getFD() {
+            return _fd;
+        }
+
+        public void routeTo(Dispatcher aDispatcher) {
+        }
+
+        public InetSocketAddress getLocalAddress() {
+            return _nodeId;
+        }
+
+        public InetSocketAddress getBroadcastAddress() {
+            return _broadcastId;
+        }
+
+        public void terminate() {
+        }
+    }
+
+    private TransportImpl _tport1;
+    private TransportImpl _tport2;
+
+    private ServerDispatcher _node1;
+    private ServerDispatcher _node2;
+
+    @Before public void init() throws Exception {
+    	_node1 = new ServerDispatcher();
+    	_node2 = new ServerDispatcher();
+        _tport1 = new TransportImpl(new FailureDetectorImpl(5000, FailureDetectorImpl.OPEN_PIN));
+        _tport1.routeTo(_node1);
+        _node1.init(_tport1);
+
+        _tport2 = new TransportImpl(new FailureDetectorImpl(5000, FailureDetectorImpl.OPEN_PIN));
+        _tport2.routeTo(_node2);
+        _node2.init(_tport2);
+    }
+
+    @After public void stop() throws Exception {
+    	_tport1.terminate();
+    	_tport2.terminate();
+    }
+
+    @Test public void lease() throws Exception {
+    	ClientDispatcher myClient = new ClientDispatcher();
+    	TransportImpl myTransport = new TransportImpl(null);
+        myTransport.routeTo(myClient);
+        myClient.init(myTransport);
+
+        FDUtil.ensureFD(_tport1.getFD());
+        FDUtil.ensureFD(_tport2.getFD());
+
+        // No leader yet so no lease
+        //
+        Assert.assertFalse(_node1.getCore().isLeaseHolder(System.currentTimeMillis()));
+        Assert.assertFalse(_node2.getCore().isLeaseHolder(System.currentTimeMillis()));
+
+        ByteBuffer myBuffer = ByteBuffer.allocate(4);
+        myBuffer.putInt(55);
+
+        myClient.send(new Envelope(new Proposal("data", myBuffer.array())), _tport2.getLocalAddress());
+
+        VoteOutcome myEv = myClient.getNext(10000);
+
+        Assert.assertFalse(myEv == null);
+        Assert.assertTrue(myEv.getResult() == VoteOutcome.Reason.VALUE);
+
+        // Lease is only good once the local AL has delivered the value
+        //
+        long myExpiry = System.currentTimeMillis() + 5000;
+
+        while ((! _node2.getCore().isLeaseHolder(System.currentTimeMillis())) &&
+                (System.currentTimeMillis() < myExpiry))
+            Thread.sleep(10);
+
+        Assert.assertTrue(_node2.getCore().isLeaseHolder(System.currentTimeMillis()));
+        Assert.assertTrue(_node2.getAcceptorLearner().getDeliveredSeq() >= myEv.getSeqNum());
+
+        Assert.assertFalse(_node2.getCore().isLeaseHolder(System.currentTimeMillis() + Leader.LeaseDuration.get()));
+        Assert.assertFalse(_node1.getCore().isLeaseHolder(System.currentTimeMillis()));
+
+        myTransport.terminate();
+    }
+
+    @Test public void followerRead() throws Exception {
+    	ClientDispatcher myClient = new ClientDispatcher();
+    	TransportImpl myTransport = new TransportImpl(null);
+        myTransport.routeTo(myClient);
+        myClient.init(myTransport);
+
+        FDUtil.ensureFD(_tport1.getFD());
+        FDUtil.ensureFD(_tport2.getFD());
+
+        // No leader to ask
+        //
+        Assert.assertFalse(_node1.getCore().readBarrier(1000));
+
+        for (int i = 0; i < 3; i++) {
+            ByteBuffer myBuffer = ByteBuffer.allocate(4);
+            myBuffer.putInt(i);
+
+            myClient.send(new Envelope(new Proposal("data", myBuffer.array())), _tport2.getLocalAddress());
+
+            VoteOutcome myEv = myClient.getNext(10000);
+
+            Assert.assertFalse(myEv == null);
+            Assert.assertTrue(myEv.getResult() == VoteOutcome.Reason.VALUE);
+
+            // Follower must have caught up with the value before the barrier lets it read
+            //
+            Assert.assertTrue(_node1.getCore().readBarrier(5000));
+            Assert.assertTrue(_node1.getAcceptorLearner().getDeliveredSeq() >= myEv.getSeqNum());
+
+            Assert.assertTrue(_node2.getCore().readBarrier(5000));
+        }
+
+        myTransport.terminate();
+    }
+
+    @Test public void leaseSurvivesRecovery() throws Exception {
+        InetSocketAddress myLeader = Utils.getTestAddress();
+        InetSocketAddress myRival = Utils.getTestAddress();
+        Common myCommon = new Common(new NullTransport());
+
+        AcceptorLearner myAl = new AcceptorLearner(new MemoryLogStorage(), myCommon, new Listener() {
+            public void transition(StateEvent anEvent) {
+            }
+        });
+
+        myAl.open(CheckpointHandle.NO_CHECKPOINT);
+
+        // Leader is established and gets a value accepted, thus holds a lease
+        //
+        myAl.processMessage(new FakePacket(myLeader, new Collect(0, 1)));
+        myAl.processMessage(new FakePacket(myLeader, new Begin(0, 1, new Proposal("data", new byte[] {0}))));
+        myAl.processMessage(new FakePacket(myLeader, new Learned(0, 1)));
+
+        Assert.assertEquals(0, myAl.getLowWatermark().getSeqNum());
+
+        /*
+         * Leader re-establishes itself at a later instance, then a packet beyond the inflight window forces recovery.
+         * That packet is a COLLECT so processing it once recovery is done doesn't count as hearing from the leader.
+         */
+        myAl.processMessage(new FakePacket(myLeader, new Collect(1, 2)));
+        myAl.processMessage(new FakePacket(myLeader, new Begin(1, 2, new Proposal("data", new byte[] {1}))));
+        myAl.processMessage(new FakePacket(myLeader, new Collect(5, 2)));
+
+        Assert.assertTrue(myCommon.getNodeState().test(NodeState.State.RECOVERING));
+
+        // Recovery streams the missing instances, completing once the low watermark reaches the end of the window
+        //
+        myAl.processMessage(new FakePacket(myLeader, new Collect(1, 2)));
+
+        for (int i = 1; i < 5; i++) {
+            myAl.processMessage(new FakePacket(myLeader, new Begin(i, 2, new Proposal("data", new byte[] {(byte) i}))));
+            myAl.processMessage(new FakePacket(myLeader, new Learned(i, 2)));
+        }
+
+        Assert.assertEquals(4, myAl.getLowWatermark().getSeqNum());
+        Assert.assertTrue(myCommon.getNodeState().test(NodeState.State.ACTIVE));
+        Assert.assertEquals(1, myAl.getStats().getRecoveryCycles());
+
+        // Lease granted before recovery is still in force so a rival must be refused
+        //
+        myAl.processMessage(new FakePacket(myRival, new Collect(5, 3)));
+
+        Assert.assertEquals(1, myAl.getStats().getIgnoredCollectsCount());
+        Assert.assertEquals(2, myAl.getLeaderRndNum());
+
+        // Whilst the leader holding the lease is still welcome
+        //
+        myAl.processMessage(new FakePacket(myLeader, new Collect(5, 4)));
+
+        Assert.assertEquals(1, myAl.getStats().getIgnoredCollectsCount());
+        Assert.assertEquals(4, myAl.getLeaderRndNum());
+
+        myAl.close();
+    }
+}
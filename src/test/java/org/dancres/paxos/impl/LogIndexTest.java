@@ -0,0 +1,50 @@
+package org.dancres.paxos.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LogIndexTest {
+    @Test public void coverage() {
+        LogIndex myIndex = new LogIndex();
+
+        myIndex.reset(5);
+
+        Assert.assertFalse(myIndex.covers(5));
+        Assert.assertTrue(myIndex.covers(6));
+        Assert.assertNull(myIndex.getOffsets(4, 6));
+
+        // Entries at or below the floor are not tracked
+        //
+        myIndex.add(5, 100);
+        Assert.assertEquals(0, myIndex.size());
+    }
+
+    @Test public void range() {
+        LogIndex myIndex = new LogIndex();
+
+        myIndex.add(0, 10);
+        myIndex.add(1, 20);
+        myIndex.add(0, 30);
+        myIndex.add(1, 40);
+        myIndex.add(2, 50);
+
+        Assert.assertArrayEquals(new long[] {10, 30}, myIndex.getOffsets(-1, 0));
+        Assert.assertArrayEquals(new long[] {10, 20, 30, 40}, myIndex.getOffsets(-1, 1));
+        Assert.assertArrayEquals(new long[] {20, 40, 50}, myIndex.getOffsets(0, Long.MAX_VALUE));
+        Assert.assertEquals(0, myIndex.getOffsets(2, 5).length);
+    }
+
+    @Test public void truncate() {
+        LogIndex myIndex = new LogIndex();
+
+        for (long mySeq = 0; mySeq < 10; mySeq++)
+            myIndex.add(mySeq, mySeq * 2);
+
+        myIndex.truncate(4);
+
+        Assert.assertEquals(5, myIndex.size());
+        Assert.assertFalse(myIndex.covers(4));
+        Assert.assertNull(myIndex.getOffsets(3, 6));
+        Assert.assertArrayEquals(new long[] {10, 12}, myIndex.getOffsets(4, 6));
+    }
+}
@@ -0,0 +1,117 @@
+package org.dancres.paxos.impl;
+
+import org.dancres.paxos.LogStorage;
+import org.dancres.paxos.Proposal;
+import org.dancres.paxos.messages.Begin;
+import org.dancres.paxos.messages.Learned;
+import org.dancres.paxos.storage.MemoryLogStorage;
+import org.dancres.paxos.test.net.StandalonePickler;
+import org.dancres.paxos.test.net.Utils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class LogRangeProducerTest {
+    private MemoryLogStorage _storage;
+    private Transport.PacketPickler _pickler;
+    private long[] _learnedOffsets;
+
+    @Before public void init() throws Exception {
+        _storage = new MemoryLogStorage();
+        _pickler = new StandalonePickler(Utils.getTestAddress());
+        _learnedOffsets = new long[10];
+
+        _storage.open();
+
+        for (long mySeq = 0; mySeq < 10; mySeq++) {
+            _storage.put(_pickler.pickle(_pickler.newPacket(
+                    new Begin(mySeq, 1, new Proposal("data", new byte[] {(byte) mySeq})))), true);
+            _learnedOffsets[(int) mySeq] =
+                    _storage.put(_pickler.pickle(_pickler.newPacket(new Learned(mySeq, 1))), true);
+        }
+    }
+
+    @Test public void range() throws Exception {
+        Collector myCollector = new Collector();
+
+        new LogRangeProducer(2, 4, myCollector, _storage, _pickler).produce(0);
+
+        Assert.assertEquals(4, myCollector._seqs.size());
+
+        for (Long mySeq : myCollector._seqs)
+            Assert.assertTrue((mySeq > 2) && (mySeq <= 4));
+    }
+
+    @Test public void offset() throws Exception {
+        Collector myCollector = new Collector();
+
+        new LogRangeProducer(4, 5, myCollector, _storage, _pickler).produce(_learnedOffsets[4]);
+
+        Assert.assertEquals(2, myCollector._seqs.size());
+        Assert.assertEquals(5, myCollector._seqs.get(0).longValue());
+        Assert.assertEquals(5, myCollector._seqs.get(1).longValue());
+    }
+
+    @Test public void cutoff() throws Exception {
+        final MemoryLogStorage myLog = new MemoryLogStorage();
+        final List<Long> myReplayed = new ArrayList<>();
+
+        myLog.open();
+
+        for (long mySeq = 0; mySeq < 1000; mySeq++) {
+            myLog.put(_pickler.pickle(_pickler.newPacket(
+                    new Begin(mySeq, 1, new Proposal("data", new byte[] {(byte) mySeq})))), true);
+            myLog.put(_pickler.pickle(_pickler.newPacket(new Learned(mySeq, 1))), true);
+        }
+
+        LogStorage myCounter = new MemoryLogStorage() {
+            public void replay(final RecordListener aListener, long aMark) throws Exception {
+                myLog.replay(new RecordListener() {
+                    public void onRecord(long anOffset, byte[] aRecord) {
+                        myReplayed.add(anOffset);
+                        aListener.onRecord(anOffset, aRecord);
+                    }
+                }, aMark);
+            }
+        };
+
+        Collector myCollector = new Collector();
+        new LogRangeProducer(0, 1, myCollector, myCounter, _pickler).produce(0);
+
+        Assert.assertEquals(2, myCollector._seqs.size());
+
+        /*
+         * Replay should stop at the first record beyond the inflight window, the begin for seqnum 3. Records are
+         * decoded in batches though so we may overrun by up to two batches.
+         */
+        Assert.assertTrue(myReplayed.size() >= 7);
+        Assert.assertTrue(myReplayed.size() <= 7 + 2 * LogRangeProducer.DECODE_BATCH_SIZE);
+    }
+
+    @Test public void indexed() throws Exception {
+        LogIndex myIndex = new LogIndex();
+        Collector myCollector = new Collector();
+
+        for (long mySeq = 0; mySeq < 10; mySeq++)
+            myIndex.add(mySeq, _learnedOffsets[(int) mySeq]);
+
+        // Index holds only learned records, thus these are all we should see
+        //
+        new LogRangeProducer(6, 8, myCollector, _storage, _pickler, myIndex).produce(0);
+
+        Assert.assertEquals(2, myCollector._seqs.size());
+        Assert.assertEquals(7, myCollector._seqs.get(0).longValue());
+        Assert.assertEquals(8, myCollector._seqs.get(1).longValue());
+    }
+
+    private class Collector implements Consumer {
+        final List<Long> _seqs = new ArrayList<>();
+
+        public void process(Transport.Packet aPacket, long aLogOffset) {
+            _seqs.add(aPacket.getMessage().getSeqNum());
+        }
+    }
+}
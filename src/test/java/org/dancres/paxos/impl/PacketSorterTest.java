@@ -9,6 +9,8 @@ import org.dancres.paxos.test.net.FakePacket;
 import org.junit.Test;
 
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
 
 public class PacketSorterTest {
     @Test
@@ -87,8 +89,88 @@ public class PacketSorterTest {
         Assert.assertEquals(0, mySorter.numPackets());
     }
 
+    @Test
+    public void checkWindowConsume() {
+        PacketSorter mySorter = new PacketSorter(3);
+        Tester myTester = new Tester(true);
+
+        // Packets within the window of the low watermark are released ahead of it
+        //
+        for (long mySeq = 0; mySeq < 3; mySeq++)
+            mySorter.add(new FakePacket(new Collect(mySeq, 1)));
+
+        mySorter.process(-1, myTester);
+
+        Assert.assertEquals(3, myTester._consumed);
+        Assert.assertEquals(0, mySorter.numPackets());
+
+        mySorter.add(new FakePacket(new Collect(3, 1)));
+        mySorter.process(-1, myTester);
+
+        Assert.assertEquals(3, myTester._consumed);
+        Assert.assertEquals(true, myTester._recoveryRequested);
+
+        mySorter.process(0, myTester);
+
+        Assert.assertEquals(4, myTester._consumed);
+        Assert.assertEquals(0, mySorter.numPackets());
+    }
+
+    @Test
+    public void checkOverflowConsume() {
+        PacketSorter mySorter = new PacketSorter();
+        Tester myTester = new Tester(false);
+
+        // Far enough ahead to land outside the sorter's buffer, added out of order
+        //
+        for (long mySeq = 1999; mySeq >= 1000; mySeq--)
+            mySorter.add(new FakePacket(new Collect(mySeq, 1)));
+
+        Assert.assertEquals(1000, mySorter.numPackets());
+
+        mySorter.process(999, myTester);
+
+        Assert.assertEquals(1, myTester._consumed);
+
+        for (long mySeq = 1000; mySeq < 1999; mySeq++)
+            mySorter.process(mySeq, myTester);
+
+        Assert.assertEquals(1000, myTester._consumed);
+        Assert.assertEquals(false, myTester._recoveryRequested);
+        Assert.assertEquals(0, mySorter.numPackets());
+
+        for (int i = 0; i < myTester._seqs.size(); i++)
+            Assert.assertEquals(1000 + i, myTester._seqs.get(i).longValue());
+    }
+
+    @Test
+    public void checkCheckpointDiscard() {
+        PacketSorter mySorter = new PacketSorter();
+        Tester myTester = new Tester(false);
+
+        mySorter.add(new FakePacket(new Collect(10, 1)));
+        mySorter.add(new FakePacket(new Collect(500, 1)));
+        mySorter.add(new FakePacket(new Collect(5000, 1)));
+        mySorter.add(new FakePacket(new Collect(5001, 1)));
+
+        mySorter.recoveredToCheckpoint(5000);
+
+        Assert.assertEquals(1, mySorter.numPackets());
+
+        // A NEED lagging behind the low watermark is still released
+        //
+        mySorter.add(new FakePacket(new Need(20, 30)));
+        mySorter.process(5000, myTester);
+
+        Assert.assertEquals(2, myTester._consumed);
+        Assert.assertEquals(-1, myTester._seqs.get(0).longValue());
+        Assert.assertEquals(5001, myTester._seqs.get(1).longValue());
+        Assert.assertEquals(0, mySorter.numPackets());
+    }
+
     class Tester implements PacketSorter.PacketProcessor {
         int _consumed = 0;
+        List<Long> _seqs = new ArrayList<>();
         boolean _recoveryRequested = false;
 
         private boolean _recoveryReturn;
@@ -99,6 +181,7 @@ public class PacketSorterTest {
 
         public void consume(Transport.Packet aPacket) {
             _consumed++;
+            _seqs.add(aPacket.getMessage().getSeqNum());
         }
 
         public boolean recover(Need aNeed, InetSocketAddress aTriggeringSource) {
@@ -189,4 +189,32 @@ public class ProposalAllocatorTest {
         Assert.assertEquals(mySplitInstance.getSeqNum() + 1, myInstance.getSeqNum());
         Assert.assertEquals(2, myInstance.getRound());
     }
+
+    @Test
+    public void collectPreviousLeadersInstances() {
+        int myMaxInflight = 5;
+
+        ProposalAllocator myFactory = new ProposalAllocator(myMaxInflight).resumeAt(-1, 0);
+        Instance myInstance = myFactory.nextInstance(1);
+
+        Assert.assertEquals(Instance.State.COLLECT, myInstance.getState());
+
+        // Collect reports a previous leader may have had Begins accepted up to instance 2
+        //
+        myFactory.conclusion(myInstance,
+                new VoteOutcome(VoteOutcome.Reason.VALUE, myInstance.getSeqNum(), myInstance.getRound(),
+                        Proposal.NO_VALUE, null), 2);
+
+        for (int i = 1; i < 3; i++) {
+            myInstance = myFactory.nextInstance(1);
+
+            Assert.assertEquals(i, myInstance.getSeqNum());
+            Assert.assertEquals(Instance.State.COLLECT, myInstance.getState());
+        }
+
+        myInstance = myFactory.nextInstance(1);
+
+        Assert.assertEquals(3, myInstance.getSeqNum());
+        Assert.assertEquals(Instance.State.BEGIN, myInstance.getState());
+    }
 }
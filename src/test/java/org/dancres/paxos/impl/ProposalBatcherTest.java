@@ -0,0 +1,113 @@
+package org.dancres.paxos.impl;
+
+import org.dancres.paxos.*;
+import org.dancres.paxos.impl.faildet.FailureDetectorImpl;
+import org.dancres.paxos.messages.Begin;
+import org.dancres.paxos.messages.Collect;
+import org.dancres.paxos.messages.Learned;
+import org.dancres.paxos.storage.MemoryLogStorage;
+import org.dancres.paxos.test.net.FakePacket;
+import org.dancres.paxos.test.net.StandalonePickler;
+import org.dancres.paxos.test.net.Utils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ProposalBatcherTest {
+    private InetSocketAddress _nodeId = Utils.getTestAddress();
+    private InetSocketAddress _broadcastId = Utils.getTestAddress();
+
+    private class TransportImpl implements Transport {
+        private Transport.PacketPickler _pickler = new StandalonePickler(_nodeId);
+        private MessageBasedFailureDetector _fd = new FailureDetectorImpl(5000, FailureDetectorImpl.OPEN_PIN);
+
+        public void routeTo(Dispatcher aDispatcher) {
+        }
+
+        public Transport.PacketPickler getPickler() {
+            return _pickler;
+        }
+
+        public FailureDetector getFD() {
+            return _fd;
+        }
+
+        public void send(Packet aPacket, InetSocketAddress aNodeId) {
+        }
+
+        public InetSocketAddress getLocalAddress() {
+            return _nodeId;
+        }
+
+        public InetSocketAddress getBroadcastAddress() {
+            return _broadcastId;
+        }
+
+        public void terminate() {
+        }
+    }
+
+    private static class Values implements Listener {
+        final List<StateEvent> _events = new ArrayList<>();
+
+        public void transition(StateEvent anEvent) {
+            if (anEvent.getResult() == StateEvent.Reason.VALUE)
+                _events.add(anEvent);
+        }
+    }
+
+    private static List<Proposal> proposals(int aCount) {
+        List<Proposal> myValues = new ArrayList<>();
+
+        for (int i = 0; i < aCount; i++)
+            myValues.add(new Proposal("data", new byte[] {(byte) i}).put("other", new byte[i]));
+
+        return myValues;
+    }
+
+    private static byte[] pack(List<Proposal> aValues) {
+        List<byte[]> myMarshalled = new ArrayList<>();
+
+        for (Proposal myValue : aValues)
+            myMarshalled.add(myValue.marshall());
+
+        return ProposalBatcher.pack(myMarshalled);
+    }
+
+    @Test public void packing() {
+        List<Proposal> myValues = proposals(5);
+
+        Assert.assertEquals(myValues, ProposalBatcher.unpack(pack(myValues)));
+        Assert.assertEquals(0, ProposalBatcher.unpack(pack(new ArrayList<Proposal>())).size());
+    }
+
+    @Test public void learnBatch() throws Exception {
+        MemoryLogStorage myStorage = new MemoryLogStorage();
+        Values myValues = new Values();
+        long myRndNum = 1;
+
+        AcceptorLearner myAl = new AcceptorLearner(myStorage, new Common(new TransportImpl()), myValues);
+        myAl.open(CheckpointHandle.NO_CHECKPOINT);
+
+        List<Proposal> myBatch = proposals(3);
+
+        myAl.processMessage(new FakePacket(_nodeId, new Collect(0, myRndNum)));
+        myAl.processMessage(new FakePacket(_nodeId,
+                new Begin(0, myRndNum, new Proposal(ProposalBatcher.BATCH_KEY, pack(myBatch)))));
+        myAl.processMessage(new FakePacket(_nodeId, new Learned(0, myRndNum)));
+
+        // Each proposal in the batch is delivered in order, all in the same instance
+        //
+        Assert.assertEquals(3, myValues._events.size());
+
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(0, myValues._events.get(i).getSeqNum());
+            Assert.assertEquals(myBatch.get(i), myValues._events.get(i).getValues());
+        }
+
+        myAl.close();
+    }
+}
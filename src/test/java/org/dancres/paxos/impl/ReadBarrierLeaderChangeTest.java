@@ -0,0 +1,247 @@
+package org.dancres.paxos.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.dancres.paxos.CheckpointHandle;
+import org.dancres.paxos.Listener;
+import org.dancres.paxos.Proposal;
+import org.dancres.paxos.StateEvent;
+import org.dancres.paxos.VoteOutcome;
+import org.dancres.paxos.impl.faildet.FailureDetectorImpl;
+import org.dancres.paxos.impl.netty.TransportImpl;
+import org.dancres.paxos.messages.PaxosMessage;
+import org.dancres.paxos.storage.MemoryLogStorage;
+import org.dancres.paxos.test.junit.FDUtil;
+import org.dancres.paxos.test.net.ServerDispatcher;
+import org.junit.*;
+
+/**
+ * Leadership moves whilst a follower's ReadIndex is outstanding at the old leader. The old leader must not vouch for
+ * its last instance once it has lost its lease, the follower's next read must go to the new leader. Also covers readers
+ * with different timeouts sharing a held request.
+ */
+public class ReadBarrierLeaderChangeTest {
+    private static final long LEASE = 5000;
+
+    /**
+     * Holds back ReadIndex requests until released.
+     */
+    private static class HoldingDispatcher implements Transport.Dispatcher {
+        private final Core _core;
+        private final List<Transport.Packet> _held = new ArrayList<>();
+        private boolean _holding = false;
+
+        HoldingDispatcher(Core aCore) {
+            _core = aCore;
+        }
+
+        public void init(Transport aTransport) throws Exception {
+            _core.init(aTransport);
+        }
+
+        public void terminate() {
+            _core.terminate();
+        }
+
+        public boolean messageReceived(Transport.Packet aPacket) {
+            synchronized(this) {
+                if ((_holding) && (aPacket.getMessage().getType() == PaxosMessage.Types.READINDEX)) {
+                    _held.add(aPacket);
+                    return true;
+                }
+            }
+
+            return _core.messageReceived(aPacket);
+        }
+
+        void hold() {
+            synchronized(this) {
+                _holding = true;
+            }
+        }
+
+        int numHeld() {
+            synchronized(this) {
+                return _held.size();
+            }
+        }
+
+        void release() {
+            synchronized(this) {
+                _holding = false;
+            }
+
+            deliver();
+        }
+
+        /**
+         * Pass on those requests held so far, continuing to hold any that follow.
+         */
+        void deliver() {
+            List<Transport.Packet> myHeld;
+
+            synchronized(this) {
+                myHeld = new ArrayList<>(_held);
+                _held.clear();
+            }
+
+            for (Transport.Packet myPacket : myHeld)
+                _core.messageReceived(myPacket);
+        }
+    }
+
+    private long _oldLease;
+
+    private ServerDispatcher _node1;
+    private ServerDispatcher _node2;
+    private HoldingDispatcher _holder;
+
+    private TransportImpl _tport1;
+    private TransportImpl _tport2;
+
+    private static Core newCore() {
+        return new Core(new MemoryLogStorage(), CheckpointHandle.NO_CHECKPOINT, new Listener() {
+            public void transition(StateEvent anEvent) {
+            }
+        }, true);
+    }
+
+    @Before public void init() throws Exception {
+        _oldLease = Leader.LeaseDuration.get();
+        Leader.LeaseDuration.set(LEASE);
+
+        // No heartbeats so the leader's lease lapses once it goes quiet
+        //
+        _node1 = new ServerDispatcher(new MemoryLogStorage(), true);
+
+        Core myCore = newCore();
+        _holder = new HoldingDispatcher(myCore);
+        _node2 = new ServerDispatcher(myCore, _holder);
+
+        _tport1 = new TransportImpl(new FailureDetectorImpl(5000, FailureDetectorImpl.OPEN_PIN));
+        _tport1.routeTo(_node1);
+        _node1.init(_tport1);
+
+        _tport2 = new TransportImpl(new FailureDetectorImpl(5000, FailureDetectorImpl.OPEN_PIN));
+        _tport2.routeTo(_node2);
+        _node2.init(_tport2);
+    }
+
+    @After public void stop() throws Exception {
+        _tport1.terminate();
+        _tport2.terminate();
+
+        Leader.LeaseDuration.set(_oldLease);
+    }
+
+    private void awaitHeld(int aCount) throws Exception {
+        long myExpiry = System.currentTimeMillis() + 5000;
+
+        while ((_holder.numHeld() < aCount) && (System.currentTimeMillis() < myExpiry))
+            Thread.sleep(10);
+
+        Assert.assertEquals(aCount, _holder.numHeld());
+    }
+
+    private Future<Boolean> read(ExecutorService anExecutor, final long aTimeout) {
+        return anExecutor.submit(new Callable<Boolean>() {
+            public Boolean call() {
+                return _node1.getCore().readBarrier(aTimeout);
+            }
+        });
+    }
+
+    /**
+     * A reader that gives up early must not fail others waiting on the same request for longer.
+     */
+    @Test public void sharedRound() throws Exception {
+        FDUtil.ensureFD(_tport1.getFD());
+        FDUtil.ensureFD(_tport2.getFD());
+
+        VoteOutcome myOutcome = _node2.getCore().submitAsync(new Proposal("data", new byte[] {1})).get(10000,
+                TimeUnit.MILLISECONDS);
+
+        Assert.assertEquals(VoteOutcome.Reason.VALUE, myOutcome.getResult());
+        Assert.assertTrue(_node1.getCore().readBarrier(5000));
+
+        _holder.hold();
+
+        ExecutorService myExecutor = Executors.newFixedThreadPool(3);
+
+        // First request is held at the leader, the next two readers gather behind it and share the next request
+        //
+        Future<Boolean> myFirst = read(myExecutor, 4000);
+        awaitHeld(1);
+
+        Future<Boolean> myShort = read(myExecutor, 1000);
+        Future<Boolean> myLong = read(myExecutor, 4000);
+        Thread.sleep(200);
+
+        _holder.deliver();
+        Assert.assertTrue(myFirst.get(5000, TimeUnit.MILLISECONDS));
+
+        awaitHeld(1);
+
+        // Short reader times out whilst the shared request is held, long reader is still waiting for the answer
+        //
+        Assert.assertFalse(myShort.get(5000, TimeUnit.MILLISECONDS));
+        Assert.assertFalse(myLong.isDone());
+
+        _holder.release();
+
+        Assert.assertTrue(myLong.get(5000, TimeUnit.MILLISECONDS));
+        myExecutor.shutdown();
+    }
+
+    @Test public void leaderChange() throws Exception {
+        FDUtil.ensureFD(_tport1.getFD());
+        FDUtil.ensureFD(_tport2.getFD());
+
+        VoteOutcome myOutcome = _node2.getCore().submitAsync(new Proposal("data", new byte[] {1})).get(10000,
+                TimeUnit.MILLISECONDS);
+
+        Assert.assertEquals(VoteOutcome.Reason.VALUE, myOutcome.getResult());
+        Assert.assertTrue(_node1.getCore().readBarrier(5000));
+
+        // Follower asks the current leader for its read index, leader doesn't see it until later
+        //
+        _holder.hold();
+
+        ExecutorService myExecutor = Executors.newSingleThreadExecutor();
+        Future<Boolean> myRead = read(myExecutor, LEASE * 4);
+
+        awaitHeld(1);
+
+        // Once the old leader's lease has lapsed, the follower can take over
+        //
+        Thread.sleep(LEASE + 1000);
+
+        Assert.assertFalse(_node2.getCore().isLeaseHolder(System.currentTimeMillis()));
+
+        myOutcome = _node1.getCore().submitAsync(new Proposal("data", new byte[] {2})).get(10000,
+                TimeUnit.MILLISECONDS);
+
+        Assert.assertEquals(VoteOutcome.Reason.VALUE, myOutcome.getResult());
+
+        // Old leader finally answers but cannot vouch for anything having lost its lease
+        //
+        _holder.release();
+
+        Assert.assertFalse(myRead.get(10000, TimeUnit.MILLISECONDS));
+        myExecutor.shutdown();
+
+        // Reads now see the new leader's value, the old leader asks the new one
+        //
+        Assert.assertTrue(_node1.getCore().readBarrier(5000));
+        Assert.assertTrue(_node1.getAcceptorLearner().getDeliveredSeq() >= myOutcome.getSeqNum());
+
+        Assert.assertTrue(_node2.getCore().readBarrier(5000));
+        Assert.assertTrue(_node2.getAcceptorLearner().getDeliveredSeq() >= myOutcome.getSeqNum());
+    }
+}
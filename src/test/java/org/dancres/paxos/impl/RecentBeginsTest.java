@@ -0,0 +1,58 @@
+package org.dancres.paxos.impl;
+
+import org.dancres.paxos.Proposal;
+import org.dancres.paxos.messages.Begin;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RecentBeginsTest {
+    private static Begin begin(long aSeqNum, long aRndNum) {
+        return new Begin(aSeqNum, aRndNum, new Proposal("data", new byte[] {(byte) aRndNum}));
+    }
+
+    @Test public void highestRound() {
+        RecentBegins myBegins = new RecentBegins();
+
+        myBegins.add(begin(0, 2));
+        myBegins.add(begin(0, 1));
+        Assert.assertEquals(2, myBegins.get(0).getRndNumber());
+
+        myBegins.add(begin(0, 3));
+        Assert.assertEquals(3, myBegins.get(0).getRndNumber());
+
+        Assert.assertTrue(myBegins.covers(1));
+        Assert.assertNull(myBegins.get(1));
+    }
+
+    @Test public void window() {
+        RecentBegins myBegins = new RecentBegins();
+        myBegins.setWindow(2);
+
+        for (long mySeq = 0; mySeq < 10; mySeq++)
+            myBegins.add(begin(mySeq, 1));
+
+        myBegins.advance(5);
+
+        Assert.assertFalse(myBegins.covers(3));
+        Assert.assertTrue(myBegins.covers(4));
+        Assert.assertNull(myBegins.get(3));
+        Assert.assertNotNull(myBegins.get(4));
+        Assert.assertEquals(6, myBegins.size());
+
+        // Begins that have fallen out of the window are not re-admitted
+        //
+        myBegins.add(begin(2, 2));
+        Assert.assertNull(myBegins.get(2));
+    }
+
+    @Test public void reset() {
+        RecentBegins myBegins = new RecentBegins();
+
+        myBegins.add(begin(0, 1));
+        myBegins.reset(5);
+
+        Assert.assertEquals(0, myBegins.size());
+        Assert.assertFalse(myBegins.covers(5));
+        Assert.assertTrue(myBegins.covers(6));
+    }
+}
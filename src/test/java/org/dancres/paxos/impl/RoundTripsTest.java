@@ -0,0 +1,79 @@
+package org.dancres.paxos.impl;
+
+import org.dancres.paxos.messages.PaxosMessage;
+import org.dancres.paxos.test.net.Utils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.List;
+
+public class RoundTripsTest {
+    private static final long MILLIS = 1000000;
+
+    @Test public void timeouts() {
+        InetSocketAddress myFast = Utils.getTestAddress();
+        InetSocketAddress mySlow = Utils.getTestAddress();
+        InetSocketAddress mySilent = Utils.getTestAddress();
+        List<InetSocketAddress> myPeers = Arrays.asList(myFast, mySlow, mySilent);
+
+        RoundTrips myTrips = new RoundTrips();
+
+        // No samples so we can't do better than the initial timeout
+        //
+        Assert.assertEquals(RoundTrips.INITIAL_TIMEOUT, myTrips.timeout(PaxosMessage.Types.COLLECT, myPeers, 2));
+
+        for (int i = 0; i < 20; i++) {
+            myTrips.sample(PaxosMessage.Types.COLLECT, myFast, 1 * MILLIS);
+            myTrips.sample(PaxosMessage.Types.COLLECT, mySlow, 50 * MILLIS);
+        }
+
+        // Steady round trips leave little deviation so timeouts are close to the round trip
+        //
+        long myMajority = myTrips.timeout(PaxosMessage.Types.COLLECT, myPeers, 2);
+
+        Assert.assertTrue(myMajority >= 50);
+        Assert.assertTrue(myMajority < 100);
+
+        Assert.assertEquals(RoundTrips.MIN_TIMEOUT + 1, myTrips.timeout(PaxosMessage.Types.COLLECT, myPeers, 1));
+        Assert.assertEquals(RoundTrips.INITIAL_TIMEOUT, myTrips.timeout(PaxosMessage.Types.COLLECT, myPeers, 3));
+
+        // Phases are tracked separately
+        //
+        Assert.assertEquals(RoundTrips.INITIAL_TIMEOUT, myTrips.timeout(PaxosMessage.Types.BEGIN, myPeers, 2));
+
+        // Peers are chosen fastest first, those we've not heard from last
+        //
+        Assert.assertEquals(Arrays.asList(myFast, mySlow), myTrips.fastest(PaxosMessage.Types.COLLECT, myPeers, 2));
+        Assert.assertEquals(Arrays.asList(myFast), myTrips.fastest(PaxosMessage.Types.COLLECT,
+                Arrays.asList(mySilent, mySlow, myFast), 1));
+    }
+
+    @Test public void distant() {
+        InetSocketAddress myNear = Utils.getTestAddress();
+        InetSocketAddress myFar = Utils.getTestAddress();
+        InetSocketAddress myFurthest = Utils.getTestAddress();
+        List<InetSocketAddress> myPeers = Arrays.asList(myNear, myFar, myFurthest);
+
+        RoundTrips myTrips = new RoundTrips();
+
+        for (int i = 0; i < 20; i++) {
+            myTrips.sample(PaxosMessage.Types.BEGIN, myNear, 1500 * MILLIS);
+            myTrips.sample(PaxosMessage.Types.BEGIN, myFar, 1500 * MILLIS);
+            myTrips.sample(PaxosMessage.Types.BEGIN, myFurthest, 120000 * MILLIS);
+        }
+
+        // Round trips beyond the initial timeout are honoured rather than cut short
+        //
+        long myMajority = myTrips.timeout(PaxosMessage.Types.BEGIN, myPeers, 2);
+
+        Assert.assertTrue(myMajority > RoundTrips.INITIAL_TIMEOUT);
+        Assert.assertTrue(myMajority >= 1500);
+        Assert.assertTrue(myMajority < 2000);
+
+        // But are bounded
+        //
+        Assert.assertEquals(RoundTrips.MAX_TIMEOUT, myTrips.timeout(PaxosMessage.Types.BEGIN, myPeers, 3));
+    }
+}
@@ -0,0 +1,113 @@
+package org.dancres.paxos.impl;
+
+import org.dancres.paxos.Proposal;
+import org.dancres.paxos.VoteOutcome;
+import org.dancres.paxos.impl.faildet.FailureDetectorImpl;
+import org.dancres.paxos.impl.netty.TransportImpl;
+import org.dancres.paxos.messages.PaxosMessage;
+import org.dancres.paxos.test.junit.FDUtil;
+import org.dancres.paxos.test.net.ServerDispatcher;
+import org.junit.*;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lose a member's accepts for a while and check the leader re-sends its Begin to only that member.
+ */
+public class SelectiveRetransmitTest {
+    private RecordingTransportImpl _tport1;
+    private DeadNodeTest.DroppingTransportImpl _tport2;
+
+    private ServerDispatcher _node1;
+    private ServerDispatcher _node2;
+
+    @Before public void init() throws Exception {
+        _node1 = new ServerDispatcher();
+        _node2 = new ServerDispatcher();
+
+        _tport1 = new RecordingTransportImpl(new FailureDetectorImpl(5000, FailureDetectorImpl.OPEN_PIN));
+        _tport1.routeTo(_node1);
+        _node1.init(_tport1);
+
+        _tport2 = new DeadNodeTest.DroppingTransportImpl(
+                new FailureDetectorImpl(5000, FailureDetectorImpl.OPEN_PIN));
+        _tport2.routeTo(_node2);
+        _node2.init(_tport2);
+    }
+
+    @After public void stop() throws Exception {
+        _tport1.terminate();
+        _tport2.terminate();
+    }
+
+    @Test public void post() throws Exception {
+        FDUtil.ensureFD(_tport1.getFD());
+        FDUtil.ensureFD(_tport2.getFD());
+
+        // Establish leadership so the next instance goes straight to Begin
+        //
+        Assert.assertEquals(VoteOutcome.Reason.VALUE, submit(1));
+
+        _tport1.clear();
+        _tport2.setDrop(true);
+
+        new Thread() {
+            public void run() {
+                try {
+                    Thread.sleep(500);
+                } catch (InterruptedException anIE) {
+                }
+
+                _tport2.setDrop(false);
+            }
+        }.start();
+
+        Assert.assertEquals(VoteOutcome.Reason.VALUE, submit(2));
+
+        List<InetSocketAddress> myBegins = _tport1.getBegins();
+
+        Assert.assertTrue(myBegins.size() > 1);
+        Assert.assertEquals(_tport1.getBroadcastAddress(), myBegins.get(0));
+
+        for (InetSocketAddress myDest : myBegins.subList(1, myBegins.size()))
+            Assert.assertEquals(_tport2.getLocalAddress(), myDest);
+    }
+
+    private int submit(int aValue) throws Exception {
+        return _node1.getCore().submitAsync(new Proposal("data", new byte[] {(byte) aValue})).get(10000,
+                TimeUnit.MILLISECONDS).getResult();
+    }
+
+    static class RecordingTransportImpl extends TransportImpl {
+        private final List<InetSocketAddress> _begins = new ArrayList<>();
+
+        RecordingTransportImpl(MessageBasedFailureDetector anFD) throws Exception {
+            super(anFD);
+        }
+
+        public void send(Packet aPacket, InetSocketAddress anAddress) {
+            if (aPacket.getMessage().getType() == PaxosMessage.Types.BEGIN) {
+                synchronized(this) {
+                    _begins.add(anAddress);
+                }
+            }
+
+            super.send(aPacket, anAddress);
+        }
+
+        List<InetSocketAddress> getBegins() {
+            synchronized(this) {
+                return new ArrayList<>(_begins);
+            }
+        }
+
+        void clear() {
+            synchronized(this) {
+                _begins.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package org.dancres.paxos.impl;
+
+import org.dancres.paxos.Proposal;
+import org.dancres.paxos.VoteOutcome;
+import org.dancres.paxos.impl.faildet.FailureDetectorImpl;
+import org.dancres.paxos.impl.netty.TransportImpl;
+import org.dancres.paxos.test.junit.FDUtil;
+import org.dancres.paxos.test.net.ServerDispatcher;
+import org.junit.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Run a three node cluster with a thrifty leader, losing one of the other members part way through such that the
+ * leader must fall back to broadcast. Whilst the majority is healthy the member outside it must keep up without
+ * recovery.
+ */
+public class ThriftyTest {
+    private TransportImpl _tport1;
+    private TransportImpl _tport2;
+    private DeadNodeTest.DroppingTransportImpl _tport3;
+
+    private ServerDispatcher _node1;
+    private ServerDispatcher _node2;
+    private ServerDispatcher _node3;
+
+    @Before public void init() throws Exception {
+        _node1 = new ServerDispatcher();
+        _node2 = new ServerDispatcher();
+        _node3 = new ServerDispatcher();
+
+        _tport1 = new TransportImpl(new FailureDetectorImpl(5000, FailureDetectorImpl.OPEN_PIN));
+        _tport1.routeTo(_node1);
+        _node1.init(_tport1);
+
+        _tport2 = new TransportImpl(new FailureDetectorImpl(5000, FailureDetectorImpl.OPEN_PIN));
+        _tport2.routeTo(_node2);
+        _node2.init(_tport2);
+
+        _tport3 = new DeadNodeTest.DroppingTransportImpl(
+                new FailureDetectorImpl(5000, FailureDetectorImpl.OPEN_PIN));
+        _tport3.routeTo(_node3);
+        _node3.init(_tport3);
+    }
+
+    @After public void stop() throws Exception {
+        _tport1.terminate();
+        _tport2.terminate();
+        _tport3.terminate();
+    }
+
+    @Test public void post() throws Exception {
+        FDUtil.ensureFD(_tport1.getFD());
+        FDUtil.ensureFD(_tport2.getFD());
+        FDUtil.ensureFD(_tport3.getFD());
+
+        _node1.getCore().setThrifty(true);
+
+        for (int i = 0; i < 5; i++)
+            Assert.assertEquals(VoteOutcome.Reason.VALUE, submit(i));
+
+        // The member outside the majority learns from the value sent with the outcome which may still be in flight
+        //
+        Thread.sleep(1000);
+
+        Assert.assertEquals(4, _node2.getAcceptorLearner().getLowWatermark().getSeqNum());
+        Assert.assertEquals(4, _node3.getAcceptorLearner().getLowWatermark().getSeqNum());
+        Assert.assertEquals(0, _node2.getAcceptorLearner().getStats().getRecoveryCycles());
+        Assert.assertEquals(0, _node3.getAcceptorLearner().getStats().getRecoveryCycles());
+
+        // Whichever member the leader chose, it can still find a majority
+        //
+        _tport3.setDrop(true);
+
+        for (int i = 5; i < 10; i++)
+            Assert.assertEquals(VoteOutcome.Reason.VALUE, submit(i));
+    }
+
+    private int submit(int aValue) throws Exception {
+        return _node1.getCore().submitAsync(new Proposal("data", new byte[] {(byte) aValue})).get(10000,
+                TimeUnit.MILLISECONDS).getResult();
+    }
+}
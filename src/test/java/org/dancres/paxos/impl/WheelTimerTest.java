@@ -0,0 +1,80 @@
+package org.dancres.paxos.impl;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class WheelTimerTest {
+    private WheelTimer _timer;
+
+    @Before public void init() {
+        // Small wheel such that tasks wrap around it
+        //
+        _timer = new WheelTimer("Test timers", 2, 5, 8);
+    }
+
+    @After public void stop() {
+        _timer.stop();
+    }
+
+    private static class Counter extends WheelTimer.Task {
+        private final AtomicInteger _runs = new AtomicInteger(0);
+        private final CountDownLatch _latch;
+        private volatile long _ranAt;
+
+        Counter(CountDownLatch aLatch) {
+            _latch = aLatch;
+        }
+
+        public void run() {
+            _ranAt = System.currentTimeMillis();
+            _runs.incrementAndGet();
+            _latch.countDown();
+        }
+    }
+
+    @Test public void expiry() throws Exception {
+        CountDownLatch myLatch = new CountDownLatch(2);
+        Counter myShort = new Counter(myLatch);
+        Counter myLong = new Counter(myLatch);
+
+        long myStart = System.currentTimeMillis();
+
+        _timer.schedule(myLong, 200);
+        _timer.schedule(myShort, 0);
+
+        Assert.assertTrue(myLatch.await(5, TimeUnit.SECONDS));
+
+        Assert.assertEquals(1, myShort._runs.get());
+        Assert.assertEquals(1, myLong._runs.get());
+        Assert.assertTrue(myLong._ranAt - myStart >= 200);
+        Assert.assertFalse(myLong.cancel());
+    }
+
+    @Test public void cancel() throws Exception {
+        CountDownLatch myLatch = new CountDownLatch(1);
+        Counter myCancelled = new Counter(new CountDownLatch(1));
+        Counter myCompleted = new Counter(myLatch);
+
+        _timer.schedule(myCancelled, 50);
+        _timer.schedule(myCompleted, 100);
+
+        Assert.assertTrue(myCancelled.cancel());
+        Assert.assertFalse(myCancelled.cancel());
+
+        Assert.assertTrue(myLatch.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(0, myCancelled._runs.get());
+
+        try {
+            _timer.schedule(myCancelled, 0);
+            Assert.fail("Cancelled task was rescheduled");
+        } catch (IllegalStateException anISE) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package org.dancres.paxos.impl;
+
+import org.dancres.paxos.storage.MemoryLogStorage;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class WritePipelineTest {
+    @Test public void order() throws Exception {
+        final List<Boolean> myForces = new ArrayList<>();
+        final CountDownLatch myWriting = new CountDownLatch(1);
+        final CountDownLatch myRelease = new CountDownLatch(1);
+
+        // Writes are held up until released so that records queue behind them
+        //
+        MemoryLogStorage myStorage = new MemoryLogStorage() {
+            public long put(byte[] aData, boolean aSync) throws Exception {
+                myWriting.countDown();
+                myRelease.await();
+
+                synchronized(myForces) {
+                    myForces.add(aSync);
+                }
+
+                return super.put(aData, aSync);
+            }
+        };
+
+        myStorage.open();
+
+        WritePipeline myPipeline = new WritePipeline(myStorage);
+        myPipeline.start("test");
+
+        final List<Long> myWritten = new ArrayList<>();
+        final CountDownLatch myDone = new CountDownLatch(10);
+
+        WritePipeline.Completion myCompletion = new WritePipeline.Completion() {
+            public void written(long anOffset) {
+                myWritten.add(anOffset);
+                myDone.countDown();
+            }
+        };
+
+        // First record is written alone, the rest queue up behind it and should be written as one batch
+        //
+        myPipeline.put(new byte[] {0}, myCompletion);
+        Assert.assertTrue(myWriting.await(5, TimeUnit.SECONDS));
+
+        for (int i = 1; i < 10; i++)
+            myPipeline.put(new byte[] {(byte) i}, myCompletion);
+
+        myRelease.countDown();
+        Assert.assertTrue(myDone.await(5, TimeUnit.SECONDS));
+
+        // Synchronous put is written after everything before it
+        //
+        long myLast = myPipeline.put(new byte[] {10}, true);
+
+        Assert.assertEquals(10, myLast);
+
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(i, myWritten.get(i).longValue());
+            Assert.assertArrayEquals(new byte[] {(byte) i}, myStorage.get(i));
+        }
+
+        myPipeline.stop();
+
+        // Each batch requires only one force: the first record, the nine queued behind it and the synchronous put
+        //
+        int myForceCount = 0;
+
+        for (Boolean myForce : myForces)
+            if (myForce)
+                ++myForceCount;
+
+        Assert.assertEquals(11, myForces.size());
+        Assert.assertEquals(3, myForceCount);
+        Assert.assertTrue(myForces.get(0));
+        Assert.assertTrue(myForces.get(myForces.size() - 1));
+
+        // Stopped pipeline writes directly
+        //
+        Assert.assertEquals(11, myPipeline.put(new byte[] {11}, true));
+    }
+}
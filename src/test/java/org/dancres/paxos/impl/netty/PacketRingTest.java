@@ -0,0 +1,78 @@
+package org.dancres.paxos.impl.netty;
+
+import org.dancres.paxos.impl.Transport;
+import org.dancres.paxos.messages.Accept;
+import org.dancres.paxos.test.net.FakePacket;
+import org.dancres.paxos.test.net.Utils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Several receivers publish into a ring small enough to fill, each receiver's packets must be dispatched once and
+ * in the order they were published.
+ */
+public class PacketRingTest {
+    private static final int RECEIVERS = 3;
+    private static final int PACKETS = 10000;
+
+    private final InetSocketAddress _source = Utils.getTestAddress();
+
+    @Test public void busySpin() throws Exception {
+        run(WaitStrategy.BUSY_SPIN);
+    }
+
+    @Test public void yield() throws Exception {
+        run(WaitStrategy.YIELD);
+    }
+
+    @Test public void park() throws Exception {
+        run(WaitStrategy.PARK);
+    }
+
+    private void run(WaitStrategy aStrategy) throws Exception {
+        final long[] myLast = new long[RECEIVERS];
+        final List<String> myErrors = new ArrayList<>();
+        final CountDownLatch myDone = new CountDownLatch(RECEIVERS * PACKETS);
+
+        for (int i = 0; i < RECEIVERS; i++)
+            myLast[i] = -1;
+
+        final PacketRing myRing = new PacketRing("Test dispatcher", 64, aStrategy, new PacketRing.Consumer() {
+            public void consume(Transport.Packet aPacket) {
+                Accept myAccept = (Accept) aPacket.getMessage();
+                int myReceiver = (int) myAccept.getRndNumber();
+
+                if (myAccept.getSeqNum() != myLast[myReceiver] + 1)
+                    myErrors.add(myReceiver + ": " + myAccept.getSeqNum() + " after " + myLast[myReceiver]);
+
+                myLast[myReceiver] = myAccept.getSeqNum();
+                myDone.countDown();
+            }
+        });
+
+        for (int i = 0; i < RECEIVERS; i++) {
+            final int myReceiver = i;
+
+            new Thread() {
+                public void run() {
+                    for (long j = 0; j < PACKETS; j++)
+                        myRing.publish(new FakePacket(_source, new Accept(j, myReceiver)));
+                }
+            }.start();
+        }
+
+        Assert.assertTrue(myDone.await(30000, TimeUnit.MILLISECONDS));
+        myRing.stop();
+
+        Assert.assertTrue(myErrors.toString(), myErrors.isEmpty());
+
+        for (int i = 0; i < RECEIVERS; i++)
+            Assert.assertEquals(PACKETS - 1, myLast[i]);
+    }
+}
@@ -69,6 +69,18 @@ public class CodecTest {
         Assert.assertEquals(myBegin.getConsolidatedValue(), myBegin2.getConsolidatedValue());
     }
 
+    @Test public void committedBegin() throws Exception {
+        Begin myBegin = new Begin(3, 4, new Proposal("data", new byte[] {55}), 2, 4);
+
+        byte[] myBuffer = Codecs.encode(myBegin);
+
+        Begin myBegin2 = (Begin) Codecs.decode(myBuffer);
+
+        Assert.assertEquals(myBegin.getSeqNum(), myBegin2.getSeqNum());
+        Assert.assertEquals(myBegin.getCommittedSeqNum(), myBegin2.getCommittedSeqNum());
+        Assert.assertEquals(myBegin.getCommittedRndNumber(), myBegin2.getCommittedRndNumber());
+    }
+
     @Test public void collect() throws Exception {
         Collect myCollect = new Collect(1, 2);
 
@@ -98,7 +110,7 @@ public class CodecTest {
         myVal.put("data", myData);
         myVal.put("handback", myHandback);
         
-        Last myLast = new Last(0, 1, 2, myVal);
+        Last myLast = new Last(0, 1, 2, myVal, 3);
 
         byte[] myBuffer = Codecs.encode(myLast);
 
@@ -108,6 +120,7 @@ public class CodecTest {
         Assert.assertEquals(myLast.getLowWatermark(), myLast2.getLowWatermark());
         Assert.assertEquals(myLast.getRndNumber(), myLast2.getRndNumber());
         Assert.assertEquals(myLast.getConsolidatedValue(), myLast2.getConsolidatedValue());
+        Assert.assertEquals(myLast.getHighestAccepted(), myLast2.getHighestAccepted());
     }
 
     @Test public void oldRound() throws Exception {
@@ -147,6 +160,19 @@ public class CodecTest {
 
         Assert.assertEquals(myLearned.getSeqNum(), myLearned2.getSeqNum());
         Assert.assertEquals(myLearned.getRndNum(), myLearned2.getRndNum());
+        Assert.assertNull(myLearned2.getValue());
+    }
+
+    @Test public void valuedSuccess() throws Exception {
+        Learned myLearned = new Learned(1, 2, new Proposal("data", new byte[] {55}));
+
+        byte[] myBuffer = Codecs.encode(myLearned);
+
+        Learned myLearned2 = (Learned) Codecs.decode(myBuffer);
+
+        Assert.assertEquals(myLearned.getSeqNum(), myLearned2.getSeqNum());
+        Assert.assertEquals(myLearned.getRndNum(), myLearned2.getRndNum());
+        Assert.assertEquals(myLearned.getValue(), myLearned2.getValue());
     }
 
     @Test public void need() throws Exception {
@@ -160,6 +186,51 @@ public class CodecTest {
     	Assert.assertEquals(myNeed.getMaxSeq(), myNeed2.getMaxSeq());
     }
     
+    @Test public void readIndex() throws Exception {
+        ReadIndex myReadIndex = new ReadIndex(5);
+
+        byte[] myBuffer = Codecs.encode(myReadIndex);
+
+        ReadIndex myReadIndex2 = (ReadIndex) Codecs.decode(myBuffer);
+
+        Assert.assertEquals(myReadIndex.getRequestId(), myReadIndex2.getRequestId());
+    }
+
+    @Test public void committed() throws Exception {
+        Committed myCommitted = new Committed(5, 6);
+
+        byte[] myBuffer = Codecs.encode(myCommitted);
+
+        Committed myCommitted2 = (Committed) Codecs.decode(myBuffer);
+
+        Assert.assertEquals(myCommitted.getRequestId(), myCommitted2.getRequestId());
+        Assert.assertEquals(myCommitted.getSeqNum(), myCommitted2.getSeqNum());
+    }
+
+    @Test public void renew() throws Exception {
+        Renew myRenew = new Renew(1, 2, 3);
+
+        byte[] myBuffer = Codecs.encode(myRenew);
+
+        Renew myRenew2 = (Renew) Codecs.decode(myBuffer);
+
+        Assert.assertEquals(myRenew.getSeqNum(), myRenew2.getSeqNum());
+        Assert.assertEquals(myRenew.getRndNumber(), myRenew2.getRndNumber());
+        Assert.assertEquals(myRenew.getTimestamp(), myRenew2.getTimestamp());
+    }
+
+    @Test public void renewed() throws Exception {
+        Renewed myRenewed = new Renewed(1, 2, 3);
+
+        byte[] myBuffer = Codecs.encode(myRenewed);
+
+        Renewed myRenewed2 = (Renewed) Codecs.decode(myBuffer);
+
+        Assert.assertEquals(myRenewed.getSeqNum(), myRenewed2.getSeqNum());
+        Assert.assertEquals(myRenewed.getRndNumber(), myRenewed2.getRndNumber());
+        Assert.assertEquals(myRenewed.getTimestamp(), myRenewed2.getTimestamp());
+    }
+
     private void dump(byte[] aBuffer) {
         for (byte anABuffer : aBuffer) {
             System.err.print(Integer.toHexString(anABuffer) + " ");
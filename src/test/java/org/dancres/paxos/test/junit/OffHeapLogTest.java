@@ -0,0 +1,82 @@
+package org.dancres.paxos.test.junit;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.dancres.paxos.LogStorage;
+import org.dancres.paxos.storage.OffHeapLogStorage;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class OffHeapLogTest {
+    private OffHeapLogStorage _storage;
+
+    @Before public void init() throws Exception {
+        // Small arenas such that records span many of them
+        //
+        _storage = new OffHeapLogStorage(64);
+        _storage.open();
+    }
+
+    @Test public void putGet() throws Exception {
+        byte[] myValue1 = new byte[] {1};
+        byte[] myValue2 = new byte[] {2};
+        byte[] myLarge = new byte[256];
+        myLarge[255] = 3;
+
+        long myFirst = _storage.put(myValue1, true);
+        long mySecond = _storage.put(myValue2, true);
+        long myThird = _storage.put(myLarge, true);
+
+        Assert.assertEquals(0, myFirst);
+        Assert.assertEquals(1, mySecond);
+        Assert.assertEquals(2, myThird);
+
+        Assert.assertArrayEquals(myValue1, _storage.get(myFirst));
+        Assert.assertArrayEquals(myValue2, _storage.get(mySecond));
+        Assert.assertArrayEquals(myLarge, _storage.get(myThird));
+        Assert.assertNull(_storage.get(3));
+    }
+
+    @Test public void markAndReplay() throws Exception {
+        for (int i = 0; i < 5000; i++)
+            _storage.put(new byte[] {(byte) i, (byte) (i >> 8), 0, 0, 0, 0, 0, 0}, false);
+
+        _storage.mark(4000, true);
+
+        Assert.assertNull(_storage.get(3999));
+        Assert.assertEquals((byte) 4000, _storage.get(4000)[0]);
+
+        Collector myAll = new Collector();
+        _storage.replay(myAll, 0);
+
+        Assert.assertEquals(1000, myAll._offsets.size());
+        Assert.assertEquals(4000, myAll._offsets.get(0).longValue());
+
+        Collector myTail = new Collector();
+        _storage.replay(myTail, 4990);
+        Assert.assertEquals(10, myTail._offsets.size());
+
+        // Index is compacted rather than growing without bound as the log is truncated
+        //
+        for (int i = 5000; i < 20000; i++) {
+            _storage.put(new byte[] {(byte) i}, false);
+            _storage.mark(i, true);
+        }
+
+        Assert.assertEquals((byte) 19999, _storage.get(19999)[0]);
+        Assert.assertNull(_storage.get(19998));
+
+        _storage.close();
+    }
+
+    private static class Collector implements LogStorage.RecordListener {
+        final List<Long> _offsets = new ArrayList<>();
+
+        public void onRecord(long anOffset, byte[] aRecord) {
+            Assert.assertEquals((byte) anOffset, aRecord[0]);
+            _offsets.add(anOffset);
+        }
+    }
+}
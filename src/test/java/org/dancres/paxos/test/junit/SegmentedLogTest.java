@@ -0,0 +1,278 @@
+package org.dancres.paxos.test.junit;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.dancres.paxos.LogStorage;
+import org.dancres.paxos.storage.SegmentedLogStorage;
+import org.dancres.paxos.test.utils.FileSystem;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SegmentedLogTest {
+    private static final String DIRECTORY = "segmentedlogs";
+    private static final int SEGMENT_SIZE = 1024;
+
+    @Before public void init() throws Exception {
+        FileSystem.deleteDirectory(new File(DIRECTORY));
+    }
+
+    @Test public void putGet() throws Exception {
+        SegmentedLogStorage myStorage = new SegmentedLogStorage(DIRECTORY, SEGMENT_SIZE);
+        myStorage.open();
+
+        byte[] myValue1 = new byte[] {1};
+        byte[] myValue2 = new byte[] {2};
+        byte[] myEmpty = new byte[0];
+
+        long myFirst = myStorage.put(myValue1, true);
+        long mySecond = myStorage.put(myValue2, false);
+        long myThird = myStorage.put(myEmpty, true);
+
+        Assert.assertTrue(myFirst > 0);
+        Assert.assertTrue(mySecond > myFirst);
+        Assert.assertTrue(myThird > mySecond);
+
+        Assert.assertArrayEquals(myValue1, myStorage.get(myFirst));
+        Assert.assertArrayEquals(myValue2, myStorage.get(mySecond));
+        Assert.assertArrayEquals(myEmpty, myStorage.get(myThird));
+
+        myStorage.close();
+    }
+
+    @Test public void replayAcrossSegments() throws Exception {
+        SegmentedLogStorage myStorage = new SegmentedLogStorage(DIRECTORY, SEGMENT_SIZE);
+        myStorage.open();
+
+        long[] myOffsets = fill(myStorage, 100);
+
+        // Records are 108 bytes framed, thus nine to a segment
+        //
+        Assert.assertTrue(new File(DIRECTORY).list().length > 10);
+
+        Collector myAll = new Collector();
+        myStorage.replay(myAll, 0);
+        Assert.assertEquals(100, myAll._records.size());
+
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(myOffsets[i], myAll._offsets.get(i).longValue());
+            Assert.assertEquals((byte) i, myAll._records.get(i)[0]);
+        }
+
+        Collector myTail = new Collector();
+        myStorage.replay(myTail, myOffsets[50]);
+        Assert.assertEquals(50, myTail._records.size());
+        Assert.assertEquals((byte) 50, myTail._records.get(0)[0]);
+
+        myStorage.close();
+    }
+
+    @Test public void reopen() throws Exception {
+        SegmentedLogStorage myStorage = new SegmentedLogStorage(DIRECTORY, SEGMENT_SIZE);
+        myStorage.open();
+
+        long[] myOffsets = fill(myStorage, 20);
+        myStorage.close();
+
+        myStorage = new SegmentedLogStorage(DIRECTORY, SEGMENT_SIZE);
+        myStorage.open();
+
+        long myNext = myStorage.put(new byte[] {20}, true);
+        Assert.assertTrue(myNext > myOffsets[19]);
+
+        Collector myAll = new Collector();
+        myStorage.replay(myAll, 0);
+        Assert.assertEquals(21, myAll._records.size());
+        Assert.assertEquals((byte) 20, myAll._records.get(20)[0]);
+
+        myStorage.close();
+    }
+
+    @Test public void tornTail() throws Exception {
+        SegmentedLogStorage myStorage = new SegmentedLogStorage(DIRECTORY, SEGMENT_SIZE);
+        myStorage.open();
+
+        long myFirst = myStorage.put(new byte[] {1, 1, 1, 1}, true);
+        long mySecond = myStorage.put(new byte[] {2, 2, 2, 2}, true);
+        myStorage.put(new byte[] {3, 3, 3, 3}, true);
+        myStorage.close();
+
+        // Corrupt the data of the second record, the third is thus unreachable and must be discarded
+        //
+        RandomAccessFile myFile = new RandomAccessFile(new File(DIRECTORY, new File(DIRECTORY).list()[0]), "rw");
+        myFile.seek((int) mySecond + 8);
+        myFile.write(9);
+        myFile.close();
+
+        myStorage = new SegmentedLogStorage(DIRECTORY, SEGMENT_SIZE);
+        myStorage.open();
+
+        Collector myAll = new Collector();
+        myStorage.replay(myAll, 0);
+        Assert.assertEquals(1, myAll._records.size());
+        Assert.assertEquals(myFirst, myAll._offsets.get(0).longValue());
+
+        Assert.assertEquals(mySecond, myStorage.put(new byte[] {4}, true));
+
+        myAll = new Collector();
+        myStorage.replay(myAll, 0);
+        Assert.assertEquals(2, myAll._records.size());
+
+        myStorage.close();
+    }
+
+    @Test public void corruptSealedSegment() throws Exception {
+        SegmentedLogStorage myStorage = new SegmentedLogStorage(DIRECTORY, SEGMENT_SIZE);
+        myStorage.open();
+
+        long[] myOffsets = fill(myStorage, 30);
+        myStorage.close();
+
+        // Corrupt a record in the first segment which has long since been sealed
+        //
+        RandomAccessFile myFile = new RandomAccessFile(new File(DIRECTORY, String.format("%08x", 0) + ".seg"), "rw");
+        myFile.seek((int) myOffsets[3] + 8);
+        myFile.write(9);
+        myFile.close();
+
+        myStorage = new SegmentedLogStorage(DIRECTORY, SEGMENT_SIZE);
+        myStorage.open();
+
+        Collector myAll = new Collector();
+
+        try {
+            myStorage.replay(myAll, 0);
+            Assert.fail("Replay should have failed");
+        } catch (IOException anIOE) {
+            // Expected
+        }
+
+        Assert.assertEquals(3, myAll._records.size());
+
+        myStorage.close();
+    }
+
+    @Test public void markDuringReplay() throws Exception {
+        final SegmentedLogStorage myStorage = new SegmentedLogStorage(DIRECTORY, SEGMENT_SIZE);
+        myStorage.open();
+
+        final long[] myOffsets = fill(myStorage, 100);
+        final int mySegments = new File(DIRECTORY).list().length;
+
+        // Segments in use by the replay are deleted only once it completes
+        //
+        Collector myAll = new Collector() {
+            public void onRecord(long anOffset, byte[] aRecord) {
+                super.onRecord(anOffset, aRecord);
+
+                if (_records.size() == 1) {
+                    try {
+                        myStorage.mark(myOffsets[50], true);
+                    } catch (Exception anE) {
+                        throw new RuntimeException(anE);
+                    }
+
+                    Assert.assertEquals(mySegments, new File(DIRECTORY).list().length);
+                }
+            }
+        };
+
+        myStorage.replay(myAll, 0);
+
+        Assert.assertEquals(100, myAll._records.size());
+        Assert.assertTrue(new File(DIRECTORY).list().length < mySegments);
+        Assert.assertNull(myStorage.get(myOffsets[0]));
+
+        myStorage.close();
+    }
+
+    @Test public void mark() throws Exception {
+        SegmentedLogStorage myStorage = new SegmentedLogStorage(DIRECTORY, SEGMENT_SIZE);
+        myStorage.open();
+
+        long[] myOffsets = fill(myStorage, 100);
+        int mySegments = new File(DIRECTORY).list().length;
+
+        myStorage.mark(myOffsets[50], true);
+
+        Assert.assertTrue(new File(DIRECTORY).list().length < mySegments);
+        Assert.assertNull(myStorage.get(myOffsets[0]));
+        Assert.assertEquals((byte) 50, myStorage.get(myOffsets[50])[0]);
+
+        // Replay from the start yields at least everything from the mark
+        //
+        Collector myAll = new Collector();
+        myStorage.replay(myAll, 0);
+        Assert.assertTrue(myAll._records.size() >= 50);
+        Assert.assertTrue(myAll._records.size() < 100);
+        Assert.assertEquals((byte) 99, myAll._records.get(myAll._records.size() - 1)[0]);
+
+        myStorage.close();
+    }
+
+    @Test public void groupCommit() throws Exception {
+        final SegmentedLogStorage myStorage = new SegmentedLogStorage(DIRECTORY);
+        myStorage.open();
+
+        final int myThreads = 8;
+        final int myPuts = 50;
+        final CountDownLatch myDone = new CountDownLatch(myThreads);
+        final List<Throwable> myFailures = new ArrayList<>();
+
+        for (int i = 0; i < myThreads; i++) {
+            final byte myId = (byte) i;
+
+            new Thread() {
+                public void run() {
+                    try {
+                        for (int j = 0; j < myPuts; j++)
+                            myStorage.put(new byte[] {myId, (byte) j}, true);
+                    } catch (Throwable aT) {
+                        synchronized(myFailures) {
+                            myFailures.add(aT);
+                        }
+                    } finally {
+                        myDone.countDown();
+                    }
+                }
+            }.start();
+        }
+
+        myDone.await();
+
+        Assert.assertTrue(myFailures.isEmpty());
+
+        Collector myAll = new Collector();
+        myStorage.replay(myAll, 0);
+        Assert.assertEquals(myThreads * myPuts, myAll._records.size());
+
+        myStorage.close();
+    }
+
+    private static long[] fill(LogStorage aStorage, int aCount) throws Exception {
+        long[] myOffsets = new long[aCount];
+
+        for (int i = 0; i < aCount; i++) {
+            byte[] myRecord = new byte[100];
+            myRecord[0] = (byte) i;
+            myOffsets[i] = aStorage.put(myRecord, (i % 10) == 0);
+        }
+
+        return myOffsets;
+    }
+
+    private static class Collector implements LogStorage.RecordListener {
+        final List<Long> _offsets = new ArrayList<>();
+        final List<byte[]> _records = new ArrayList<>();
+
+        public void onRecord(long anOffset, byte[] aRecord) {
+            _offsets.add(anOffset);
+            _records.add(aRecord);
+        }
+    }
+}